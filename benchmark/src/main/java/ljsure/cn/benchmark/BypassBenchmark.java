@@ -0,0 +1,65 @@
+package ljsure.cn.benchmark;
+
+import ljsure.cn.CidrBlock;
+import ljsure.cn.CidrTrie;
+import ljsure.cn.IPKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// 绕过检查: 从登录事件的InetAddress取出地址后在前缀树中查找，一半的查询命中
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BypassBenchmark {
+
+    // 绕过列表中的地址段数量
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private CidrTrie trie;
+    private InetAddress[] queries;
+
+    @Setup(Level.Trial)
+    public void setUp() throws UnknownHostException {
+        IPKey[] keys = Datasets.distinctKeys(size);
+        List<CidrBlock> blocks = new ArrayList<>(size);
+        for (IPKey key : keys) {
+            // IPv4按/24、IPv6按/64加入绕过列表
+            blocks.add(CidrBlock.of(key, key.isIPv4() ? 120 : 64));
+        }
+        trie = CidrTrie.build(blocks);
+
+        IPKey[] missing = Datasets.missingKeys(512);
+        queries = new InetAddress[1024];
+        for (int i = 0; i < queries.length; i++) {
+            IPKey key = i % 2 == 0 ? keys[i % keys.length] : missing[i / 2];
+            queries[i] = InetAddress.getByName(key.toString());
+        }
+    }
+
+    @Benchmark
+    public boolean contains() {
+        InetAddress address = queries[ThreadLocalRandom.current().nextInt(queries.length)];
+        return trie.contains(IPKey.high(address), IPKey.low(address));
+    }
+}
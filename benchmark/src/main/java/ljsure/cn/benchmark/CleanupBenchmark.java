@@ -0,0 +1,73 @@
+package ljsure.cn.benchmark;
+
+import ljsure.cn.BindingStore;
+import ljsure.cn.IPKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// 定时清理任务: 每轮先写入1%已过期的绑定，再测量一次removeExpired
+// 本地存储由过期索引按时删除，removeExpired只整理索引，结果反映的是清理任务本身的开销
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CleanupBenchmark {
+
+    @Param({"local", "h2"})
+    public String backend;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private Path directory;
+    private BindingStore store;
+    private IPKey[] expiring;
+    private UUID owner;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("loginiplimit-bench");
+        store = StoreFixture.open(backend, directory, size);
+        IPKey[] keys = Datasets.distinctKeys(size + Math.max(1, size / 100));
+        owner = UUID.randomUUID();
+        StoreFixture.populate(store, Arrays.copyOf(keys, size), owner, 0L);
+        expiring = Arrays.copyOfRange(keys, size, keys.length);
+    }
+
+    @Setup(Level.Iteration)
+    public void addExpired() throws InterruptedException {
+        StoreFixture.populate(store, expiring, owner, System.currentTimeMillis() + 1);
+        Thread.sleep(5);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        StoreFixture.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public int removeExpired() {
+        return store.removeExpired(System.currentTimeMillis()).join();
+    }
+}
@@ -0,0 +1,39 @@
+package ljsure.cn.benchmark;
+
+import ljsure.cn.IPKey;
+
+import java.util.SplittableRandom;
+
+// 合成数据集: 固定种子，每次运行生成相同的地址
+final class Datasets {
+
+    private static final long SEED = 0x4C49504CL;
+
+    private Datasets() {
+    }
+
+    // 生成count个互不相同的地址，每10个中有1个IPv6地址
+    static IPKey[] distinctKeys(int count) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        IPKey[] keys = new IPKey[count];
+        for (int i = 0; i < count; i++) {
+            if (i % 10 == 9) {
+                keys[i] = new IPKey(0x20010DB800000000L | (random.nextLong() & 0xFFFFFFFFL), random.nextLong());
+            } else {
+                // 奇数乘法在模2^32下是双射，保证IPv4地址互不相同且分散
+                keys[i] = IPKey.ofIPv4(i * 0x9E3779B1);
+            }
+        }
+        return keys;
+    }
+
+    // 生成count个与distinctKeys不重叠的地址 (位于已回收的 3ffe::/16)
+    static IPKey[] missingKeys(int count) {
+        SplittableRandom random = new SplittableRandom(SEED + 1);
+        IPKey[] keys = new IPKey[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = new IPKey(0x3FFE000000000000L | (random.nextLong() & 0xFFFFFFFFL), random.nextLong());
+        }
+        return keys;
+    }
+}
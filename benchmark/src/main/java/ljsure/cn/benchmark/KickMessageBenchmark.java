@@ -0,0 +1,57 @@
+package ljsure.cn.benchmark;
+
+import ljsure.cn.LoginMessages;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// 踢出信息的生成开销 (每次被拒绝的登录都会生成一次)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KickMessageBenchmark {
+
+    private LoginMessages loginMessages;
+    private UUID boundPlayer;
+    private long now;
+
+    @Setup
+    public void setUp() {
+        loginMessages = new LoginMessages(Collections.emptyMap(), ZoneId.of("Asia/Shanghai"),
+                DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"), uuid -> uuid.toString().substring(0, 8));
+        boundPlayer = UUID.randomUUID();
+        now = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public String temporary() {
+        return loginMessages.createTemporaryKickMessage("203.0.113.7", now + TimeUnit.HOURS.toMillis(25), now, boundPlayer, "Steve");
+    }
+
+    @Benchmark
+    public String permanent() {
+        return loginMessages.createPermanentKickMessage("203.0.113.7", boundPlayer, "Steve");
+    }
+
+    // 绑定记录中没有玩家名，需要按UUID查找
+    @Benchmark
+    public String temporaryWithoutName() {
+        return loginMessages.createTemporaryKickMessage("203.0.113.7", now + TimeUnit.HOURS.toMillis(25), now, boundPlayer, null);
+    }
+}
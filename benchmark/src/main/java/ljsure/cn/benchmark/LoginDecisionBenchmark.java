@@ -0,0 +1,106 @@
+package ljsure.cn.benchmark;
+
+import ljsure.cn.BindingIndex;
+import ljsure.cn.BindingStore;
+import ljsure.cn.IPData;
+import ljsure.cn.IPKey;
+import ljsure.cn.LoginGuard;
+import ljsure.cn.LoginVerdict;
+import ljsure.cn.MapConfigView;
+import ljsure.cn.PluginMetrics;
+import ljsure.cn.Settings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// 登录判定: 直接调用LoginGuard.check (绕过检查 -> 每账号IP数 -> 比较并绑定 -> 生成放行或踢出信息 -> 记录指标)
+// 存储换成内存中的模拟实现以排除持久化开销
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoginDecisionBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private LoginGuard guard;
+    private InetAddress[] addresses;
+    private UUID[] owners;
+    private InetAddress bypassed;
+    private UUID other;
+
+    @Setup(Level.Trial)
+    public void setUp() throws UnknownHostException {
+        Logger logger = Logger.getLogger("LoginDecisionBenchmark");
+        BindingStore store = new MockBindingStore();
+        IPKey[] keys = Datasets.distinctKeys(size);
+        addresses = new InetAddress[keys.length];
+        // 每个地址属于不同的玩家，重新登录时每账号IP数的检查不会拒绝
+        owners = new UUID[keys.length];
+        other = UUID.randomUUID();
+        // 一半为临时绑定，一半为永久绑定
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < keys.length; i++) {
+            addresses[i] = InetAddress.getByAddress(keys[i].toBytes());
+            owners[i] = new UUID(i, ~i);
+            long endTime = i % 2 == 0 ? 0L : now + TimeUnit.DAYS.toMillis(365);
+            store.compareAndBind(new IPData(keys[i], owners[i], "owner", endTime, now), now, 1).join();
+        }
+        bypassed = InetAddress.getByName("10.1.2.3");
+
+        Map<String, Object> binding = new LinkedHashMap<>();
+        binding.put("max-accounts-per-ip", 1);
+        binding.put("max-ips-per-account", 3);
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("time-limit", 1440);
+        config.put("bypass-ips", Arrays.asList("127.0.0.1", "::1", "10.0.0.0/8"));
+        config.put("binding", binding);
+        Settings settings = new Settings(MapConfigView.of(config), logger);
+
+        guard = new LoginGuard(logger, () -> store, new PluginMetrics(), uuid -> uuid.toString().substring(0, 8), settings);
+        BindingIndex index = new BindingIndex(guard::formatBindingKey);
+        index.load(store);
+        guard.setAccountIndex(index);
+    }
+
+    // 绑定所有者重新登录，放行并续期
+    @Benchmark
+    public LoginVerdict allowOwner() {
+        int i = ThreadLocalRandom.current().nextInt(addresses.length);
+        return guard.check(guard.snapshot(), addresses[i], owners[i], "owner");
+    }
+
+    // 其他玩家使用已绑定的IP，拒绝并生成踢出信息
+    @Benchmark
+    public LoginVerdict denyOther() {
+        return guard.check(guard.snapshot(), addresses[ThreadLocalRandom.current().nextInt(addresses.length)], other, "other");
+    }
+
+    // 绕过列表中的地址，不访问存储
+    @Benchmark
+    public LoginVerdict allowBypassed() {
+        return guard.check(guard.snapshot(), bypassed, other, "other");
+    }
+}
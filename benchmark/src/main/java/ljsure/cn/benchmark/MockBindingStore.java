@@ -0,0 +1,137 @@
+package ljsure.cn.benchmark;
+
+import ljsure.cn.BindingListener;
+import ljsure.cn.BindingQuery;
+import ljsure.cn.BindingStore;
+import ljsure.cn.CidrBlock;
+import ljsure.cn.HeapBindingTable;
+import ljsure.cn.IPData;
+import ljsure.cn.IPKey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// 只在内存中比较和绑定、不做任何持久化的存储，用于单独测量登录判定本身的开销
+final class MockBindingStore implements BindingStore {
+
+    private final HeapBindingTable table = new HeapBindingTable();
+
+    @Override
+    public String getName() {
+        return "Mock";
+    }
+
+    @Override
+    public boolean initialize() {
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> get(IPKey key) {
+        return CompletableFuture.completedFuture(table.get(key.getHigh(), key.getLow()));
+    }
+
+    @Override
+    public synchronized CompletableFuture<BindResult> compareAndBind(IPData binding, long now, int maxAccounts) {
+        IPData conflict = table.findConflict(binding.getIpHigh(), binding.getIpLow(), binding.getPlayerUUID(), now, maxAccounts);
+        if (conflict != null) {
+            return CompletableFuture.completedFuture(BindResult.conflict(conflict));
+        }
+        boolean created = !table.isBound(binding.getIpHigh(), binding.getIpLow(), binding.getPlayerUUID(), now);
+        table.put(binding);
+        return CompletableFuture.completedFuture(BindResult.bound(binding, created));
+    }
+
+    @Override
+    public synchronized CompletableFuture<Boolean> remove(IPKey key) {
+        return CompletableFuture.completedFuture(table.remove(key.getHigh(), key.getLow()) > 0);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Integer> removeRange(CidrBlock block) {
+        int removed = 0;
+        for (IPData ipData : table.page(block, null, Integer.MAX_VALUE)) {
+            if (table.removeAccount(ipData.getIpHigh(), ipData.getIpLow(), ipData.getPlayerUUID())) {
+                removed++;
+            }
+        }
+        return CompletableFuture.completedFuture(removed);
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> scanExpiring(long before, int limit) {
+        List<IPData> expiring = new ArrayList<>();
+        table.forEach(ipData -> {
+            if (ipData.getEndTime() > 0 && ipData.getEndTime() <= before && expiring.size() < limit) {
+                expiring.add(ipData);
+            }
+        });
+        return CompletableFuture.completedFuture(expiring);
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeExpired(long now) {
+        return CompletableFuture.completedFuture(0);
+    }
+
+    @Override
+    public CompletableFuture<Integer> count() {
+        return CompletableFuture.completedFuture(table.size());
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> page(CidrBlock range, IPKey after, int limit) {
+        return CompletableFuture.completedFuture(table.page(range, after, limit));
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> find(BindingQuery query, IPKey after, int limit) {
+        List<IPData> found = new ArrayList<>();
+        for (IPData ipData : table.page(query.getRange(), after, Integer.MAX_VALUE)) {
+            // 同一地址的绑定总在同一页返回
+            if (found.size() >= limit && !found.get(found.size() - 1).getKey().equals(ipData.getKey())) {
+                break;
+            }
+            if (query.matches(ipData)) {
+                found.add(ipData);
+            }
+        }
+        return CompletableFuture.completedFuture(found);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Integer> removeAll(List<IPData> bindings) {
+        int removed = 0;
+        for (IPData ipData : bindings) {
+            if (table.removeAccount(ipData.getIpHigh(), ipData.getIpLow(), ipData.getPlayerUUID())) {
+                removed++;
+            }
+        }
+        return CompletableFuture.completedFuture(removed);
+    }
+
+    @Override
+    public synchronized CompletableFuture<Integer> putAll(List<IPData> bindings) {
+        for (IPData ipData : bindings) {
+            table.put(ipData);
+        }
+        return CompletableFuture.completedFuture(bindings.size());
+    }
+
+    @Override
+    public Map<String, Number> getGauges() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public void setListener(BindingListener listener) {
+    }
+
+    @Override
+    public void close() {
+        table.clear();
+    }
+}
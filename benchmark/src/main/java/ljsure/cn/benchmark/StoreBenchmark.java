@@ -0,0 +1,90 @@
+package ljsure.cn.benchmark;
+
+import ljsure.cn.BindingStore;
+import ljsure.cn.IPData;
+import ljsure.cn.IPKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// 各存储的单条查询与绑定延迟 (DatabaseManager的同步方法只是等待这些future完成)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreBenchmark {
+
+    @Param({"local", "local-mapped", "h2"})
+    public String backend;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private Path directory;
+    private BindingStore store;
+    private IPKey[] keys;
+    private IPKey[] missing;
+    private UUID owner;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("loginiplimit-bench");
+        store = StoreFixture.open(backend, directory, size);
+        keys = Datasets.distinctKeys(size);
+        missing = Datasets.missingKeys(1024);
+        owner = UUID.randomUUID();
+        StoreFixture.populate(store, keys, owner, 0L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        StoreFixture.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public List<IPData> getExisting() {
+        return store.get(keys[ThreadLocalRandom.current().nextInt(keys.length)]).join();
+    }
+
+    @Benchmark
+    public List<IPData> getMissing() {
+        return store.get(missing[ThreadLocalRandom.current().nextInt(missing.length)]).join();
+    }
+
+    // 同一玩家重新登录: 比较后覆盖写入
+    @Benchmark
+    public BindingStore.BindResult rebindOwner() {
+        long now = System.currentTimeMillis();
+        IPKey key = keys[ThreadLocalRandom.current().nextInt(keys.length)];
+        return store.compareAndBind(new IPData(key, owner, "owner", 0L, now), now, 1).join();
+    }
+
+    // 其他玩家登录已绑定的IP: 只比较，不写入
+    @Benchmark
+    public BindingStore.BindResult bindConflict() {
+        long now = System.currentTimeMillis();
+        IPKey key = keys[ThreadLocalRandom.current().nextInt(keys.length)];
+        return store.compareAndBind(new IPData(key, UUID.randomUUID(), "other", 0L, now), now, 1).join();
+    }
+}
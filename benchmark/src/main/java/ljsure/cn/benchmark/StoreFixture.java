@@ -0,0 +1,117 @@
+package ljsure.cn.benchmark;
+
+import com.zaxxer.hikari.HikariConfig;
+import ljsure.cn.BindingStore;
+import ljsure.cn.CidrBlock;
+import ljsure.cn.H2BindingStore;
+import ljsure.cn.IPData;
+import ljsure.cn.IPKey;
+import ljsure.cn.LocalBindingStore;
+import ljsure.cn.MySQLBindingStore;
+import ljsure.cn.SqlWriteQueue;
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+// 按名称创建并填充各种存储，与插件使用相同的实现和参数
+final class StoreFixture {
+
+    // 填充时同时等待的绑定数
+    private static final int POPULATE_BATCH = 10000;
+
+    private StoreFixture() {
+    }
+
+    static Logger quietLogger() {
+        Logger logger = Logger.getLogger("LoginIPLimit-Benchmark");
+        logger.setLevel(Level.WARNING);
+        return logger;
+    }
+
+    // backend: local、local-mapped、h2 或 mysql (需要 -Dbench.mysql.url，可选 bench.mysql.user / bench.mysql.password)
+    static BindingStore open(String backend, Path directory, int expectedSize) {
+        Logger logger = quietLogger();
+        SqlWriteQueue.Options queueOptions = new SqlWriteQueue.Options(100, 50L, 10000, 1000L);
+        BindingStore store;
+        switch (backend) {
+            case "local":
+                // 刷盘间隔取1毫秒，单线程测量时不被批量等待主导
+                store = new LocalBindingStore(logger, directory.toFile(), 1L, 10000L, false, 0);
+                break;
+            case "local-mapped":
+                store = new LocalBindingStore(logger, directory.toFile(), 1L, 10000L, true, expectedSize);
+                break;
+            case "h2": {
+                JdbcDataSource dataSource = new JdbcDataSource();
+                dataSource.setURL("jdbc:h2:file:" + new File(directory.toFile(), "bindings").getAbsolutePath() +
+                        ";MODE=MySQL;DB_CLOSE_ON_EXIT=FALSE");
+                HikariConfig poolConfig = new HikariConfig();
+                poolConfig.setPoolName("Benchmark-H2");
+                poolConfig.setDataSource(dataSource);
+                poolConfig.setMaximumPoolSize(4);
+                store = new H2BindingStore(logger, poolConfig, "iplimit_data", queueOptions, 1000, null, null);
+                break;
+            }
+            case "mysql": {
+                String url = System.getProperty("bench.mysql.url");
+                if (url == null) {
+                    throw new IllegalStateException("mysql基准测试需要设置 -Dbench.mysql.url");
+                }
+                HikariConfig poolConfig = new HikariConfig();
+                poolConfig.setPoolName("Benchmark-MySQL");
+                poolConfig.setJdbcUrl(url);
+                poolConfig.setUsername(System.getProperty("bench.mysql.user", "root"));
+                poolConfig.setPassword(System.getProperty("bench.mysql.password", ""));
+                poolConfig.setMaximumPoolSize(10);
+                store = new MySQLBindingStore(logger, poolConfig, "iplimit_bench_data", queueOptions, 1000, null, null);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("未知的存储类型: " + backend);
+        }
+        if (!store.initialize()) {
+            throw new IllegalStateException("存储初始化失败: " + backend);
+        }
+        if (backend.equals("mysql")) {
+            // 共享的数据库中可能留有上次运行的数据
+            store.removeRange(CidrBlock.of(new IPKey(0L, 0L), 0)).join();
+        }
+        return store;
+    }
+
+    // 将keys全部绑定到owner，endTime为0表示永久绑定
+    static void populate(BindingStore store, IPKey[] keys, UUID owner, long endTime) {
+        long now = System.currentTimeMillis();
+        List<CompletableFuture<?>> batch = new ArrayList<>(POPULATE_BATCH);
+        for (IPKey key : keys) {
+            batch.add(store.compareAndBind(new IPData(key, owner, "owner", endTime, now), now, 1));
+            if (batch.size() >= POPULATE_BATCH) {
+                CompletableFuture.allOf(batch.toArray(new CompletableFuture<?>[0])).join();
+                batch.clear();
+            }
+        }
+        CompletableFuture.allOf(batch.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
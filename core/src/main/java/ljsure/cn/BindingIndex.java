@@ -0,0 +1,313 @@
+package ljsure.cn;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// 内存中的双向绑定索引: 地址 -> 绑定的玩家，玩家 -> 绑定的地址；随每次修改维护统计计数，查询时不访问存储
+// 按显示文本排序的地址用于命令补全，按玩家查找用于限制每个账号可绑定的地址数
+public class BindingIndex implements BindingListener {
+
+    // 分批读取存储的每页数量
+    private static final int LOAD_PAGE_SIZE = 500;
+    // 临时绑定按结束时间分桶的粒度(毫秒)
+    private static final long BUCKET_MILLIS = 60000L;
+
+    // 显示文本 -> 该地址的绑定；玩家UUID -> 该玩家的绑定
+    // 两个方向的值都是单条时直接保存IPData，多条时保存IPData[]；数组不会原地修改，修改时整体替换
+    // 绝大多数地址只有一个玩家、绝大多数玩家只有一个地址，单条保存不额外创建集合
+    private final ConcurrentSkipListMap<String, Object> entries = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<UUID, Object> accounts = new ConcurrentHashMap<>();
+    private final Function<IPKey, String> formatter;
+    // 两个方向需要一起修改，修改在此锁内串行执行；读取不加锁
+    private final Object writeLock = new Object();
+
+    // 计数只随绑定的加入和移除变化，每条绑定恰好加减各一次
+    private final LongAdder permanent = new LongAdder();
+    private final LongAdder temporary = new LongAdder();
+    // 临时绑定按结束时间所在的分钟计数 (分钟 -> 数量)
+    private final ConcurrentSkipListMap<Long, LongAdder> expiryBuckets = new ConcurrentSkipListMap<>();
+    private volatile boolean loaded;
+
+    public BindingIndex(Function<IPKey, String> formatter) {
+        this.formatter = formatter;
+    }
+
+    // 启动时读取存储中的全部绑定，应在异步线程上调用
+    public void load(BindingStore store) {
+        reconcile(store);
+        loaded = true;
+    }
+
+    // 按地址顺序重新读取存储，补上遗漏的修改并删除存储中已不存在的绑定，返回修正的绑定数
+    // 扫描期间新写入的绑定创建时间不早于扫描开始时间，不会被误删
+    public int reconcile(BindingStore store) {
+        long scanStart = System.currentTimeMillis();
+        Map<String, Set<UUID>> seen = new HashMap<>();
+        int corrected = 0;
+        IPKey after = null;
+        while (true) {
+            List<IPData> page = store.page(null, after, LOAD_PAGE_SIZE).join();
+            for (IPData ipData : page) {
+                String text = formatter.apply(ipData.getKey());
+                seen.computeIfAbsent(text, key -> new HashSet<>()).add(ipData.getPlayerUUID());
+                synchronized (writeLock) {
+                    IPData current = find(entries.get(text), ipData.getPlayerUUID());
+                    if (current != null && current.getCreatedAt() >= scanStart) {
+                        // 扫描开始后写入的绑定比读到的数据新
+                        continue;
+                    }
+                    put(text, ipData);
+                    if (current == null || current.getEndTime() != ipData.getEndTime()) {
+                        corrected++;
+                    }
+                }
+            }
+            if (page.size() < LOAD_PAGE_SIZE) {
+                break;
+            }
+            after = page.get(page.size() - 1).getKey();
+        }
+
+        for (Map.Entry<String, Object> entry : entries.entrySet()) {
+            Set<UUID> seenPlayers = seen.get(entry.getKey());
+            for (IPData ipData : rows(entry.getValue())) {
+                if ((seenPlayers == null || !seenPlayers.contains(ipData.getPlayerUUID())) && ipData.getCreatedAt() < scanStart) {
+                    synchronized (writeLock) {
+                        if (removeAccount(entry.getKey(), ipData)) {
+                            corrected++;
+                        }
+                    }
+                }
+            }
+        }
+        return corrected;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // 返回以prefix开头且有未过期绑定的前limit个地址
+    public List<String> complete(String prefix, int limit, long now) {
+        List<String> matches = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : entries.tailMap(prefix, true).entrySet()) {
+            if (matches.size() >= limit || !entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            for (IPData ipData : rows(entry.getValue())) {
+                if (ipData.isActive(now)) {
+                    matches.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+
+    // 玩家在except以外的地址上未过期的绑定数，不创建任何对象
+    public int countOtherAddresses(UUID playerUUID, IPKey except, long now) {
+        Object value = accounts.get(playerUUID);
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof IPData) {
+            return isOtherActive((IPData) value, except, now) ? 1 : 0;
+        }
+        int count = 0;
+        for (IPData ipData : (IPData[]) value) {
+            if (isOtherActive(ipData, except, now)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isOtherActive(IPData ipData, IPKey except, long now) {
+        return ipData.isActive(now) && (ipData.getIpHigh() != except.getHigh() || ipData.getIpLow() != except.getLow());
+    }
+
+    // 删除已过期的绑定，过期记录的批量清理不会通知监听器
+    public void prune(long now) {
+        for (Map.Entry<String, Object> entry : entries.entrySet()) {
+            for (IPData ipData : rows(entry.getValue())) {
+                if (!ipData.isActive(now)) {
+                    synchronized (writeLock) {
+                        removeAccount(entry.getKey(), ipData);
+                    }
+                }
+            }
+        }
+        expiryBuckets.headMap(now / BUCKET_MILLIS).values().removeIf(bucket -> bucket.sum() == 0);
+    }
+
+    // 以下计数在每分钟的清理之间可能包含刚过期的临时绑定
+
+    public long getTotalCount() {
+        return permanent.sum() + temporary.sum();
+    }
+
+    public long getPermanentCount() {
+        return permanent.sum();
+    }
+
+    public long getTemporaryCount() {
+        return temporary.sum();
+    }
+
+    // 有绑定的地址数和玩家数
+    public int getAddressCount() {
+        return entries.size();
+    }
+
+    public int getAccountCount() {
+        return accounts.size();
+    }
+
+    // 结束时间在 (now, now + millis] 内的临时绑定数，精确到分钟
+    public long getExpiringWithin(long now, long millis) {
+        long total = 0;
+        for (LongAdder bucket : expiryBuckets.subMap(now / BUCKET_MILLIS, true, (now + millis) / BUCKET_MILLIS, true).values()) {
+            total += bucket.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public void onBind(IPData ipData) {
+        String text = formatter.apply(ipData.getKey());
+        synchronized (writeLock) {
+            put(text, ipData);
+        }
+    }
+
+    @Override
+    public void onRemove(IPKey key) {
+        String text = formatter.apply(key);
+        synchronized (writeLock) {
+            for (IPData ipData : rows(entries.get(text))) {
+                removeAccount(text, ipData);
+            }
+        }
+    }
+
+    @Override
+    public void onRemoveAccount(IPKey key, UUID playerUUID) {
+        String text = formatter.apply(key);
+        synchronized (writeLock) {
+            IPData ipData = find(entries.get(text), playerUUID);
+            if (ipData != null) {
+                removeAccount(text, ipData);
+            }
+        }
+    }
+
+    @Override
+    public void onRemoveRange(CidrBlock block) {
+        // 地址段删除很少发生，直接遍历
+        synchronized (writeLock) {
+            for (Map.Entry<String, Object> entry : entries.entrySet()) {
+                for (IPData ipData : rows(entry.getValue())) {
+                    if (block.contains(ipData.getIpHigh(), ipData.getIpLow())) {
+                        removeAccount(entry.getKey(), ipData);
+                    }
+                }
+            }
+        }
+    }
+
+    // 以下修改方法由调用方持有writeLock
+
+    // 加入或替换该玩家在该地址上的绑定
+    private void put(String text, IPData ipData) {
+        IPData previous = find(entries.get(text), ipData.getPlayerUUID());
+        entries.put(text, replace(entries.get(text), previous, ipData));
+        accounts.put(ipData.getPlayerUUID(), replace(accounts.get(ipData.getPlayerUUID()), previous, ipData));
+        count(previous, -1);
+        count(ipData, 1);
+    }
+
+    // 仅当该绑定仍在索引中时删除
+    private boolean removeAccount(String text, IPData ipData) {
+        Object value = entries.get(text);
+        if (find(value, ipData.getPlayerUUID()) != ipData) {
+            return false;
+        }
+        Object remaining = replace(value, ipData, null);
+        if (remaining == null) {
+            entries.remove(text);
+        } else {
+            entries.put(text, remaining);
+        }
+        UUID playerUUID = ipData.getPlayerUUID();
+        Object playerRemaining = replace(accounts.get(playerUUID), ipData, null);
+        if (playerRemaining == null) {
+            accounts.remove(playerUUID);
+        } else {
+            accounts.put(playerUUID, playerRemaining);
+        }
+        count(ipData, -1);
+        return true;
+    }
+
+    private static IPData find(Object value, UUID playerUUID) {
+        for (IPData ipData : rows(value)) {
+            if (ipData.getPlayerUUID().equals(playerUUID)) {
+                return ipData;
+            }
+        }
+        return null;
+    }
+
+    // 在单条或数组形式的值中将previous(为null时表示新增)替换为next(为null时表示删除)，返回新的值，没有剩余时返回null
+    private static Object replace(Object value, IPData previous, IPData next) {
+        List<IPData> updated = new ArrayList<>(rows(value));
+        if (previous != null) {
+            updated.remove(previous);
+        }
+        if (next != null) {
+            updated.add(next);
+        }
+        if (updated.isEmpty()) {
+            return null;
+        }
+        return updated.size() == 1 ? updated.get(0) : updated.toArray(new IPData[0]);
+    }
+
+    private static List<IPData> rows(Object value) {
+        if (value == null) {
+            return new ArrayList<>(0);
+        }
+        if (value instanceof IPData) {
+            List<IPData> single = new ArrayList<>(1);
+            single.add((IPData) value);
+            return single;
+        }
+        IPData[] array = (IPData[]) value;
+        List<IPData> list = new ArrayList<>(array.length);
+        for (IPData ipData : array) {
+            list.add(ipData);
+        }
+        return list;
+    }
+
+    private void count(IPData ipData, int delta) {
+        if (ipData == null) {
+            return;
+        }
+        if (ipData.getEndTime() == 0) {
+            permanent.add(delta);
+        } else {
+            temporary.add(delta);
+            expiryBuckets.computeIfAbsent(ipData.getEndTime() / BUCKET_MILLIS, minute -> new LongAdder()).add(delta);
+        }
+    }
+}
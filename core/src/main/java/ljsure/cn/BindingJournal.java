@@ -0,0 +1,365 @@
+package ljsure.cn;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+// 绑定日志的文件格式: 定长记录的追加日志 + 定期生成的快照
+// 日志按代编号 (data-<代>.journal)，快照记录其之后的第一代，启动时加载快照再按顺序重放之后的日志
+public class BindingJournal {
+
+    public static final byte BIND = 1;
+    public static final byte UNBIND = 2;
+    public static final byte EXPIRE = 3;
+    // 删除或到期删除某个地址上单个玩家的绑定，记录中带有玩家UUID
+    public static final byte UNBIND_ACCOUNT = 4;
+    public static final byte EXPIRE_ACCOUNT = 5;
+
+    // 记录格式 (大端序，共112字节):
+    // 0 类型 | 1 名称长度 | 2-7 保留 | 8 IP高64位 | 16 IP低64位 | 24 UUID高64位 | 32 UUID低64位
+    // 40 结束时间 | 48 创建时间 | 56 玩家名(UTF-8，最多48字节) | 104 CRC32C(0-103) | 108 保留
+    public static final int RECORD_SIZE = 112;
+    private static final int NAME_OFFSET = 56;
+    private static final int NAME_CAPACITY = 48;
+    private static final int CRC_OFFSET = 104;
+
+    private static final int JOURNAL_MAGIC = 0x4C49504A; // "LIPJ"
+    private static final int SNAPSHOT_MAGIC = 0x4C495053; // "LIPS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+
+    private final Logger logger;
+    private final File directory;
+    private final String baseName;
+    private FileChannel channel;
+    private long generation;
+
+    public BindingJournal(Logger logger, File directory, String baseName) {
+        this.logger = logger;
+        this.directory = directory;
+        this.baseName = baseName;
+    }
+
+    public File getSnapshotFile() {
+        return new File(directory, baseName + ".snapshot");
+    }
+
+    public File getJournalFile(long generation) {
+        return new File(directory, baseName + "-" + generation + ".journal");
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    // 是否已有快照或日志文件
+    public boolean exists() {
+        return getSnapshotFile().exists() || !listGenerations(0).isEmpty();
+    }
+
+    public static void encode(ByteBuffer buffer, byte type, IPData ipData) {
+        int start = buffer.position();
+        byte[] name = ipData.getPlayerName() != null ? ipData.getPlayerName().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int nameLength = utf8PrefixLength(name, NAME_CAPACITY);
+        buffer.put(type).put((byte) nameLength).put(new byte[6])
+                .putLong(ipData.getIpHigh()).putLong(ipData.getIpLow())
+                .putLong(ipData.getPlayerUUID().getMostSignificantBits()).putLong(ipData.getPlayerUUID().getLeastSignificantBits())
+                .putLong(ipData.getEndTime()).putLong(ipData.getCreatedAt())
+                .put(name, 0, nameLength).put(new byte[NAME_CAPACITY - nameLength]);
+        finish(buffer, start);
+    }
+
+    // 不超过capacity字节的最长UTF-8前缀长度，不在多字节字符的中间截断
+    static int utf8PrefixLength(byte[] utf8, int capacity) {
+        if (utf8.length <= capacity) {
+            return utf8.length;
+        }
+        int length = capacity;
+        // 截断处为后续字节(10xxxxxx)时向前退到该字符的首字节
+        while (length > 0 && (utf8[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        return length;
+    }
+
+    public static void encode(ByteBuffer buffer, byte type, IPKey key) {
+        int start = buffer.position();
+        buffer.put(type).put((byte) 0).put(new byte[6])
+                .putLong(key.getHigh()).putLong(key.getLow())
+                .put(new byte[CRC_OFFSET - 24]);
+        finish(buffer, start);
+    }
+
+    public static void encode(ByteBuffer buffer, byte type, IPKey key, UUID playerUUID) {
+        int start = buffer.position();
+        buffer.put(type).put((byte) 0).put(new byte[6])
+                .putLong(key.getHigh()).putLong(key.getLow())
+                .putLong(playerUUID.getMostSignificantBits()).putLong(playerUUID.getLeastSignificantBits())
+                .put(new byte[CRC_OFFSET - 40]);
+        finish(buffer, start);
+    }
+
+    private static void finish(ByteBuffer buffer, int start) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), buffer.arrayOffset() + start, CRC_OFFSET);
+        buffer.putInt((int) crc.getValue()).putInt(0);
+    }
+
+    // 重放快照及之后的所有日志，返回重放的日志记录数
+    public long replay(RecordHandler handler) throws IOException {
+        long firstGeneration = 0;
+        File snapshotFile = getSnapshotFile();
+        if (snapshotFile.exists()) {
+            try (FileChannel snapshot = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer header = readHeader(snapshot, SNAPSHOT_MAGIC, snapshotFile);
+                firstGeneration = header.getLong(8);
+                long count = header.getLong(16);
+                // 快照是原子替换的，任何损坏都说明文件被外部修改过
+                if (readRecords(snapshot, handler) != count) {
+                    throw new IOException("快照文件已损坏: " + snapshotFile.getName());
+                }
+            }
+        }
+
+        long replayed = 0;
+        generation = firstGeneration;
+        for (long journalGeneration : listGenerations(firstGeneration)) {
+            File journalFile = getJournalFile(journalGeneration);
+            try (FileChannel journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ)) {
+                if (journal.size() < HEADER_SIZE) {
+                    // 创建后尚未写入文件头就中断
+                    continue;
+                }
+                readHeader(journal, JOURNAL_MAGIC, journalFile);
+                replayed += readRecords(journal, handler);
+                if (journal.position() < journal.size()) {
+                    logger.warning("日志 " + journalFile.getName() + " 末尾有 " + (journal.size() - journal.position()) +
+                            " 字节不完整或损坏的记录，已忽略");
+                }
+            }
+            generation = journalGeneration;
+        }
+        return replayed;
+    }
+
+    private ByteBuffer readHeader(FileChannel channel, int magic, File file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header) >= 0) {
+            // 读满文件头
+        }
+        if (header.hasRemaining() || header.getInt(0) != magic || header.getInt(4) != VERSION) {
+            throw new IOException("无法识别的文件格式: " + file.getName());
+        }
+        return header;
+    }
+
+    // 读取到文件末尾或第一条不完整/校验失败的记录为止，返回读取的记录数；channel停在最后一条有效记录之后
+    private long readRecords(FileChannel channel, RecordHandler handler) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 512);
+        long records = 0;
+        long validPosition = channel.position();
+        CRC32C crc = new CRC32C();
+        while (channel.read(buffer) > 0 || buffer.position() > 0) {
+            buffer.flip();
+            if (buffer.remaining() < RECORD_SIZE && channel.position() >= channel.size()) {
+                break;
+            }
+            while (buffer.remaining() >= RECORD_SIZE) {
+                int start = buffer.position();
+                crc.reset();
+                crc.update(buffer.array(), start, CRC_OFFSET);
+                if ((int) crc.getValue() != buffer.getInt(start + CRC_OFFSET)) {
+                    channel.position(validPosition);
+                    return records;
+                }
+                decode(buffer, start, handler);
+                buffer.position(start + RECORD_SIZE);
+                validPosition += RECORD_SIZE;
+                records++;
+            }
+            buffer.compact();
+        }
+        channel.position(validPosition);
+        return records;
+    }
+
+    private void decode(ByteBuffer buffer, int start, RecordHandler handler) {
+        byte type = buffer.get(start);
+        IPKey key = new IPKey(buffer.getLong(start + 8), buffer.getLong(start + 16));
+        if (type == UNBIND || type == EXPIRE) {
+            handler.remove(key, type);
+            return;
+        }
+        UUID playerUUID = new UUID(buffer.getLong(start + 24), buffer.getLong(start + 32));
+        if (type != BIND) {
+            handler.removeAccount(key, playerUUID, type);
+            return;
+        }
+        int nameLength = buffer.get(start + 1) & 0xFF;
+        String name = nameLength == 0 ? null :
+                new String(buffer.array(), start + NAME_OFFSET, Math.min(nameLength, NAME_CAPACITY), StandardCharsets.UTF_8);
+        handler.bind(new IPData(key, playerUUID, name, buffer.getLong(start + 40), buffer.getLong(start + 48)));
+    }
+
+    // 创建并切换到新一代日志，之后的追加都写入新文件
+    public void openGeneration(long newGeneration) throws IOException {
+        Files.createDirectories(directory.toPath());
+        FileChannel newChannel = FileChannel.open(getJournalFile(newGeneration).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(JOURNAL_MAGIC).putInt(VERSION).putLong(newGeneration).putLong(0L).flip();
+        while (header.hasRemaining()) {
+            newChannel.write(header);
+        }
+        newChannel.force(true);
+        if (channel != null) {
+            channel.close();
+        }
+        channel = newChannel;
+        generation = newGeneration;
+    }
+
+    // 追加一批记录并刷入磁盘
+    public void append(ByteBuffer records) throws IOException {
+        while (records.hasRemaining()) {
+            channel.write(records);
+        }
+        channel.force(false);
+    }
+
+    // 写入快照: firstGeneration为快照之后的第一代日志
+    public void writeSnapshot(long firstGeneration, BindingSource bindings) throws IOException {
+        File snapshotFile = getSnapshotFile();
+        File tempFile = new File(directory, snapshotFile.getName() + ".tmp");
+        try (FileChannel snapshot = FileChannel.open(tempFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 512);
+            buffer.putInt(SNAPSHOT_MAGIC).putInt(VERSION).putLong(firstGeneration).putLong(0L);
+            long[] count = new long[1];
+            try {
+                bindings.forEach(ipData -> {
+                    if (buffer.remaining() < RECORD_SIZE) {
+                        writeFully(snapshot, buffer);
+                    }
+                    encode(buffer, BIND, ipData);
+                    count[0]++;
+                });
+                writeFully(snapshot, buffer);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            // 记录数在写完所有记录后补写到文件头
+            snapshot.write(ByteBuffer.allocate(8).putLong(0, count[0]), 16);
+            snapshot.force(true);
+        }
+        try {
+            Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    // 快照之后的日志都没有记录且最新一代为generation时返回true，即generation时的内存表与磁盘上的数据一致
+    public boolean isSettledAt(long generation) throws IOException {
+        long firstGeneration = 0;
+        File snapshotFile = getSnapshotFile();
+        if (snapshotFile.exists()) {
+            try (FileChannel snapshot = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+                firstGeneration = readHeader(snapshot, SNAPSHOT_MAGIC, snapshotFile).getLong(8);
+            }
+        }
+        List<Long> generations = listGenerations(firstGeneration);
+        if (generations.isEmpty() || generations.get(generations.size() - 1) != generation) {
+            return false;
+        }
+        for (long journalGeneration : generations) {
+            if (getJournalFile(journalGeneration).length() > HEADER_SIZE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 不重放日志，直接从generation继续
+    public void resume(long generation) {
+        this.generation = generation;
+    }
+
+    // 删除已被快照包含的旧日志
+    public void deleteBefore(long firstGeneration) {
+        for (long oldGeneration : listGenerations(0)) {
+            if (oldGeneration < firstGeneration && !getJournalFile(oldGeneration).delete()) {
+                logger.warning("无法删除旧日志: " + getJournalFile(oldGeneration).getName());
+            }
+        }
+    }
+
+    private List<Long> listGenerations(long from) {
+        List<Long> generations = new ArrayList<>();
+        String prefix = baseName + "-";
+        String[] names = directory.list();
+        if (names == null) {
+            return generations;
+        }
+        for (String name : names) {
+            if (!name.startsWith(prefix) || !name.endsWith(".journal")) {
+                continue;
+            }
+            try {
+                long fileGeneration = Long.parseLong(name.substring(prefix.length(), name.length() - ".journal".length()));
+                if (fileGeneration >= from) {
+                    generations.add(fileGeneration);
+                }
+            } catch (NumberFormatException ignored) {
+                // 不是本插件的日志文件
+            }
+        }
+        generations.sort(null);
+        return generations;
+    }
+
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // 快照的数据来源，写入快照时遍历一次
+    public interface BindingSource {
+        void forEach(Consumer<IPData> action) throws IOException;
+    }
+
+    public interface RecordHandler {
+        void bind(IPData ipData);
+
+        void remove(IPKey key, byte type);
+
+        void removeAccount(IPKey key, UUID playerUUID, byte type);
+    }
+}
@@ -0,0 +1,71 @@
+package ljsure.cn;
+
+import java.util.UUID;
+
+// 绑定变化的监听器: 在存储线程上调用，实现不能阻塞
+public interface BindingListener {
+
+    // 不做任何处理的监听器，存储未设置监听器时使用
+    BindingListener NONE = new BindingListener() {
+        @Override
+        public void onBind(IPData ipData) {
+        }
+
+        @Override
+        public void onRemove(IPKey key) {
+        }
+
+        @Override
+        public void onRemoveAccount(IPKey key, UUID playerUUID) {
+        }
+
+        @Override
+        public void onRemoveRange(CidrBlock block) {
+        }
+    };
+
+    // 依次通知多个监听器
+    static BindingListener of(BindingListener... listeners) {
+        return new BindingListener() {
+            @Override
+            public void onBind(IPData ipData) {
+                for (BindingListener listener : listeners) {
+                    listener.onBind(ipData);
+                }
+            }
+
+            @Override
+            public void onRemove(IPKey key) {
+                for (BindingListener listener : listeners) {
+                    listener.onRemove(key);
+                }
+            }
+
+            @Override
+            public void onRemoveAccount(IPKey key, UUID playerUUID) {
+                for (BindingListener listener : listeners) {
+                    listener.onRemoveAccount(key, playerUUID);
+                }
+            }
+
+            @Override
+            public void onRemoveRange(CidrBlock block) {
+                for (BindingListener listener : listeners) {
+                    listener.onRemoveRange(block);
+                }
+            }
+        };
+    }
+
+    // 新增或覆盖了某个玩家在该地址上的绑定
+    void onBind(IPData ipData);
+
+    // 删除了该地址上所有玩家的绑定
+    void onRemove(IPKey key);
+
+    // 删除了该地址上单个玩家的绑定 (包括到期删除)
+    void onRemoveAccount(IPKey key, UUID playerUUID);
+
+    // 删除了地址段内的全部绑定
+    void onRemoveRange(CidrBlock block);
+}
@@ -0,0 +1,220 @@
+package ljsure.cn;
+
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+// 在两个存储之间迁移绑定: 按地址顺序分页读取源存储，分批写入目标存储，不会一次性读入全部绑定
+// 每批写入完成后记录进度，中断或取消后再次执行相同的迁移时从上次的位置继续；全部写入后比较两边的数量和校验和
+public class BindingMigration implements Runnable {
+
+    // 每批读取和写入的绑定数
+    private static final int BATCH_SIZE = 1000;
+    // 报告进度的最短间隔(毫秒)
+    private static final long PROGRESS_INTERVAL = 5000L;
+    // 校验时忽略即将过期的绑定，避免校验期间两边各自删除到期记录造成误报
+    private static final long VERIFY_MARGIN = 600000L;
+
+    private final Logger logger;
+    private final File checkpointFile;
+    private final String sourceType;
+    private final String targetType;
+    private final BindingStore source;
+    private final BindingStore target;
+    // 进度和结果消息，在迁移线程上调用
+    private final Consumer<String> reporter;
+
+    private volatile boolean cancelled;
+    private volatile long copied;
+    private volatile long total;
+
+    public BindingMigration(Logger logger, File checkpointFile, String sourceType, String targetType,
+                            BindingStore source, BindingStore target, Consumer<String> reporter) {
+        this.logger = logger;
+        this.checkpointFile = checkpointFile;
+        this.sourceType = sourceType;
+        this.targetType = targetType;
+        this.source = source;
+        this.target = target;
+        this.reporter = reporter;
+    }
+
+    public String getSourceType() { return sourceType; }
+    public String getTargetType() { return targetType; }
+    public long getCopied() { return copied; }
+    public long getTotal() { return total; }
+
+    // 在当前批次写入完成后停止，保留进度
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public void run() {
+        long startedAt = System.currentTimeMillis();
+        IPKey after = null;
+        ConfigView checkpoint = loadCheckpoint();
+        if (checkpoint != null && sourceType.equals(checkpoint.getString("from")) && targetType.equals(checkpoint.getString("to"))) {
+            after = new IPKey(checkpoint.getLong("after-high", 0L), checkpoint.getLong("after-low", 0L));
+            copied = checkpoint.getLong("copied", 0L);
+            report("从上次中断的位置 " + after + " 继续迁移，已迁移 " + copied + " 条");
+        } else {
+            if (checkpoint != null) {
+                report("忽略未完成的迁移 " + checkpoint.getString("from") + " -> " + checkpoint.getString("to") + " 的进度");
+            }
+            int existing = target.count().join();
+            if (existing > 0) {
+                report("目标存储中已有 " + existing + " 条记录，迁移后将与源存储的记录合并，校验结果可能不一致");
+            }
+        }
+        total = source.count().join();
+        report("开始迁移 " + sourceType + " -> " + targetType + "，源存储共 " + total + " 条记录");
+
+        long lastReport = System.currentTimeMillis();
+        long copiedAtStart = copied;
+        while (!cancelled) {
+            List<IPData> page = source.page(null, after, BATCH_SIZE).join();
+            if (page.isEmpty()) {
+                break;
+            }
+            // 已过期的绑定不再迁移；玩家名为空时写入空字符串，数据库中该列不允许为空
+            long now = System.currentTimeMillis();
+            List<IPData> batch = new ArrayList<>(page.size());
+            for (IPData ipData : page) {
+                if (ipData.isActive(now)) {
+                    batch.add(ipData.getPlayerName() != null ? ipData
+                            : new IPData(ipData.getKey(), ipData.getPlayerUUID(), "", ipData.getEndTime(), ipData.getCreatedAt()));
+                }
+            }
+            if (!batch.isEmpty()) {
+                target.putAll(batch).join();
+            }
+            after = page.get(page.size() - 1).getKey();
+            copied += batch.size();
+            saveCheckpoint(after);
+
+            if (page.size() < BATCH_SIZE) {
+                break;
+            }
+            if (now - lastReport >= PROGRESS_INTERVAL) {
+                lastReport = now;
+                long rate = (copied - copiedAtStart) * 1000L / Math.max(1L, now - startedAt);
+                report("已迁移 " + copied + " / " + total + " 条 (" + rate + " 条/秒)");
+            }
+        }
+        if (cancelled) {
+            report("迁移已暂停，已迁移 " + copied + " 条；再次执行 /ip migrate " + sourceType + " " + targetType + " 继续");
+            return;
+        }
+
+        report("已迁移 " + copied + " 条，耗时 " + (System.currentTimeMillis() - startedAt) / 1000L + " 秒，正在校验...");
+        long cutoff = System.currentTimeMillis() + VERIFY_MARGIN;
+        Digest sourceDigest = digest(source, cutoff);
+        Digest targetDigest = digest(target, cutoff);
+        if (sourceDigest.count == targetDigest.count && sourceDigest.sum == targetDigest.sum) {
+            deleteCheckpoint();
+            report("迁移完成，校验一致: " + sourceDigest.count + " 条记录，校验和 " + Long.toHexString(sourceDigest.sum));
+        } else {
+            // 迁移已全部执行，保留进度没有意义；不一致通常是迁移期间源存储有新的绑定或删除
+            deleteCheckpoint();
+            report("迁移完成但校验不一致: 源存储 " + sourceDigest.count + " 条 (校验和 " + Long.toHexString(sourceDigest.sum) +
+                    ")，目标存储 " + targetDigest.count + " 条 (校验和 " + Long.toHexString(targetDigest.sum) +
+                    ")；请先 /ip disable 停止新的绑定后重新迁移");
+        }
+    }
+
+    // 流式读取存储中cutoff时仍有效的全部绑定，计算数量和与顺序无关的校验和
+    private static Digest digest(BindingStore store, long cutoff) {
+        Digest digest = new Digest();
+        IPKey after = null;
+        while (true) {
+            List<IPData> page = store.page(null, after, BATCH_SIZE).join();
+            for (IPData ipData : page) {
+                if (ipData.isActive(cutoff)) {
+                    digest.count++;
+                    digest.sum += hash(ipData);
+                }
+            }
+            if (page.size() < BATCH_SIZE) {
+                return digest;
+            }
+            after = page.get(page.size() - 1).getKey();
+        }
+    }
+
+    private static long hash(IPData ipData) {
+        long hash = mix(ipData.getIpHigh()) ^ ipData.getIpLow();
+        hash = mix(hash) ^ ipData.getPlayerUUID().getMostSignificantBits();
+        hash = mix(hash) ^ ipData.getPlayerUUID().getLeastSignificantBits();
+        hash = mix(hash) ^ ipData.getEndTime();
+        hash = mix(hash) ^ ipData.getCreatedAt();
+        String name = ipData.getPlayerName();
+        hash = mix(hash) ^ (name != null ? name.hashCode() : 0);
+        return mix(hash);
+    }
+
+    // MurmurHash3的64位混合函数
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private ConfigView loadCheckpoint() {
+        if (!checkpointFile.exists()) {
+            return null;
+        }
+        try {
+            return MapConfigView.load(checkpointFile, '.');
+        } catch (IOException e) {
+            logger.warning("读取迁移进度失败，将从头开始迁移: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // 先写临时文件再替换，中途崩溃时保留上一次的进度
+    private void saveCheckpoint(IPKey after) {
+        Map<String, Object> checkpoint = new LinkedHashMap<>();
+        checkpoint.put("from", sourceType);
+        checkpoint.put("to", targetType);
+        checkpoint.put("after-high", after.getHigh());
+        checkpoint.put("after-low", after.getLow());
+        checkpoint.put("copied", copied);
+        File temp = new File(checkpointFile.getPath() + ".tmp");
+        try {
+            Files.write(temp.toPath(), new Yaml().dump(checkpoint).getBytes(StandardCharsets.UTF_8));
+            Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warning("保存迁移进度失败: " + e.getMessage());
+        }
+    }
+
+    private void deleteCheckpoint() {
+        if (checkpointFile.exists() && !checkpointFile.delete()) {
+            logger.warning("无法删除迁移进度文件: " + checkpointFile.getName());
+        }
+    }
+
+    private void report(String message) {
+        logger.info(message);
+        reporter.accept(message);
+    }
+
+    private static final class Digest {
+        private long count;
+        private long sum;
+    }
+}
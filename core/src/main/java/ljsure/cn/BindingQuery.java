@@ -0,0 +1,40 @@
+package ljsure.cn;
+
+import java.util.UUID;
+
+// 批量查找绑定的条件: 地址段、玩家UUID、创建时间早于某一时刻，未设置的条件不限制，多个条件同时满足
+public final class BindingQuery {
+
+    private final CidrBlock range;
+    private final UUID playerUUID;
+    // 为0时不限制创建时间
+    private final long createdBefore;
+
+    private BindingQuery(CidrBlock range, UUID playerUUID, long createdBefore) {
+        this.range = range;
+        this.playerUUID = playerUUID;
+        this.createdBefore = createdBefore;
+    }
+
+    public static BindingQuery inRange(CidrBlock range) {
+        return new BindingQuery(range, null, 0L);
+    }
+
+    public static BindingQuery ofPlayer(UUID playerUUID) {
+        return new BindingQuery(null, playerUUID, 0L);
+    }
+
+    public static BindingQuery createdBefore(long time) {
+        return new BindingQuery(null, null, time);
+    }
+
+    public CidrBlock getRange() { return range; }
+    public UUID getPlayerUUID() { return playerUUID; }
+    public long getCreatedBefore() { return createdBefore; }
+
+    public boolean matches(IPData ipData) {
+        return (range == null || range.contains(ipData.getIpHigh(), ipData.getIpLow()))
+                && (playerUUID == null || playerUUID.equals(ipData.getPlayerUUID()))
+                && (createdBefore <= 0 || ipData.getCreatedAt() < createdBefore);
+    }
+}
@@ -0,0 +1,109 @@
+package ljsure.cn;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+// 绑定存储接口: 所有方法都可以在任意线程调用，耗时操作在存储自己的线程上完成
+// 每个地址可有多个玩家的绑定，每条绑定以(地址, 玩家UUID)区分
+public interface BindingStore {
+
+    // 存储名称，用于状态显示
+    String getName();
+
+    boolean initialize();
+
+    // 该地址上所有玩家的绑定，没有时为空列表
+    CompletableFuture<List<IPData>> get(IPKey key);
+
+    // 玩家在该键上没有未过期的绑定、且其他玩家未过期的绑定已达到maxAccounts个时返回冲突，
+    // 否则写入或续期该玩家的绑定 (同一存储实例内原子执行)
+    CompletableFuture<BindResult> compareAndBind(IPData binding, long now, int maxAccounts);
+
+    // 删除该地址上所有玩家的绑定
+    CompletableFuture<Boolean> remove(IPKey key);
+
+    // 删除地址段内的所有绑定，返回删除数量
+    CompletableFuture<Integer> removeRange(CidrBlock block);
+
+    // 按结束时间升序返回 0 < end_time <= before 的绑定
+    CompletableFuture<List<IPData>> scanExpiring(long before, int limit);
+
+    // 删除已过期的绑定，返回删除数量
+    CompletableFuture<Integer> removeExpired(long now);
+
+    CompletableFuture<Integer> count();
+
+    // 按地址顺序返回符合条件、地址大于after(为null时从头开始)的约limit条绑定，用于批量删除
+    // 与page相同，同一地址符合条件的绑定总在同一页返回
+    CompletableFuture<List<IPData>> find(BindingQuery query, IPKey after, int limit);
+
+    // 删除一批绑定 (只删除各条绑定对应玩家在该地址上的绑定)，全部写入磁盘或数据库后完成，返回删除的数量
+    CompletableFuture<Integer> removeAll(List<IPData> bindings);
+
+    // 直接写入一批绑定，覆盖同一地址同一玩家的已有记录且不检查冲突，全部写入磁盘或数据库后完成；用于在存储之间迁移
+    CompletableFuture<Integer> putAll(List<IPData> bindings);
+
+    // 按地址顺序分页: 返回range内(为null时不限)、地址大于after(为null时从头开始)的约limit条绑定
+    // 同一地址的绑定总在同一页返回，结果可能超过limit条；返回少于limit条时表示已读完，下一页从最后一条的地址之后开始
+    CompletableFuture<List<IPData>> page(CidrBlock range, IPKey after, int limit);
+
+    // 存储内部状态的即时值 (例如队列长度、缓存命中次数)，用于监控
+    Map<String, Number> getGauges();
+
+    // 设置绑定变化的监听器；不会通知过期记录的批量清理，监听方需要自行忽略已过期的绑定
+    void setListener(BindingListener listener);
+
+    void close();
+
+    // 在同一地址的全部绑定中查找冲突，规则与compareAndBind相同；返回阻止绑定的最早一条，没有冲突时返回null
+    static IPData findConflict(List<IPData> bindings, UUID playerUUID, long now, int maxAccounts) {
+        IPData earliest = null;
+        int others = 0;
+        for (IPData existing : bindings) {
+            if (!existing.isActive(now)) {
+                continue;
+            }
+            if (existing.getPlayerUUID().equals(playerUUID)) {
+                return null;
+            }
+            others++;
+            if (earliest == null || existing.getCreatedAt() < earliest.getCreatedAt()) {
+                earliest = existing;
+            }
+        }
+        return others >= maxAccounts ? earliest : null;
+    }
+
+    // 玩家在该地址上是否已有未过期的绑定 (本次绑定只是续期)
+    static boolean isBound(List<IPData> bindings, UUID playerUUID, long now) {
+        for (IPData existing : bindings) {
+            if (existing.isActive(now) && existing.getPlayerUUID().equals(playerUUID)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 绑定结果: conflict为true时binding为阻止本次绑定的已有记录 (多个时为最早的一条)，否则为新写入的记录
+    // created表示写入前该玩家在该地址上没有未过期的绑定 (不是续期)
+    final class BindResult {
+        private final IPData binding;
+        private final boolean conflict;
+        private final boolean created;
+
+        private BindResult(IPData binding, boolean conflict, boolean created) {
+            this.binding = binding;
+            this.conflict = conflict;
+            this.created = created;
+        }
+
+        public static BindResult bound(IPData binding, boolean created) { return new BindResult(binding, false, created); }
+        public static BindResult conflict(IPData existing) { return new BindResult(existing, true, false); }
+
+        public IPData getBinding() { return binding; }
+        public boolean isConflict() { return conflict; }
+        public boolean isCreated() { return created; }
+    }
+}
@@ -0,0 +1,49 @@
+package ljsure.cn;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+// 本地存储使用的绑定表: 每个地址可有多个玩家的绑定，以(地址, 玩家)区分；修改由调用方串行执行，读取可在任意线程并发进行
+public interface BindingTable {
+
+    // 该地址上所有玩家的绑定，没有时返回空列表
+    List<IPData> get(long high, long low);
+
+    // 玩家在该地址上没有未过期的绑定、且其他玩家未过期的绑定已达到maxAccounts个时，返回其中最早创建的一条，否则返回null
+    // 没有冲突时不创建任何对象
+    IPData findConflict(long high, long low, UUID playerUUID, long now, int maxAccounts);
+
+    // 该玩家在该地址上是否有未过期的绑定
+    boolean isBound(long high, long low, UUID playerUUID, long now);
+
+    // 写入绑定，覆盖同一玩家在该地址上的已有绑定
+    void put(IPData ipData);
+
+    // 删除该地址上所有玩家的绑定，返回删除的数量
+    int remove(long high, long low);
+
+    boolean removeAccount(long high, long low, UUID playerUUID);
+
+    // 仅当该玩家绑定的结束时间仍为endTime时删除
+    boolean removeIfEndTime(long high, long low, UUID playerUUID, long endTime);
+
+    // 绑定数 (同一地址上的每个玩家各计一条)
+    int size();
+
+    void forEach(Consumer<? super IPData> action);
+
+    // 按地址顺序返回range内(为null时不限)、地址大于after(为null时从头开始)的约limit条绑定
+    // 同一地址的绑定总在同一页返回，因此最后一个地址的绑定可能使结果超过limit条
+    List<IPData> page(CidrBlock range, IPKey after, int limit);
+
+    void clear();
+
+    // 返回用于写入快照的只读视图，调用时调用方需阻塞修改；遍历视图时可以继续修改，
+    // 调用之后未被修改的绑定都会出现在结果中，被修改的绑定可能是修改前或修改后的内容 (修改在之后的日志中，重放时覆盖)
+    BindingJournal.BindingSource snapshot() throws IOException;
+
+    // journalGeneration为与当前内容一致的日志代
+    void close(long journalGeneration);
+}
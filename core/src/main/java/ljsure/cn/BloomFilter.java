@@ -0,0 +1,106 @@
+package ljsure.cn;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// 已绑定IP的布隆过滤器: 判定为不存在的IP一定没有绑定，可以跳过数据库查询
+// 只能添加不能删除，删除和过期的绑定由定期重建清除；位数组用CAS置位，并发添加和查询无需加锁
+public class BloomFilter {
+
+    private static final int MAX_HASHES = 16;
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    // 已置1的位数，用于估算当前的误判率
+    private final LongAdder setBits = new LongAdder();
+
+    private BloomFilter(long bitCount, int hashCount) {
+        this.bitCount = bitCount;
+        this.hashCount = hashCount;
+        this.bits = new AtomicLongArray((int) ((bitCount + 63) >>> 6));
+    }
+
+    // 按预计的IP数量和目标误判率计算大小，位数组不超过maxBytes
+    public static BloomFilter create(long expectedInsertions, double falsePositiveRate, long maxBytes) {
+        long n = Math.max(1L, expectedInsertions);
+        double p = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+        long optimalBits = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        long maxBits = Math.min(Math.max(64L, maxBytes * 8L), (long) Integer.MAX_VALUE * 64L);
+        long bitCount = Math.max(64L, Math.min(optimalBits, maxBits));
+        int hashCount = (int) Math.round((double) bitCount / n * Math.log(2));
+        return new BloomFilter(bitCount, Math.max(1, Math.min(MAX_HASHES, hashCount)));
+    }
+
+    public void add(IPKey key) {
+        long hash1 = mix(key.getHigh() ^ mix(key.getLow()));
+        long hash2 = mix(hash1 ^ key.getLow()) | 1L;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            while (true) {
+                long word = bits.get(index);
+                if ((word & mask) != 0) {
+                    break;
+                }
+                if (bits.compareAndSet(index, word, word | mask)) {
+                    setBits.increment();
+                    break;
+                }
+            }
+        }
+    }
+
+    // 返回false时IP一定不在过滤器中
+    public boolean mightContain(IPKey key) {
+        long hash1 = mix(key.getHigh() ^ mix(key.getLow()));
+        long hash2 = mix(hash1 ^ key.getLow()) | 1L;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitCount() { return bitCount; }
+    public int getHashCount() { return hashCount; }
+
+    public double getFillRatio() {
+        return (double) setBits.sum() / bitCount;
+    }
+
+    // 按当前置位比例估算的误判率
+    public double getEstimatedFalsePositiveRate() {
+        return Math.pow(getFillRatio(), hashCount);
+    }
+
+    // MurmurHash3的64位混合函数
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    // 过滤器参数，rebuildInterval为定期重建的间隔(毫秒)
+    public static class Options {
+        private final double falsePositiveRate;
+        private final long maxBytes;
+        private final long rebuildInterval;
+
+        public Options(double falsePositiveRate, long maxBytes, long rebuildInterval) {
+            this.falsePositiveRate = falsePositiveRate;
+            this.maxBytes = Math.max(1024L, maxBytes);
+            this.rebuildInterval = Math.max(60000L, rebuildInterval);
+        }
+
+        public double getFalsePositiveRate() { return falsePositiveRate; }
+        public long getMaxBytes() { return maxBytes; }
+        public long getRebuildInterval() { return rebuildInterval; }
+    }
+}
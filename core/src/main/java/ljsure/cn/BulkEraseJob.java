@@ -0,0 +1,89 @@
+package ljsure.cn;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+// 批量删除绑定的后台任务: 按地址顺序分批查找符合条件的绑定并删除，每批之间可以取消；dryRun时只统计数量
+public class BulkEraseJob implements Runnable {
+
+    // 每批查找和删除的绑定数
+    private static final int BATCH_SIZE = 500;
+    // 报告进度的最短间隔(毫秒)
+    private static final long PROGRESS_INTERVAL = 5000L;
+
+    private final Logger logger;
+    private final BindingStore store;
+    private final BindingQuery query;
+    // 删除条件的说明，用于进度消息
+    private final String description;
+    private final boolean dryRun;
+    private final Consumer<String> reporter;
+
+    private volatile boolean cancelled;
+    private volatile long matched;
+    private volatile long removed;
+
+    public BulkEraseJob(Logger logger, BindingStore store, BindingQuery query, String description,
+                        boolean dryRun, Consumer<String> reporter) {
+        this.logger = logger;
+        this.store = store;
+        this.query = query;
+        this.description = description;
+        this.dryRun = dryRun;
+        this.reporter = reporter;
+    }
+
+    public String getDescription() { return description; }
+    public boolean isDryRun() { return dryRun; }
+    public long getMatched() { return matched; }
+    public long getRemoved() { return removed; }
+
+    // 在当前批次完成后停止，已删除的绑定不会恢复
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public void run() {
+        long startedAt = System.currentTimeMillis();
+        long lastReport = startedAt;
+        report((dryRun ? "正在统计" : "开始删除") + description + "的绑定...");
+        IPKey after = null;
+        while (!cancelled) {
+            List<IPData> page = store.find(query, after, BATCH_SIZE).join();
+            if (page.isEmpty()) {
+                break;
+            }
+            matched += page.size();
+            if (!dryRun) {
+                // 只删除符合条件的绑定，同一IP上其他玩家的绑定保留
+                removed += store.removeAll(page).join();
+            }
+            if (page.size() < BATCH_SIZE) {
+                break;
+            }
+            after = page.get(page.size() - 1).getKey();
+
+            long now = System.currentTimeMillis();
+            if (now - lastReport >= PROGRESS_INTERVAL) {
+                lastReport = now;
+                report(dryRun ? "已找到 " + matched + " 条..." : "已删除 " + removed + " 条...");
+            }
+        }
+
+        long seconds = (System.currentTimeMillis() - startedAt) / 1000L;
+        if (cancelled) {
+            report("已取消" + (dryRun ? "统计，已找到 " + matched : "删除，已删除 " + removed) + " 条");
+        } else if (dryRun) {
+            report(description + "共有 " + matched + " 条绑定 (仅统计，未删除)");
+        } else {
+            report("已删除" + description + "的 " + removed + " 条绑定，耗时 " + seconds + " 秒");
+        }
+    }
+
+    private void report(String message) {
+        logger.info(message);
+        reporter.accept(message);
+    }
+}
@@ -0,0 +1,104 @@
+package ljsure.cn;
+
+// CIDR地址段，前缀长度统一按128位计算 (IPv4的/n对应IPv4映射地址的/96+n)
+public final class CidrBlock {
+
+    private final long high;
+    private final long low;
+    private final int prefixLength;
+
+    private CidrBlock(long high, long low, int prefixLength) {
+        this.high = high & maskHigh(prefixLength);
+        this.low = low & maskLow(prefixLength);
+        this.prefixLength = prefixLength;
+    }
+
+    public static CidrBlock of(IPKey key, int prefixLength) {
+        if (prefixLength < 0 || prefixLength > 128) {
+            throw new IllegalArgumentException("无效的前缀长度: " + prefixLength);
+        }
+        return new CidrBlock(key.getHigh(), key.getLow(), prefixLength);
+    }
+
+    // 解析 "地址" 或 "地址/前缀长度"，无效时返回null
+    public static CidrBlock parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        int slash = text.indexOf('/');
+        IPKey key = IPKey.parse(slash >= 0 ? text.substring(0, slash).trim() : text.trim());
+        if (key == null) {
+            return null;
+        }
+        if (slash < 0) {
+            return new CidrBlock(key.getHigh(), key.getLow(), 128);
+        }
+
+        int length;
+        try {
+            length = Integer.parseInt(text.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        int maxLength = key.isIPv4() ? 32 : 128;
+        if (length < 0 || length > maxLength) {
+            return null;
+        }
+        return new CidrBlock(key.getHigh(), key.getLow(), key.isIPv4() ? 96 + length : length);
+    }
+
+    public static long maskHigh(int prefixLength) {
+        if (prefixLength >= 64) {
+            return -1L;
+        }
+        return prefixLength == 0 ? 0L : -1L << (64 - prefixLength);
+    }
+
+    public static long maskLow(int prefixLength) {
+        if (prefixLength <= 64) {
+            return 0L;
+        }
+        return prefixLength == 128 ? -1L : -1L << (128 - prefixLength);
+    }
+
+    public boolean contains(long high, long low) {
+        return (high & maskHigh(prefixLength)) == this.high && (low & maskLow(prefixLength)) == this.low;
+    }
+
+    public long getHigh() { return high; }
+    public long getLow() { return low; }
+    public int getPrefixLength() { return prefixLength; }
+    public IPKey getNetwork() { return new IPKey(high, low); }
+
+    // 地址段内的最后一个地址，与getNetwork()一起构成有序索引上的查询范围
+    public IPKey getLastAddress() {
+        return new IPKey(high | ~maskHigh(prefixLength), low | ~maskLow(prefixLength));
+    }
+
+    public boolean isIPv4() {
+        return prefixLength >= 96 && IPKey.isIPv4(high, low);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CidrBlock)) return false;
+        CidrBlock other = (CidrBlock) o;
+        return high == other.high && low == other.low && prefixLength == other.prefixLength;
+    }
+
+    @Override
+    public int hashCode() {
+        return IPKey.hash(high, low) * 31 + prefixLength;
+    }
+
+    // 单个地址不显示前缀长度
+    @Override
+    public String toString() {
+        String address = IPKey.format(high, low);
+        if (prefixLength == 128) {
+            return address;
+        }
+        return address + "/" + (isIPv4() ? prefixLength - 96 : prefixLength);
+    }
+}
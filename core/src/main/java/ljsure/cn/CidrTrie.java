@@ -0,0 +1,78 @@
+package ljsure.cn;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+// 128位二叉前缀树，用于最长前缀匹配；构建后不可修改，修改时整体重建
+// 查询最多走128步，与已加载的地址段数量无关
+public final class CidrTrie {
+
+    private static final CidrTrie EMPTY = new CidrTrie(new int[2], new boolean[1]);
+
+    // 节点i的两个子节点位于children[i * 2]和children[i * 2 + 1]，0表示不存在
+    private final int[] children;
+    private final boolean[] terminal;
+
+    private CidrTrie(int[] children, boolean[] terminal) {
+        this.children = children;
+        this.terminal = terminal;
+    }
+
+    public static CidrTrie empty() {
+        return EMPTY;
+    }
+
+    public static CidrTrie build(Collection<CidrBlock> blocks) {
+        if (blocks.isEmpty()) {
+            return EMPTY;
+        }
+
+        int[] children = new int[64];
+        boolean[] terminal = new boolean[32];
+        int nodes = 1;
+        for (CidrBlock block : blocks) {
+            int node = 0;
+            for (int depth = 0; depth < block.getPrefixLength(); depth++) {
+                int slot = node * 2 + bit(block.getHigh(), block.getLow(), depth);
+                if (children[slot] == 0) {
+                    if (nodes == terminal.length) {
+                        terminal = Arrays.copyOf(terminal, nodes * 2);
+                        children = Arrays.copyOf(children, nodes * 4);
+                    }
+                    children[slot] = nodes++;
+                }
+                node = children[slot];
+            }
+            terminal[node] = true;
+        }
+        return new CidrTrie(Arrays.copyOf(children, nodes * 2), Arrays.copyOf(terminal, nodes));
+    }
+
+    // 返回匹配的最长前缀长度，没有匹配时返回-1
+    public int longestMatch(long high, long low) {
+        int match = terminal[0] ? 0 : -1;
+        int node = 0;
+        for (int depth = 0; depth < 128; depth++) {
+            node = children[node * 2 + bit(high, low, depth)];
+            if (node == 0) {
+                break;
+            }
+            if (terminal[node]) {
+                match = depth + 1;
+            }
+        }
+        return match;
+    }
+
+    public boolean contains(long high, long low) {
+        return longestMatch(high, low) >= 0;
+    }
+
+    public boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    private static int bit(long high, long low, int depth) {
+        return depth < 64 ? (int) (high >>> (63 - depth)) & 1 : (int) (low >>> (127 - depth)) & 1;
+    }
+}
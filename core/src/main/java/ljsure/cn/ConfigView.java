@@ -0,0 +1,36 @@
+package ljsure.cn;
+
+import java.util.List;
+import java.util.Set;
+
+// 与平台无关的只读配置: Paper端包装插件的FileConfiguration，代理端使用从config.yml读取的键值表
+// 取值方法与Bukkit的ConfigurationSection一致: 路径不存在或类型不符时返回默认值
+public interface ConfigView {
+
+    boolean contains(String path);
+
+    // 路径不存在时返回null
+    String getString(String path);
+
+    String getString(String path, String def);
+
+    boolean getBoolean(String path, boolean def);
+
+    int getInt(String path, int def);
+
+    long getLong(String path, long def);
+
+    double getDouble(String path, double def);
+
+    // 路径不存在时返回空列表
+    List<String> getStringList(String path);
+
+    // 路径不是配置段时返回null
+    ConfigView getSection(String path);
+
+    // 直接子键
+    Set<String> getKeys();
+
+    // 路径上的值的文本形式，配置段包含其下的全部键值；用于判断重新加载时该部分是否有修改
+    String describe(String path);
+}
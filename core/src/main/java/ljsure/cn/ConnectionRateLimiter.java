@@ -0,0 +1,148 @@
+package ljsure.cn;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// 登录频率限制: 按单个IP和按地址段各一组令牌桶，在访问存储之前拒绝过于频繁的连接
+// 每个桶只保存一个"理论到达时间"(GCRA算法，与令牌桶等价)，用CAS更新，不加锁
+public class ConnectionRateLimiter {
+
+    // 桶已满时由登录线程顺带清理的最短间隔，避免每个新地址的连接都遍历全部桶
+    private static final long INLINE_EVICTION_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    public enum Decision {
+        ALLOWED,
+        IP_LIMITED,
+        SUBNET_LIMITED
+    }
+
+    private final Limit ipLimit;
+    private final Limit subnetLimit;
+    private final int ipv4SubnetPrefix;
+    private final int ipv6SubnetPrefix;
+    private final int maxEntries;
+
+    private final Map<IPKey, AtomicLong> ipBuckets = new ConcurrentHashMap<>();
+    private final Map<IPKey, AtomicLong> subnetBuckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final AtomicLong lastInlineEviction;
+
+    private final LongAdder rejectedByIp = new LongAdder();
+    private final LongAdder rejectedBySubnet = new LongAdder();
+    // 桶数量达到上限时未能单独计数的连接
+    private final LongAdder untracked = new LongAdder();
+
+    // ipv4SubnetPrefix为128位中的前缀长度 (即96 + IPv4前缀)
+    public ConnectionRateLimiter(Limit ipLimit, Limit subnetLimit, int ipv4SubnetPrefix, int ipv6SubnetPrefix, int maxEntries) {
+        this.ipLimit = ipLimit;
+        this.subnetLimit = subnetLimit;
+        this.ipv4SubnetPrefix = ipv4SubnetPrefix;
+        this.ipv6SubnetPrefix = ipv6SubnetPrefix;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.lastInlineEviction = new AtomicLong(System.nanoTime() - INLINE_EVICTION_INTERVAL);
+    }
+
+    public Decision tryAcquire(long high, long low) {
+        long now = System.nanoTime();
+        if (ipLimit != null && !acquire(ipBuckets, new IPKey(high, low), ipLimit, now)) {
+            rejectedByIp.increment();
+            return Decision.IP_LIMITED;
+        }
+        if (subnetLimit != null) {
+            int prefix = IPKey.isIPv4(high, low) ? ipv4SubnetPrefix : ipv6SubnetPrefix;
+            IPKey subnet = new IPKey(high & CidrBlock.maskHigh(prefix), low & CidrBlock.maskLow(prefix));
+            if (!acquire(subnetBuckets, subnet, subnetLimit, now)) {
+                rejectedBySubnet.increment();
+                return Decision.SUBNET_LIMITED;
+            }
+        }
+        return Decision.ALLOWED;
+    }
+
+    private boolean acquire(Map<IPKey, AtomicLong> buckets, IPKey key, Limit limit, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxEntries) {
+                evictIdleInline(now);
+                if (buckets.size() >= maxEntries) {
+                    // 仍然已满: 不为新地址建桶 (单个IP不计数，地址段限制仍然有效)，保证内存有上限
+                    untracked.increment();
+                    return true;
+                }
+            }
+            bucket = buckets.computeIfAbsent(key, ignored -> new AtomicLong(now));
+        }
+
+        // 理论到达时间超出当前时间的部分即已用掉的突发额度
+        while (true) {
+            long arrival = bucket.get();
+            long start = Math.max(arrival, now);
+            if (start - now > limit.tolerance) {
+                return false;
+            }
+            if (bucket.compareAndSet(arrival, start + limit.interval)) {
+                return true;
+            }
+        }
+    }
+
+    // 移除令牌已经回满的桶，它们与新建的桶状态相同
+    public int evictIdle() {
+        return evictIdle(System.nanoTime());
+    }
+
+    // 每个间隔内只有一个登录线程执行清理，其余线程直接按已满处理
+    private void evictIdleInline(long now) {
+        long last = lastInlineEviction.get();
+        if (now - last >= INLINE_EVICTION_INTERVAL && lastInlineEviction.compareAndSet(last, now)) {
+            evictIdle(now);
+        }
+    }
+
+    private int evictIdle(long now) {
+        if (!evicting.compareAndSet(false, true)) {
+            return 0;
+        }
+        try {
+            return evictIdle(ipBuckets, now) + evictIdle(subnetBuckets, now);
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static int evictIdle(Map<IPKey, AtomicLong> buckets, long now) {
+        int removed = 0;
+        for (Map.Entry<IPKey, AtomicLong> entry : buckets.entrySet()) {
+            // 与同时进行的获取竞争时最多多放行一次，不影响限制效果
+            if (entry.getValue().get() - now <= 0 && buckets.remove(entry.getKey(), entry.getValue())) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public long getRejectedByIp() { return rejectedByIp.sum(); }
+    public long getRejectedBySubnet() { return rejectedBySubnet.sum(); }
+    public long getUntracked() { return untracked.sum(); }
+    public int getTrackedCount() { return ipBuckets.size() + subnetBuckets.size(); }
+
+    // 每分钟允许的连接次数和突发次数 (连续空闲后最多可以连续连接burst次)
+    public static class Limit {
+        private final long interval;
+        private final long tolerance;
+
+        public Limit(double perMinute, int burst) {
+            this.interval = Math.max(1L, (long) (60_000_000_000.0 / perMinute));
+            this.tolerance = interval * (Math.max(1, burst) - 1L);
+        }
+
+        // perMinute不大于0时不限制
+        public static Limit of(double perMinute, int burst) {
+            return perMinute > 0 ? new Limit(perMinute, burst) : null;
+        }
+    }
+}
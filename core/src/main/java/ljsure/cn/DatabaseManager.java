@@ -0,0 +1,219 @@
+package ljsure.cn;
+
+import com.zaxxer.hikari.HikariConfig;
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Logger;
+
+// 数据库管理类: 根据配置选择绑定存储，并为命令提供同步的查询方法
+public class DatabaseManager {
+
+    // 同步遍历全部绑定时每次读取的数量
+    private static final int PAGE_SIZE = 500;
+
+    private final Logger logger;
+    private final File dataFolder;
+    private final PluginMetrics metrics;
+    private BindingStore store;
+    private SwitchableBindingStore switchable;
+    private volatile Settings.Storage settings;
+
+    public DatabaseManager(Logger logger, File dataFolder, PluginMetrics metrics) {
+        this.logger = logger;
+        this.dataFolder = dataFolder;
+        this.metrics = metrics;
+    }
+
+    public boolean initialize(Settings.Storage settings) {
+        BindingStore created = createStore(settings);
+        if (created == null) {
+            return false;
+        }
+        this.settings = settings;
+        // 记录每个存储操作的耗时；重新加载配置时在内层更换存储，指标和监听器保持不变
+        switchable = new SwitchableBindingStore(logger, created);
+        store = new InstrumentedBindingStore(switchable, metrics);
+        return store.initialize();
+    }
+
+    // 按新的设置重新打开存储，应在异步线程上调用；失败时恢复为原来的存储
+    public boolean switchStore(Settings.Storage next) {
+        Settings.Storage previous = settings;
+        boolean switched = switchable.switchTo(() -> createStore(next), () -> createStore(previous));
+        if (switched) {
+            settings = next;
+        }
+        return switched;
+    }
+
+    public Settings.Storage getSettings() {
+        return settings;
+    }
+
+    // 统一存储类型的写法: yaml为local的旧名称，不认识的类型返回null
+    public static String normalizeType(String type) {
+        switch (type.toLowerCase(Locale.ROOT)) {
+            case "local":
+            case "yaml":
+                return "local";
+            case "h2":
+                return "h2";
+            case "mysql":
+                return "mysql";
+            default:
+                return null;
+        }
+    }
+
+    // 按当前设置打开另一种类型的存储，与正在使用的存储互不影响；调用方负责关闭，打开失败时返回null
+    public BindingStore openStore(String type) {
+        BindingStore created = createStore(settings.withType(type));
+        return created != null && created.initialize() ? created : null;
+    }
+
+    public BindingStore getStore() {
+        return store;
+    }
+
+    private BindingStore createStore(Settings.Storage settings) {
+        switch (settings.getType()) {
+            case "local":
+            case "yaml":
+                // yaml为旧版本的存储名称，首次启动时会自动导入data.yml
+                return new LocalBindingStore(logger, dataFolder,
+                        settings.getLocalFsyncInterval(), settings.getLocalCompactThreshold(),
+                        settings.isLocalMappedIndex(), settings.getLocalMappedIndexCapacity());
+            case "mysql":
+                return new MySQLBindingStore(logger, createMySQLPoolConfig(settings),
+                        settings.getTablePrefix() + "data", settings.getQueueOptions(), settings.getCleanupBatchSize(),
+                        settings.getSyncOptions(), settings.getFilterOptions());
+            case "h2":
+                // H2数据库只由本服务器访问，不需要同步
+                return new H2BindingStore(logger, createH2PoolConfig(settings), "iplimit_data",
+                        settings.getQueueOptions(), settings.getCleanupBatchSize(), null, settings.getFilterOptions());
+            default:
+                logger.severe("未知的存储类型: " + settings.getType());
+                return null;
+        }
+    }
+
+    private HikariConfig createMySQLPoolConfig(Settings.Storage settings) {
+        String url = "jdbc:mysql://" + settings.getMysqlHost() + ":" + settings.getMysqlPort() + "/" + settings.getMysqlDatabase() +
+                "?useSSL=" + settings.isMysqlUseSSL() + "&allowPublicKeyRetrieval=true&useUnicode=true&characterEncoding=UTF-8";
+
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setPoolName("LoginIPLimit-MySQL");
+        // 代理端插件的类加载器不会被DriverManager扫描，需要显式指定驱动
+        hikariConfig.setDriverClassName("com.mysql.cj.jdbc.Driver");
+        hikariConfig.setJdbcUrl(url);
+        hikariConfig.setUsername(settings.getMysqlUsername());
+        hikariConfig.setPassword(settings.getMysqlPassword());
+
+        // 连接池大小、校验与生命周期；失效的连接会被自动剔除并重新建立
+        hikariConfig.setMaximumPoolSize(settings.getMaximumPoolSize());
+        hikariConfig.setMinimumIdle(settings.getMinimumIdle());
+        hikariConfig.setConnectionTimeout(settings.getConnectionTimeout());
+        hikariConfig.setValidationTimeout(Math.min(hikariConfig.getConnectionTimeout(), 3000L));
+        hikariConfig.setIdleTimeout(settings.getIdleTimeout());
+        hikariConfig.setMaxLifetime(settings.getMaxLifetime());
+        hikariConfig.setKeepaliveTime(settings.getKeepaliveTime());
+        hikariConfig.setLeakDetectionThreshold(settings.getLeakDetectionThreshold());
+
+        // 每个连接缓存预编译语句，避免重复解析相同的SQL
+        int statementCacheSize = settings.getStatementCacheSize();
+        hikariConfig.addDataSourceProperty("cachePrepStmts", statementCacheSize > 0);
+        hikariConfig.addDataSourceProperty("prepStmtCacheSize", statementCacheSize);
+        hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", 2048);
+        hikariConfig.addDataSourceProperty("useServerPrepStmts", true);
+        hikariConfig.addDataSourceProperty("useLocalSessionState", true);
+        hikariConfig.addDataSourceProperty("cacheResultSetMetadata", true);
+        hikariConfig.addDataSourceProperty("cacheServerConfiguration", true);
+        hikariConfig.addDataSourceProperty("elideSetAutoCommits", true);
+        hikariConfig.addDataSourceProperty("rewriteBatchedStatements", true);
+        return hikariConfig;
+    }
+
+    private HikariConfig createH2PoolConfig(Settings.Storage settings) {
+        File databaseFile = new File(dataFolder, settings.getH2File());
+
+        // 直接使用H2的数据源，打包重定位后不依赖DriverManager查找驱动
+        // 数据库由插件在关闭时关闭，不使用H2自带的关闭钩子，保证写入队列能在关闭前写完
+        JdbcDataSource h2DataSource = new JdbcDataSource();
+        h2DataSource.setURL("jdbc:h2:file:" + databaseFile.getAbsolutePath() + ";MODE=MySQL;DB_CLOSE_ON_EXIT=FALSE");
+
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setPoolName("LoginIPLimit-H2");
+        hikariConfig.setDataSource(h2DataSource);
+        hikariConfig.setMaximumPoolSize(settings.getH2PoolSize());
+        hikariConfig.setMinimumIdle(settings.getH2PoolSize());
+        return hikariConfig;
+    }
+
+    public List<IPData> getIPData(IPKey key) {
+        return join(store.get(key), Collections.emptyList(), "获取IP数据失败");
+    }
+
+    public boolean removeIPData(IPKey key) {
+        return join(store.remove(key), false, "删除IP数据失败");
+    }
+
+    public List<IPData> getAllIPData() {
+        return getIPDataInRange(null);
+    }
+
+    // 查询地址段内的所有绑定，block为null时返回全部
+    public List<IPData> getIPDataInRange(CidrBlock block) {
+        List<IPData> ipList = new ArrayList<>();
+        IPKey after = null;
+        while (true) {
+            List<IPData> page = join(store.page(block, after, PAGE_SIZE), Collections.emptyList(), "获取IP数据列表失败");
+            ipList.addAll(page);
+            if (page.size() < PAGE_SIZE) {
+                return ipList;
+            }
+            after = page.get(page.size() - 1).getKey();
+        }
+    }
+
+    // 删除地址段内的所有绑定，返回删除的数量
+    public int removeIPDataInRange(CidrBlock block) {
+        return join(store.removeRange(block), 0, "按地址段删除IP数据失败");
+    }
+
+    public int getIPCount() {
+        return join(store.count(), 0, "获取IP数量失败");
+    }
+
+    public void cleanupExpiredIPs() {
+        store.removeExpired(System.currentTimeMillis()).whenComplete((deleted, error) -> {
+            if (error != null) {
+                logger.severe("清理过期IP记录失败: " + error.getMessage());
+            } else if (deleted > 0) {
+                logger.info("清理了 " + deleted + " 个过期的IP记录");
+            }
+        });
+    }
+
+    public void close() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    private <T> T join(CompletableFuture<T> future, T fallback, String message) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            logger.severe(message + ": " + cause.getMessage());
+            return fallback;
+        }
+    }
+}
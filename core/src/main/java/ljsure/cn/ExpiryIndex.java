@@ -0,0 +1,97 @@
+package ljsure.cn;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+// 过期索引: 按结束时间排序的最小堆，由后台线程在绑定到期时立即处理
+public class ExpiryIndex<K> {
+
+    private final Logger logger;
+    private final ExpiryHandler<K> handler;
+    private final DelayQueue<Entry<K>> queue = new DelayQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public ExpiryIndex(Logger logger, String threadName, ExpiryHandler<K> handler) {
+        this.logger = logger;
+        this.handler = handler;
+        this.worker = new Thread(this::run, threadName);
+        this.worker.setDaemon(true);
+    }
+
+    public void start() {
+        worker.start();
+    }
+
+    // 登记一个到期时间，0表示永久绑定，不需要登记
+    public void schedule(K key, long endTime) {
+        if (endTime > 0) {
+            queue.add(new Entry<>(key, endTime));
+        }
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    // 续期或删除后留下的旧条目会在到期时被跳过，数量过多时可主动清除
+    public int purgeStale(Predicate<Entry<K>> isStale) {
+        int before = queue.size();
+        queue.removeIf(isStale);
+        return before - queue.size();
+    }
+
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            Entry<K> entry;
+            try {
+                entry = queue.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            try {
+                handler.expire(entry.getKey(), entry.getEndTime());
+            } catch (RuntimeException e) {
+                logger.severe("处理过期IP记录失败: " + e.getMessage());
+            }
+        }
+    }
+
+    public interface ExpiryHandler<K> {
+        void expire(K key, long endTime);
+    }
+
+    public static class Entry<K> implements Delayed {
+        private final K key;
+        private final long endTime;
+
+        public Entry(K key, long endTime) {
+            this.key = key;
+            this.endTime = endTime;
+        }
+
+        public K getKey() { return key; }
+        public long getEndTime() { return endTime; }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(endTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other instanceof Entry) {
+                return Long.compare(endTime, ((Entry<?>) other).endTime);
+            }
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ljsure.cn;
+
+import com.zaxxer.hikari.HikariConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+// H2嵌入式存储: 单个数据库文件，带索引，适合数据量超出data.yml但不需要MySQL的单服
+public class H2BindingStore extends SqlBindingStore {
+
+    public H2BindingStore(Logger logger, HikariConfig poolConfig, String tableName,
+                          SqlWriteQueue.Options queueOptions, int cleanupBatchSize,
+                          SqlChangeSync.Options syncOptions, BloomFilter.Options filterOptions) {
+        super(logger, "H2", poolConfig, tableName, queueOptions, cleanupBatchSize, syncOptions, filterOptions);
+    }
+
+    @Override
+    protected void createSchema(Connection connection) throws SQLException {
+        // 与MySQL相同的表结构；H2的索引名在整个库内唯一，需要带上表名
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + tableName + " (" +
+                    "id INT AUTO_INCREMENT PRIMARY KEY," +
+                    "ip VARBINARY(16) NOT NULL," +
+                    "player_uuid VARCHAR(36) NOT NULL," +
+                    "player_name VARCHAR(16) NOT NULL," +
+                    "end_time BIGINT NOT NULL," +
+                    "created_at BIGINT NOT NULL," +
+                    "CONSTRAINT " + tableName + "_ip_player UNIQUE (ip, player_uuid)" +
+                    ")");
+            migrateBindingKey(connection, statement);
+            statement.execute("CREATE INDEX IF NOT EXISTS " + tableName + "_end_time ON " + tableName + " (end_time)");
+            statement.execute("CREATE INDEX IF NOT EXISTS " + tableName + "_player_uuid ON " + tableName + " (player_uuid)");
+            statement.execute("CREATE INDEX IF NOT EXISTS " + tableName + "_created_at ON " + tableName + " (created_at)");
+        }
+    }
+
+    // 旧版本的表每个IP只允许一条绑定 (ip列上的唯一约束)，改为每个IP的每个玩家一条
+    private void migrateBindingKey(Connection connection, Statement statement) throws SQLException {
+        List<String> ipOnly = new ArrayList<>();
+        String sql = "SELECT tc.CONSTRAINT_NAME FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS tc " +
+                "JOIN INFORMATION_SCHEMA.KEY_COLUMN_USAGE kcu " +
+                "ON kcu.CONSTRAINT_SCHEMA = tc.CONSTRAINT_SCHEMA AND kcu.CONSTRAINT_NAME = tc.CONSTRAINT_NAME " +
+                "WHERE UPPER(tc.TABLE_NAME) = UPPER(?) AND tc.CONSTRAINT_TYPE = 'UNIQUE' " +
+                "GROUP BY tc.CONSTRAINT_NAME HAVING COUNT(*) = 1 AND UPPER(MAX(kcu.COLUMN_NAME)) = 'IP'";
+        try (PreparedStatement query = connection.prepareStatement(sql)) {
+            query.setString(1, tableName);
+            try (ResultSet resultSet = query.executeQuery()) {
+                while (resultSet.next()) {
+                    ipOnly.add(resultSet.getString(1));
+                }
+            }
+        }
+        if (ipOnly.isEmpty()) {
+            return;
+        }
+        logger.info("正在将" + tableName + "的唯一键改为(ip, player_uuid)...");
+        statement.execute("ALTER TABLE " + tableName + " ADD CONSTRAINT IF NOT EXISTS " + tableName + "_ip_player UNIQUE (ip, player_uuid)");
+        for (String constraint : ipOnly) {
+            statement.execute("ALTER TABLE " + tableName + " DROP CONSTRAINT \"" + constraint + "\"");
+        }
+    }
+
+    @Override
+    protected void createChangeLogSchema(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + changeTableName + " (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY," +
+                    "ip VARBINARY(16) NOT NULL," +
+                    "prefix_length INT NOT NULL," +
+                    "changed_at BIGINT NOT NULL" +
+                    ")");
+            statement.execute("CREATE INDEX IF NOT EXISTS " + changeTableName + "_changed_at ON " + changeTableName + " (changed_at)");
+        }
+    }
+
+    @Override
+    protected String upsertSql() {
+        return "MERGE INTO " + tableName + " (ip, player_uuid, player_name, end_time, created_at) KEY (ip, player_uuid) VALUES (?, ?, ?, ?, ?)";
+    }
+
+    @Override
+    protected String deleteExpiredSql() {
+        return "DELETE FROM " + tableName + " WHERE end_time > 0 AND end_time <= ? LIMIT ?";
+    }
+}
@@ -0,0 +1,217 @@
+package ljsure.cn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+
+// 堆内绑定表: 开放寻址哈希表 + 按地址排序的键索引
+public class HeapBindingTable implements BindingTable {
+
+    // 地址 -> 绑定: 只有一个玩家时直接保存IPData，多个玩家时保存IPData[]；数组不会原地修改，修改时整体替换
+    private final IPKeyMap<Object> data = new IPKeyMap<>();
+    // 按地址排序的键索引，用于按地址段查询和分页
+    private final ConcurrentSkipListSet<IPKey> orderedKeys = new ConcurrentSkipListSet<>();
+    private volatile int size;
+
+    @Override
+    public List<IPData> get(long high, long low) {
+        Object value = data.get(high, low);
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        return value instanceof IPData ? Collections.singletonList((IPData) value) : Arrays.asList((IPData[]) value);
+    }
+
+    @Override
+    public IPData findConflict(long high, long low, UUID playerUUID, long now, int maxAccounts) {
+        Object value = data.get(high, low);
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof IPData) {
+            IPData existing = (IPData) value;
+            return existing.isActive(now) && !existing.getPlayerUUID().equals(playerUUID) && maxAccounts <= 1 ? existing : null;
+        }
+        IPData earliest = null;
+        int others = 0;
+        for (IPData existing : (IPData[]) value) {
+            if (!existing.isActive(now)) {
+                continue;
+            }
+            if (existing.getPlayerUUID().equals(playerUUID)) {
+                return null;
+            }
+            others++;
+            if (earliest == null || existing.getCreatedAt() < earliest.getCreatedAt()) {
+                earliest = existing;
+            }
+        }
+        return others >= maxAccounts ? earliest : null;
+    }
+
+    @Override
+    public boolean isBound(long high, long low, UUID playerUUID, long now) {
+        Object value = data.get(high, low);
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof IPData) {
+            IPData existing = (IPData) value;
+            return existing.isActive(now) && existing.getPlayerUUID().equals(playerUUID);
+        }
+        IPData[] rows = (IPData[]) value;
+        int index = indexOf(rows, playerUUID);
+        return index >= 0 && rows[index].isActive(now);
+    }
+
+    @Override
+    public void put(IPData ipData) {
+        IPKey key = ipData.getKey();
+        Object value = data.get(key);
+        if (value == null) {
+            data.put(key, ipData);
+            orderedKeys.add(key);
+            size++;
+            return;
+        }
+        IPData[] rows = value instanceof IPData ? new IPData[]{(IPData) value} : (IPData[]) value;
+        int index = indexOf(rows, ipData.getPlayerUUID());
+        if (index >= 0 && rows.length == 1) {
+            data.put(key, ipData);
+            return;
+        }
+        IPData[] updated = Arrays.copyOf(rows, index >= 0 ? rows.length : rows.length + 1);
+        updated[index >= 0 ? index : rows.length] = ipData;
+        data.put(key, updated);
+        if (index < 0) {
+            size++;
+        }
+    }
+
+    @Override
+    public int remove(long high, long low) {
+        Object value = data.remove(high, low, null);
+        if (value == null) {
+            return 0;
+        }
+        orderedKeys.remove(new IPKey(high, low));
+        int removed = value instanceof IPData ? 1 : ((IPData[]) value).length;
+        size -= removed;
+        return removed;
+    }
+
+    @Override
+    public boolean removeAccount(long high, long low, UUID playerUUID) {
+        return removeAccount(high, low, playerUUID, false, 0L);
+    }
+
+    @Override
+    public boolean removeIfEndTime(long high, long low, UUID playerUUID, long endTime) {
+        return removeAccount(high, low, playerUUID, true, endTime);
+    }
+
+    private boolean removeAccount(long high, long low, UUID playerUUID, boolean checkEndTime, long endTime) {
+        Object value = data.get(high, low);
+        if (value == null) {
+            return false;
+        }
+        IPData[] rows = value instanceof IPData ? new IPData[]{(IPData) value} : (IPData[]) value;
+        int index = indexOf(rows, playerUUID);
+        if (index < 0 || (checkEndTime && rows[index].getEndTime() != endTime)) {
+            return false;
+        }
+        if (rows.length == 1) {
+            data.remove(high, low, value);
+            orderedKeys.remove(new IPKey(high, low));
+        } else if (rows.length == 2) {
+            // 只剩一个玩家时恢复为单条保存
+            data.put(high, low, rows[1 - index]);
+        } else {
+            IPData[] updated = new IPData[rows.length - 1];
+            System.arraycopy(rows, 0, updated, 0, index);
+            System.arraycopy(rows, index + 1, updated, index, rows.length - index - 1);
+            data.put(high, low, updated);
+        }
+        size--;
+        return true;
+    }
+
+    private static int indexOf(IPData[] rows, UUID playerUUID) {
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i].getPlayerUUID().equals(playerUUID)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEach(Consumer<? super IPData> action) {
+        data.forEach(value -> forEachRow(value, action));
+    }
+
+    private static void forEachRow(Object value, Consumer<? super IPData> action) {
+        if (value instanceof IPData) {
+            action.accept((IPData) value);
+        } else {
+            for (IPData ipData : (IPData[]) value) {
+                action.accept(ipData);
+            }
+        }
+    }
+
+    @Override
+    public List<IPData> page(CidrBlock range, IPKey after, int limit) {
+        NavigableSet<IPKey> keys = range != null
+                ? orderedKeys.subSet(range.getNetwork(), true, range.getLastAddress(), true)
+                : orderedKeys;
+        if (after != null) {
+            keys = keys.tailSet(after, false);
+        }
+
+        List<IPData> ipList = new ArrayList<>(Math.min(limit, 256));
+        for (IPKey key : keys) {
+            if (ipList.size() >= limit) {
+                break;
+            }
+            Object value = data.get(key);
+            if (value != null) {
+                forEachRow(value, ipList::add);
+            }
+        }
+        return ipList;
+    }
+
+    @Override
+    public void clear() {
+        data.clear();
+        orderedKeys.clear();
+        size = 0;
+    }
+
+    @Override
+    public BindingJournal.BindingSource snapshot() {
+        // IPData不可变，复制引用列表即可得到一致的视图
+        List<Object> values = data.values();
+        return action -> {
+            for (Object value : values) {
+                forEachRow(value, action);
+            }
+        };
+    }
+
+    @Override
+    public void close(long journalGeneration) {
+        clear();
+    }
+}
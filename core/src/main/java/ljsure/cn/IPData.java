@@ -0,0 +1,37 @@
+package ljsure.cn;
+
+import java.util.UUID;
+
+// IP数据类
+public class IPData {
+    // IP以紧凑形式保存，文本形式仅在显示时生成
+    private final long ipHigh;
+    private final long ipLow;
+    private final UUID playerUUID;
+    private final String playerName;
+    private final long endTime;
+    private final long createdAt;
+
+    public IPData(IPKey key, UUID playerUUID, String playerName, long endTime, long createdAt) {
+        this.ipHigh = key.getHigh();
+        this.ipLow = key.getLow();
+        this.playerUUID = playerUUID;
+        this.playerName = playerName;
+        this.endTime = endTime;
+        this.createdAt = createdAt;
+    }
+
+    public IPKey getKey() { return new IPKey(ipHigh, ipLow); }
+    public long getIpHigh() { return ipHigh; }
+    public long getIpLow() { return ipLow; }
+    public String getIp() { return IPKey.format(ipHigh, ipLow); }
+    public UUID getPlayerUUID() { return playerUUID; }
+    public String getPlayerName() { return playerName; }
+    public long getEndTime() { return endTime; }
+    public long getCreatedAt() { return createdAt; }
+
+    // 永久绑定或尚未到期
+    public boolean isActive(long now) {
+        return endTime == 0 || endTime > now;
+    }
+}
@@ -0,0 +1,215 @@
+package ljsure.cn;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+// IP地址的紧凑表示: 统一为128位的两个long，IPv4以IPv4映射地址(::ffff:a.b.c.d)存放在低64位
+public final class IPKey implements Comparable<IPKey> {
+
+    public static final long IPV4_MAPPED_PREFIX = 0x0000FFFF00000000L;
+
+    private final long high;
+    private final long low;
+
+    public IPKey(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public static IPKey ofIPv4(int address) {
+        return new IPKey(0L, IPV4_MAPPED_PREFIX | (address & 0xFFFFFFFFL));
+    }
+
+    public static IPKey of(InetAddress address) {
+        return new IPKey(high(address), low(address));
+    }
+
+    // Inet4Address的hashCode即为地址本身，IPv4无需复制字节数组
+    public static long high(InetAddress address) {
+        if (address instanceof Inet4Address) {
+            return 0L;
+        }
+        return readLong(address.getAddress(), 0);
+    }
+
+    public static long low(InetAddress address) {
+        if (address instanceof Inet4Address) {
+            return IPV4_MAPPED_PREFIX | (address.hashCode() & 0xFFFFFFFFL);
+        }
+        return readLong(address.getAddress(), 8);
+    }
+
+    // 解析IP字面量，不进行DNS查询，无效时返回null
+    public static IPKey parse(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        if (text.indexOf(':') < 0) {
+            long address = parseIPv4(text);
+            return address < 0 ? null : ofIPv4((int) address);
+        }
+
+        int scope = text.indexOf('%');
+        String literal = scope >= 0 ? text.substring(0, scope) : text;
+        if (literal.startsWith("[") && literal.endsWith("]")) {
+            literal = literal.substring(1, literal.length() - 1);
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (Character.digit(c, 16) < 0 && c != ':' && c != '.') {
+                return null;
+            }
+        }
+        try {
+            // 含':'的字面量不会触发DNS解析
+            return of(InetAddress.getByName(literal));
+        } catch (UnknownHostException | SecurityException e) {
+            return null;
+        }
+    }
+
+    private static long parseIPv4(String text) {
+        long address = 0;
+        int octets = 0;
+        int value = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : '.';
+            if (c == '.') {
+                if (value < 0 || ++octets > 4) {
+                    return -1;
+                }
+                address = (address << 8) | value;
+                value = -1;
+            } else if (c >= '0' && c <= '9') {
+                value = value < 0 ? c - '0' : value * 10 + (c - '0');
+                if (value > 255) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        return octets == 4 ? address : -1;
+    }
+
+    public static IPKey fromBytes(byte[] bytes) {
+        if (bytes.length == 4) {
+            return ofIPv4(((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF));
+        }
+        if (bytes.length == 16) {
+            return new IPKey(readLong(bytes, 0), readLong(bytes, 8));
+        }
+        throw new IllegalArgumentException("无效的IP地址长度: " + bytes.length);
+    }
+
+    public byte[] toBytes() {
+        byte[] bytes = new byte[16];
+        writeLong(bytes, 0, high);
+        writeLong(bytes, 8, low);
+        return bytes;
+    }
+
+    public long getHigh() { return high; }
+    public long getLow() { return low; }
+
+    public boolean isIPv4() {
+        return isIPv4(high, low);
+    }
+
+    public static boolean isIPv4(long high, long low) {
+        return high == 0L && (low & 0xFFFFFFFF00000000L) == IPV4_MAPPED_PREFIX;
+    }
+
+    // 供开放寻址表使用的哈希
+    public static int hash(long high, long low) {
+        long h = high * 0x9E3779B97F4A7C15L + low;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    public static String format(long high, long low) {
+        if (isIPv4(high, low)) {
+            return ((low >>> 24) & 0xFF) + "." + ((low >>> 16) & 0xFF) + "." + ((low >>> 8) & 0xFF) + "." + (low & 0xFF);
+        }
+
+        int[] groups = new int[8];
+        for (int i = 0; i < 4; i++) {
+            groups[i] = (int) (high >>> (48 - i * 16)) & 0xFFFF;
+            groups[i + 4] = (int) (low >>> (48 - i * 16)) & 0xFFFF;
+        }
+
+        // RFC 5952: 压缩最长的连续零段(至少两段)
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int i = 0; i < 8; ) {
+            if (groups[i] != 0) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < 8 && groups[i] == 0) {
+                i++;
+            }
+            if (i - start > bestLength) {
+                bestStart = start;
+                bestLength = i - start;
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(39);
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                sb.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+            if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ':') {
+                sb.append(':');
+            }
+            sb.append(Integer.toHexString(groups[i]));
+        }
+        return sb.toString();
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    @Override
+    public int compareTo(IPKey other) {
+        int result = Long.compareUnsigned(high, other.high);
+        return result != 0 ? result : Long.compareUnsigned(low, other.low);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IPKey)) return false;
+        IPKey other = (IPKey) o;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash(high, low);
+    }
+
+    @Override
+    public String toString() {
+        return format(high, low);
+    }
+}
@@ -0,0 +1,253 @@
+package ljsure.cn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+// 以IPKey的两个long为键的开放寻址哈希表 (线性探测，删除时后移填补)
+// 读取使用乐观锁，命中路径上不分配任何对象
+public class IPKeyMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final double LOAD_FACTOR = 0.6;
+
+    private final StampedLock lock = new StampedLock();
+    private volatile Table table;
+    private volatile int size;
+
+    public IPKeyMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public IPKeyMap(int expectedSize) {
+        this.table = new Table(capacityFor(expectedSize));
+    }
+
+    public V get(IPKey key) {
+        return get(key.getHigh(), key.getLow());
+    }
+
+    public V get(long high, long low) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            V value = find(table, high, low);
+            if (lock.validate(stamp)) {
+                return value;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return find(table, high, low);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public V put(IPKey key, V value) {
+        return put(key.getHigh(), key.getLow(), value);
+    }
+
+    public V put(long high, long low, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        long stamp = lock.writeLock();
+        try {
+            return putLocked(high, low, value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V putLocked(long high, long low, V value) {
+        if (size + 1 > table.values.length * LOAD_FACTOR) {
+            resize(table.values.length << 1);
+        }
+        Table t = table;
+        int index = IPKey.hash(high, low) & t.mask;
+        while (t.values[index] != null) {
+            if (t.highs[index] == high && t.lows[index] == low) {
+                V previous = (V) t.values[index];
+                t.values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & t.mask;
+        }
+        t.highs[index] = high;
+        t.lows[index] = low;
+        t.values[index] = value;
+        size++;
+        return null;
+    }
+
+    // 在写锁内根据当前值(不存在时为null)计算新值，返回null表示保持原值；返回计算后的当前值
+    public V compute(IPKey key, UnaryOperator<V> remapping) {
+        long high = key.getHigh();
+        long low = key.getLow();
+        long stamp = lock.writeLock();
+        try {
+            V current = find(table, high, low);
+            V value = remapping.apply(current);
+            if (value == null || value == current) {
+                return current;
+            }
+            putLocked(high, low, value);
+            return value;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public V remove(IPKey key) {
+        return remove(key.getHigh(), key.getLow(), null);
+    }
+
+    // expected不为null时，仅当当前值就是expected时才删除
+    @SuppressWarnings("unchecked")
+    public V remove(long high, long low, V expected) {
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            int index = indexOf(t, high, low);
+            if (index < 0) {
+                return null;
+            }
+            V previous = (V) t.values[index];
+            if (expected != null && previous != expected) {
+                return null;
+            }
+            deleteAt(t, index);
+            size--;
+            return previous;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super V> action) {
+        long stamp = lock.readLock();
+        try {
+            for (Object value : table.values) {
+                if (value != null) {
+                    action.accept((V) value);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public List<V> values() {
+        List<V> values = new ArrayList<>(size);
+        forEach(values::add);
+        return values;
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            table = new Table(MIN_CAPACITY);
+            size = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V find(Table t, long high, long low) {
+        // 乐观读取时表可能正在被修改，限制探测次数防止死循环，结果由validate保证
+        int index = IPKey.hash(high, low) & t.mask;
+        for (int probes = 0; probes <= t.mask; probes++) {
+            Object value = t.values[index];
+            if (value == null) {
+                return null;
+            }
+            if (t.highs[index] == high && t.lows[index] == low) {
+                return (V) value;
+            }
+            index = (index + 1) & t.mask;
+        }
+        return null;
+    }
+
+    private int indexOf(Table t, long high, long low) {
+        int index = IPKey.hash(high, low) & t.mask;
+        while (t.values[index] != null) {
+            if (t.highs[index] == high && t.lows[index] == low) {
+                return index;
+            }
+            index = (index + 1) & t.mask;
+        }
+        return -1;
+    }
+
+    // 删除后将同一探测链上的后续条目前移，保持表中没有墓碑
+    private void deleteAt(Table t, int index) {
+        t.values[index] = null;
+        int hole = index;
+        int next = index;
+        while (true) {
+            next = (next + 1) & t.mask;
+            if (t.values[next] == null) {
+                return;
+            }
+            int home = IPKey.hash(t.highs[next], t.lows[next]) & t.mask;
+            boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (movable) {
+                t.highs[hole] = t.highs[next];
+                t.lows[hole] = t.lows[next];
+                t.values[hole] = t.values[next];
+                t.values[next] = null;
+                hole = next;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        Table old = table;
+        Table resized = new Table(capacity);
+        for (int i = 0; i < old.values.length; i++) {
+            if (old.values[i] == null) {
+                continue;
+            }
+            int index = IPKey.hash(old.highs[i], old.lows[i]) & resized.mask;
+            while (resized.values[index] != null) {
+                index = (index + 1) & resized.mask;
+            }
+            resized.highs[index] = old.highs[i];
+            resized.lows[index] = old.lows[i];
+            resized.values[index] = old.values[i];
+        }
+        table = resized;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static final class Table {
+        private final long[] highs;
+        private final long[] lows;
+        private final Object[] values;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.highs = new long[capacity];
+            this.lows = new long[capacity];
+            this.values = new Object[capacity];
+            this.mask = capacity - 1;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ljsure.cn;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// 为存储的每个操作记录从调用到完成的耗时和失败次数，其余行为与被包装的存储相同
+public class InstrumentedBindingStore implements BindingStore {
+
+    private final BindingStore delegate;
+    private final PluginMetrics.Operation getOperation;
+    private final PluginMetrics.Operation bindOperation;
+    private final PluginMetrics.Operation removeOperation;
+    private final PluginMetrics.Operation removeRangeOperation;
+    private final PluginMetrics.Operation scanExpiringOperation;
+    private final PluginMetrics.Operation removeExpiredOperation;
+    private final PluginMetrics.Operation countOperation;
+    private final PluginMetrics.Operation pageOperation;
+    private final PluginMetrics.Operation putAllOperation;
+    private final PluginMetrics.Operation findOperation;
+    private final PluginMetrics.Operation removeAllOperation;
+
+    public InstrumentedBindingStore(BindingStore delegate, PluginMetrics metrics) {
+        this.delegate = delegate;
+        this.getOperation = metrics.operation("store_get");
+        this.bindOperation = metrics.operation("store_bind");
+        this.removeOperation = metrics.operation("store_remove");
+        this.removeRangeOperation = metrics.operation("store_remove_range");
+        this.scanExpiringOperation = metrics.operation("store_scan_expiring");
+        this.removeExpiredOperation = metrics.operation("store_remove_expired");
+        this.countOperation = metrics.operation("store_count");
+        this.pageOperation = metrics.operation("store_page");
+        this.putAllOperation = metrics.operation("store_put_all");
+        this.findOperation = metrics.operation("store_find");
+        this.removeAllOperation = metrics.operation("store_remove_all");
+    }
+
+    public BindingStore getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public boolean initialize() {
+        return delegate.initialize();
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> get(IPKey key) {
+        long start = System.nanoTime();
+        return delegate.get(key).whenComplete((result, error) -> getOperation.record(start, error != null));
+    }
+
+    @Override
+    public CompletableFuture<BindResult> compareAndBind(IPData binding, long now, int maxAccounts) {
+        long start = System.nanoTime();
+        return delegate.compareAndBind(binding, now, maxAccounts).whenComplete((result, error) -> bindOperation.record(start, error != null));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> remove(IPKey key) {
+        long start = System.nanoTime();
+        return delegate.remove(key).whenComplete((result, error) -> removeOperation.record(start, error != null));
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeRange(CidrBlock block) {
+        long start = System.nanoTime();
+        return delegate.removeRange(block).whenComplete((result, error) -> removeRangeOperation.record(start, error != null));
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> scanExpiring(long before, int limit) {
+        long start = System.nanoTime();
+        return delegate.scanExpiring(before, limit).whenComplete((result, error) -> scanExpiringOperation.record(start, error != null));
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeExpired(long now) {
+        long start = System.nanoTime();
+        return delegate.removeExpired(now).whenComplete((result, error) -> removeExpiredOperation.record(start, error != null));
+    }
+
+    @Override
+    public CompletableFuture<Integer> count() {
+        long start = System.nanoTime();
+        return delegate.count().whenComplete((result, error) -> countOperation.record(start, error != null));
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> page(CidrBlock range, IPKey after, int limit) {
+        long start = System.nanoTime();
+        return delegate.page(range, after, limit).whenComplete((result, error) -> pageOperation.record(start, error != null));
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> find(BindingQuery query, IPKey after, int limit) {
+        long start = System.nanoTime();
+        return delegate.find(query, after, limit).whenComplete((result, error) -> findOperation.record(start, error != null));
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeAll(List<IPData> bindings) {
+        long start = System.nanoTime();
+        return delegate.removeAll(bindings).whenComplete((result, error) -> removeAllOperation.record(start, error != null));
+    }
+
+    @Override
+    public CompletableFuture<Integer> putAll(List<IPData> bindings) {
+        long start = System.nanoTime();
+        return delegate.putAll(bindings).whenComplete((result, error) -> putAllOperation.record(start, error != null));
+    }
+
+    @Override
+    public void setListener(BindingListener listener) {
+        delegate.setListener(listener);
+    }
+
+    @Override
+    public Map<String, Number> getGauges() {
+        return delegate.getGauges();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,577 @@
+package ljsure.cn;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+// 本地存储: 内存中的权威绑定表，每次修改追加一条定长日志记录，由后台线程批量刷入磁盘
+// 日志增长到一定程度后整体压缩为快照，启动时加载快照并重放之后的日志
+public class LocalBindingStore implements BindingStore {
+
+    private final Logger logger;
+    private final File dataFolder;
+    private final long fsyncInterval;
+    private final long compactThreshold;
+    private final BindingJournal journal;
+
+    private final boolean mappedIndex;
+    private final int expectedSize;
+    private BindingTable table;
+    // 按每条绑定登记到期时间，到期时只删除该玩家在该地址上的绑定
+    private ExpiryIndex<IPData> expiryIndex;
+    private volatile BindingListener listener = BindingListener.NONE;
+
+    // 修改内存表和追加日志记录在同一把锁内完成，保证日志顺序与内存中的修改顺序一致
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private ByteBuffer pending = ByteBuffer.allocate(BindingJournal.RECORD_SIZE * 64);
+    // 当前批次写入磁盘后完成
+    private CompletableFuture<Void> pendingSynced = new CompletableFuture<>();
+    // 上次快照之后写入日志的记录数
+    private long journalRecords;
+    private ScheduledExecutorService writer;
+    // 快照在单独的线程上写入，写入期间日志照常追加；上一次快照未写完时不开始新的压缩
+    private ExecutorService compactor;
+    private volatile CompletableFuture<Void> compaction = CompletableFuture.completedFuture(null);
+
+    // mappedIndex为true时绑定表放在内存映射文件中，expectedSize为新建索引时预留的绑定数
+    public LocalBindingStore(Logger logger, File dataFolder, long fsyncInterval, long compactThreshold,
+                             boolean mappedIndex, int expectedSize) {
+        this.logger = logger;
+        this.dataFolder = dataFolder;
+        this.fsyncInterval = Math.max(1L, fsyncInterval);
+        this.compactThreshold = Math.max(1L, compactThreshold);
+        this.mappedIndex = mappedIndex;
+        this.expectedSize = Math.max(0, expectedSize);
+        this.journal = new BindingJournal(logger, dataFolder, "data");
+    }
+
+    @Override
+    public String getName() {
+        return "本地日志";
+    }
+
+    @Override
+    public boolean initialize() {
+        long now = System.currentTimeMillis();
+        File legacyFile = new File(dataFolder, "data.yml");
+        boolean importLegacy = !journal.exists() && legacyFile.exists();
+        try {
+            boolean loaded = false;
+            if (mappedIndex) {
+                MappedBindingTable mappedTable = MappedBindingTable.open(logger, dataFolder, "data", expectedSize);
+                table = mappedTable;
+                // 上次正常关闭且之后日志没有新记录时，索引文件可直接使用
+                long cleanGeneration = mappedTable.getCleanGeneration();
+                if (!importLegacy && cleanGeneration >= 0 && journal.isSettledAt(cleanGeneration)) {
+                    journal.resume(cleanGeneration);
+                    loaded = true;
+                } else {
+                    mappedTable.clear();
+                }
+            } else {
+                table = new HeapBindingTable();
+            }
+
+            boolean rebuilt = false;
+            if (!loaded) {
+                if (importLegacy) {
+                    if (!importYAML(legacyFile)) {
+                        return false;
+                    }
+                } else {
+                    journalRecords = journal.replay(new BindingJournal.RecordHandler() {
+                        @Override
+                        public void bind(IPData ipData) {
+                            table.put(ipData);
+                        }
+
+                        @Override
+                        public void remove(IPKey key, byte type) {
+                            table.remove(key.getHigh(), key.getLow());
+                        }
+
+                        @Override
+                        public void removeAccount(IPKey key, UUID playerUUID, byte type) {
+                            table.removeAccount(key.getHigh(), key.getLow(), playerUUID);
+                        }
+                    });
+                }
+
+                // 已过期的绑定不再加载，下次压缩时从快照中去除
+                List<IPData> expired = new ArrayList<>();
+                table.forEach(ipData -> {
+                    if (!ipData.isActive(now)) {
+                        expired.add(ipData);
+                    }
+                });
+                for (IPData ipData : expired) {
+                    table.removeAccount(ipData.getIpHigh(), ipData.getIpLow(), ipData.getPlayerUUID());
+                }
+                rebuilt = importLegacy || journalRecords > 0 || !expired.isEmpty();
+            }
+
+            // 从新的一代日志开始追加；导入或重放过日志时立即压缩，下次启动只需加载快照
+            long firstGeneration = journal.getGeneration() + 1;
+            journal.openGeneration(firstGeneration);
+            if (rebuilt) {
+                journal.writeSnapshot(firstGeneration, table.snapshot());
+                journalRecords = 0;
+            }
+            // 旧日志此时已被快照包含或为空
+            journal.deleteBefore(firstGeneration);
+        } catch (IOException e) {
+            logger.severe("读取本地绑定数据失败: " + e.getMessage());
+            return false;
+        }
+
+        if (importLegacy) {
+            File importedFile = new File(dataFolder, "data.yml.imported");
+            if (legacyFile.renameTo(importedFile)) {
+                logger.info("已从data.yml导入 " + table.size() + " 条IP记录，原文件已重命名为 " + importedFile.getName());
+            } else {
+                logger.warning("已从data.yml导入 " + table.size() + " 条IP记录，但无法重命名原文件");
+            }
+        }
+
+        // 按结束时间建立过期索引，绑定到期时立即删除，无需定时全量扫描
+        expiryIndex = new ExpiryIndex<>(logger, "LoginIPLimit-Expiry", this::expire);
+        table.forEach(ipData -> expiryIndex.schedule(ipData, ipData.getEndTime()));
+        expiryIndex.start();
+
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LoginIPLimit-Journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::sync, fsyncInterval, fsyncInterval, TimeUnit.MILLISECONDS);
+        compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LoginIPLimit-Compact");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        logger.info("使用本地日志存储" + (mappedIndex ? " (内存映射索引)" : "") + "，已加载 " + table.size() + " 条IP记录");
+        return true;
+    }
+
+    // 一次性导入旧版本的data.yml
+    private boolean importYAML(File legacyFile) {
+        // 使用'/'作为路径分隔符，避免IP地址中的'.'被拆分为多层节点
+        ConfigView dataConfig;
+        try {
+            dataConfig = MapConfigView.load(legacyFile, '/');
+        } catch (IOException e) {
+            logger.severe("读取YAML数据失败: " + e.getMessage());
+            return false;
+        }
+        ConfigView section = dataConfig.getSection("player-data");
+        if (section != null) {
+            importYAMLSection(section, "");
+        }
+        return true;
+    }
+
+    private void importYAMLSection(ConfigView section, String prefix) {
+        for (String key : section.getKeys()) {
+            ConfigView child = section.getSection(key);
+            if (child == null) {
+                continue;
+            }
+            // 旧版本按'.'分隔保存，IPv4地址会被拆成多层节点，这里重新拼接
+            if (!child.contains("uuid")) {
+                importYAMLSection(child, prefix + key + ".");
+                continue;
+            }
+
+            IPKey ipKey = IPKey.parse(prefix + key);
+            if (ipKey == null) {
+                logger.warning("无效的IP地址: " + prefix + key);
+                continue;
+            }
+            String uuidString = child.getString("uuid");
+            try {
+                UUID playerUUID = UUID.fromString(uuidString);
+                table.put(new IPData(ipKey, playerUUID, child.getString("player-name"),
+                        child.getLong("end-time", 0L), child.getLong("created-at", System.currentTimeMillis())));
+            } catch (IllegalArgumentException e) {
+                logger.warning("无效的UUID格式: " + uuidString);
+            }
+        }
+    }
+
+    private void expire(IPData ipData, long endTime) {
+        // 只有绑定仍是登记时的那一次才删除，期间续期或重新绑定的记录保留
+        writeLock.lock();
+        try {
+            if (table.removeIfEndTime(ipData.getIpHigh(), ipData.getIpLow(), ipData.getPlayerUUID(), endTime)) {
+                append(BindingJournal.EXPIRE_ACCOUNT, ipData.getKey(), ipData.getPlayerUUID());
+                listener.onRemoveAccount(ipData.getKey(), ipData.getPlayerUUID());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> get(IPKey key) {
+        return CompletableFuture.completedFuture(table.get(key.getHigh(), key.getLow()));
+    }
+
+    @Override
+    public CompletableFuture<BindResult> compareAndBind(IPData binding, long now, int maxAccounts) {
+        CompletableFuture<Void> synced;
+        boolean created;
+        writeLock.lock();
+        try {
+            // 没有冲突时直接在表中比较，不读取已有记录
+            IPData conflict = table.findConflict(binding.getIpHigh(), binding.getIpLow(), binding.getPlayerUUID(), now, maxAccounts);
+            if (conflict != null) {
+                return CompletableFuture.completedFuture(BindResult.conflict(conflict));
+            }
+            created = !table.isBound(binding.getIpHigh(), binding.getIpLow(), binding.getPlayerUUID(), now);
+            table.put(binding);
+            BindingJournal.encode(reserve(), BindingJournal.BIND, binding);
+            journalRecords++;
+            listener.onBind(binding);
+            synced = pendingSynced;
+        } finally {
+            writeLock.unlock();
+        }
+        expiryIndex.schedule(binding, binding.getEndTime());
+        // 记录写入磁盘后才返回绑定成功
+        return synced.thenApply(ignored -> BindResult.bound(binding, created));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> remove(IPKey key) {
+        writeLock.lock();
+        try {
+            if (table.remove(key.getHigh(), key.getLow()) == 0) {
+                return CompletableFuture.completedFuture(false);
+            }
+            listener.onRemove(key);
+            return append(BindingJournal.UNBIND, key).thenApply(ignored -> true);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeRange(CidrBlock block) {
+        int removed = 0;
+        CompletableFuture<Void> synced = CompletableFuture.completedFuture(null);
+        writeLock.lock();
+        try {
+            List<IPData> page;
+            do {
+                page = table.page(block, null, 1024);
+                for (IPData ipData : page) {
+                    // 同一地址的其他绑定已随第一条一起删除
+                    int count = table.remove(ipData.getIpHigh(), ipData.getIpLow());
+                    if (count > 0) {
+                        synced = append(BindingJournal.UNBIND, ipData.getKey());
+                        removed += count;
+                    }
+                }
+            } while (page.size() >= 1024);
+            if (removed > 0) {
+                listener.onRemoveRange(block);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        int result = removed;
+        return synced.thenApply(ignored -> result);
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> scanExpiring(long before, int limit) {
+        List<IPData> expiring = new ArrayList<>();
+        table.forEach(ipData -> {
+            if (ipData.getEndTime() > 0 && ipData.getEndTime() <= before) {
+                expiring.add(ipData);
+            }
+        });
+        expiring.sort(Comparator.comparingLong(IPData::getEndTime));
+        return CompletableFuture.completedFuture(expiring.size() > limit ? new ArrayList<>(expiring.subList(0, limit)) : expiring);
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeExpired(long now) {
+        // 过期记录由过期索引按时删除，这里只清除续期后留下的旧索引条目
+        if (expiryIndex.size() > table.size() * 2 + 1024) {
+            expiryIndex.purgeStale(entry -> {
+                IPData scheduled = entry.getKey();
+                for (IPData ipData : table.get(scheduled.getIpHigh(), scheduled.getIpLow())) {
+                    if (ipData.getPlayerUUID().equals(scheduled.getPlayerUUID())) {
+                        return ipData.getEndTime() != entry.getEndTime();
+                    }
+                }
+                return true;
+            });
+        }
+        return CompletableFuture.completedFuture(0);
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> find(BindingQuery query, IPKey after, int limit) {
+        // 绑定表在内存中，按地址顺序逐页筛选，直到找到limit条或读完；找够后补上最后一个地址的其余绑定
+        List<IPData> found = new ArrayList<>();
+        IPKey cursor = after;
+        while (true) {
+            List<IPData> page = table.page(query.getRange(), cursor, 1024);
+            for (IPData ipData : page) {
+                if (found.size() >= limit && (found.isEmpty() || !ipData.getKey().equals(found.get(found.size() - 1).getKey()))) {
+                    return CompletableFuture.completedFuture(found);
+                }
+                if (query.matches(ipData)) {
+                    found.add(ipData);
+                }
+            }
+            if (page.size() < 1024) {
+                return CompletableFuture.completedFuture(found);
+            }
+            cursor = page.get(page.size() - 1).getKey();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeAll(List<IPData> bindings) {
+        int removed = 0;
+        CompletableFuture<Void> synced = CompletableFuture.completedFuture(null);
+        writeLock.lock();
+        try {
+            for (IPData ipData : bindings) {
+                if (table.removeAccount(ipData.getIpHigh(), ipData.getIpLow(), ipData.getPlayerUUID())) {
+                    synced = append(BindingJournal.UNBIND_ACCOUNT, ipData.getKey(), ipData.getPlayerUUID());
+                    listener.onRemoveAccount(ipData.getKey(), ipData.getPlayerUUID());
+                    removed++;
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        int result = removed;
+        return synced.thenApply(ignored -> result);
+    }
+
+    @Override
+    public CompletableFuture<Integer> putAll(List<IPData> bindings) {
+        CompletableFuture<Void> synced;
+        writeLock.lock();
+        try {
+            for (IPData ipData : bindings) {
+                table.put(ipData);
+                BindingJournal.encode(reserve(), BindingJournal.BIND, ipData);
+                journalRecords++;
+                listener.onBind(ipData);
+            }
+            synced = pendingSynced;
+        } finally {
+            writeLock.unlock();
+        }
+        for (IPData ipData : bindings) {
+            expiryIndex.schedule(ipData, ipData.getEndTime());
+        }
+        int written = bindings.size();
+        return synced.thenApply(ignored -> written);
+    }
+
+    @Override
+    public Map<String, Number> getGauges() {
+        Map<String, Number> gauges = new LinkedHashMap<>();
+        gauges.put("store_bindings", table.size());
+        gauges.put("journal_records_since_snapshot", journalRecords);
+        gauges.put("expiry_index_size", expiryIndex.size());
+        return gauges;
+    }
+
+    @Override
+    public void setListener(BindingListener listener) {
+        this.listener = listener != null ? listener : BindingListener.NONE;
+    }
+
+    @Override
+    public CompletableFuture<Integer> count() {
+        return CompletableFuture.completedFuture(table.size());
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> page(CidrBlock range, IPKey after, int limit) {
+        return CompletableFuture.completedFuture(table.page(range, after, limit));
+    }
+
+    // 调用方需持有writeLock
+    private CompletableFuture<Void> append(byte type, IPKey key) {
+        BindingJournal.encode(reserve(), type, key);
+        journalRecords++;
+        return pendingSynced;
+    }
+
+    // 调用方需持有writeLock
+    private CompletableFuture<Void> append(byte type, IPKey key, UUID playerUUID) {
+        BindingJournal.encode(reserve(), type, key, playerUUID);
+        journalRecords++;
+        return pendingSynced;
+    }
+
+    private ByteBuffer reserve() {
+        if (pending.remaining() < BindingJournal.RECORD_SIZE) {
+            ByteBuffer grown = ByteBuffer.allocate(pending.capacity() * 2);
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        return pending;
+    }
+
+    // 在写入线程上执行: 将当前批次写入日志并刷入磁盘，日志过长时压缩为快照
+    private void sync() {
+        ByteBuffer batch;
+        CompletableFuture<Void> synced;
+        boolean compact;
+        writeLock.lock();
+        try {
+            if (pending.position() == 0) {
+                return;
+            }
+            batch = pending;
+            synced = pendingSynced;
+            pending = ByteBuffer.allocate(BindingJournal.RECORD_SIZE * 64);
+            pendingSynced = new CompletableFuture<>();
+            compact = journalRecords > Math.max(compactThreshold, table.size());
+        } finally {
+            writeLock.unlock();
+        }
+
+        batch.flip();
+        try {
+            journal.append(batch);
+        } catch (IOException e) {
+            logger.severe("写入绑定日志失败，将在下次重试: " + e.getMessage());
+            requeue(batch, synced);
+            return;
+        }
+        synced.complete(null);
+
+        if (compact) {
+            compact();
+        }
+    }
+
+    // 写入失败的批次放回队列最前面，等待该批次的调用方随下一次成功的写入完成
+    private void requeue(ByteBuffer batch, CompletableFuture<Void> synced) {
+        writeLock.lock();
+        try {
+            batch.rewind();
+            ByteBuffer merged = ByteBuffer.allocate(batch.remaining() + pending.capacity());
+            pending.flip();
+            merged.put(batch).put(pending);
+            pending = merged;
+            pendingSynced.whenComplete((ignored, error) -> synced.complete(null));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // 在写入线程上执行: 切换到新一代日志并将切换时的内存表写为快照，之后删除旧日志
+    // 快照在压缩线程上写入，期间写入线程继续向新一代日志追加；快照可能已包含切换之后的修改，重放新日志时覆盖
+    private void compact() {
+        if (!compaction.isDone()) {
+            return;
+        }
+        long firstGeneration = journal.getGeneration() + 1;
+        ByteBuffer batch;
+        CompletableFuture<Void> synced;
+        writeLock.lock();
+        try {
+            batch = pending;
+            synced = pendingSynced;
+            pending = ByteBuffer.allocate(BindingJournal.RECORD_SIZE * 64);
+            pendingSynced = new CompletableFuture<>();
+            journalRecords = 0;
+        } finally {
+            writeLock.unlock();
+        }
+
+        try {
+            // 切换前的记录仍写入旧日志，快照写入完成前旧日志不会被删除
+            batch.flip();
+            journal.append(batch);
+            synced.complete(null);
+            journal.openGeneration(firstGeneration);
+        } catch (IOException e) {
+            logger.severe("压缩绑定日志失败: " + e.getMessage());
+            if (!synced.isDone()) {
+                requeue(batch, synced);
+            }
+            return;
+        }
+
+        // 切换之后取得快照视图: 此后的修改都在新一代日志中
+        BindingJournal.BindingSource bindings;
+        writeLock.lock();
+        try {
+            bindings = table.snapshot();
+        } catch (IOException e) {
+            logger.severe("压缩绑定日志失败: " + e.getMessage());
+            return;
+        } finally {
+            writeLock.unlock();
+        }
+        compaction = CompletableFuture.runAsync(() -> {
+            try {
+                journal.writeSnapshot(firstGeneration, bindings);
+                journal.deleteBefore(firstGeneration);
+            } catch (IOException | RuntimeException e) {
+                // 旧日志仍保留，重放结果不受影响
+                logger.severe("压缩绑定日志失败: " + e.getMessage());
+            }
+        }, compactor);
+    }
+
+    @Override
+    public void close() {
+        if (expiryIndex != null) {
+            expiryIndex.close();
+        }
+        if (writer != null) {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // 关闭前写入剩余的记录并压缩，下次启动只需加载快照
+            sync();
+            compaction.join();
+            if (journalRecords > 0) {
+                compact();
+                compaction.join();
+            }
+            compactor.shutdown();
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.severe("关闭绑定日志失败: " + e.getMessage());
+        }
+        if (table != null) {
+            table.close(journal.getGeneration());
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package ljsure.cn;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.logging.Logger;
+
+// 登录检查: 频率限制和IP绑定，与服务端/代理端平台无关；平台插件只负责在登录事件中调用并应用结果
+public final class LoginGuard {
+
+    private final Logger logger;
+    private final Supplier<BindingStore> store;
+    private final PluginMetrics.Operation checkOperation;
+    private final Function<UUID, String> nameResolver;
+
+    // 当前设置及由其生成的消息和频率限制: 修改时整体替换，登录线程每次检查读取一次
+    private final AtomicReference<Snapshot> current;
+    // 每个账号可绑定的IP数按此索引检查，未设置或尚未加载完成时不检查
+    private volatile BindingIndex accountIndex;
+
+    // store在重新加载配置后可能更换，每次检查时重新获取
+    public LoginGuard(Logger logger, Supplier<BindingStore> store, PluginMetrics metrics,
+                      Function<UUID, String> nameResolver, Settings initial) {
+        this.logger = logger;
+        this.store = store;
+        this.checkOperation = metrics.operation("login_check");
+        this.nameResolver = nameResolver;
+        this.current = new AtomicReference<>(new Snapshot(initial, createMessages(initial), initial.createRateLimiter()));
+    }
+
+    // 一次登录的各项检查应使用同一份快照
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    public Settings getSettings() {
+        return current.get().settings;
+    }
+
+    // 重新加载配置后替换全部设置；频率限制设置未修改时保留已有的计数
+    public void applySettings(Settings next) {
+        LoginMessages messages = createMessages(next);
+        current.updateAndGet(previous -> new Snapshot(next, messages,
+                next.getRateLimitFingerprint().equals(previous.settings.getRateLimitFingerprint())
+                        ? previous.rateLimiter : next.createRateLimiter()));
+    }
+
+    // 修改可由命令修改的设置 (启用状态、冷却时间、绕过列表)，消息和频率限制不受影响
+    public Settings updateSettings(UnaryOperator<Settings> update) {
+        return current.updateAndGet(previous -> new Snapshot(update.apply(previous.settings), previous.messages, previous.rateLimiter)).settings;
+    }
+
+    // 索引需要在创建本对象之后创建 (显示文本依赖绑定粒度)，创建后再设置
+    public void setAccountIndex(BindingIndex accountIndex) {
+        this.accountIndex = accountIndex;
+    }
+
+    public LoginMessages getMessages() {
+        return current.get().messages;
+    }
+
+    public ConnectionRateLimiter getRateLimiter() {
+        return current.get().rateLimiter;
+    }
+
+    private LoginMessages createMessages(Settings current) {
+        return new LoginMessages(current.getMessageTexts(), current.getTimeZone(), current.getTimeFormat(), nameResolver);
+    }
+
+    // 频率限制最先执行，被限制的连接不会访问存储 (插件关闭或绕过列表中的地址不受限制)；被限制时返回踢出信息
+    public String checkRateLimit(Snapshot snapshot, InetAddress address) {
+        Settings current = snapshot.settings;
+        ConnectionRateLimiter limiter = snapshot.rateLimiter;
+        if (limiter == null || !current.isEnabled() || current.getBypassTrie().contains(IPKey.high(address), IPKey.low(address))) {
+            return null;
+        }
+        ConnectionRateLimiter.Decision decision = limiter.tryAcquire(IPKey.high(address), IPKey.low(address));
+        return decision != ConnectionRateLimiter.Decision.ALLOWED ? snapshot.messages.createRateLimitedMessage() : null;
+    }
+
+    // 阻塞直到得到检查结果，应在登录的异步线程上调用；查询和绑定在存储线程上执行，对单次检查设置时间上限
+    public LoginVerdict check(Snapshot snapshot, InetAddress address, UUID playerUUID, String playerName) {
+        Settings current = snapshot.settings;
+        if (!current.isEnabled()) {
+            return LoginVerdict.allow(null);
+        }
+
+        long start = System.nanoTime();
+        boolean failed = false;
+        long timeout = current.getLoginCheckTimeout();
+        CompletableFuture<LoginVerdict> future = checkBinding(snapshot, address, playerUUID, playerName);
+        LoginVerdict verdict;
+        try {
+            verdict = future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warning("玩家 " + playerName + " 的IP检查超过 " + timeout + " 毫秒，按超时策略处理");
+            verdict = createTimeoutVerdict(snapshot);
+            undoIfDenied(verdict, future, playerName);
+            failed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            verdict = createTimeoutVerdict(snapshot);
+            undoIfDenied(verdict, future, playerName);
+            failed = true;
+        } catch (ExecutionException e) {
+            logger.severe("玩家 " + playerName + " 的IP检查失败: " + e.getCause());
+            verdict = createTimeoutVerdict(snapshot);
+            failed = true;
+        }
+        checkOperation.record(start, failed);
+        return verdict;
+    }
+
+    // 存储上的绑定无法取消，超时后仍可能完成；玩家已被拒绝时撤销其新建的绑定，否则该IP会被绑定到未能进入的玩家
+    // 续期不撤销: 玩家原本就持有该绑定，保留不会影响其他账号
+    private void undoIfDenied(LoginVerdict verdict, CompletableFuture<LoginVerdict> future, String playerName) {
+        if (verdict.isAllowed()) {
+            return;
+        }
+        future.thenAccept(late -> {
+            IPData binding = late.getCreatedBinding();
+            if (binding == null) {
+                return;
+            }
+            store.get().removeAll(Collections.singletonList(binding)).whenComplete((removed, error) -> {
+                if (error != null) {
+                    logger.severe("撤销玩家 " + playerName + " 超时后完成的绑定失败: " + error.getMessage());
+                } else if (removed > 0) {
+                    logger.info("玩家 " + playerName + " 的IP检查超时后才完成绑定，已撤销该绑定");
+                }
+            });
+        });
+    }
+
+    private LoginVerdict createTimeoutVerdict(Snapshot snapshot) {
+        if (snapshot.settings.isDenyOnTimeout()) {
+            return LoginVerdict.deny(snapshot.messages.createCheckTimeoutMessage());
+        }
+        return LoginVerdict.allow(null);
+    }
+
+    private CompletableFuture<LoginVerdict> checkBinding(Snapshot snapshot, InetAddress address, UUID playerUUID, String playerName) {
+        Settings current = snapshot.settings;
+        // 检查是否在绕过列表中
+        if (current.getBypassTrie().contains(IPKey.high(address), IPKey.low(address))) {
+            return CompletableFuture.completedFuture(LoginVerdict.allow(null));
+        }
+
+        IPKey key = toBindingKey(current, IPKey.high(address), IPKey.low(address));
+        long currentTime = System.currentTimeMillis();
+        LoginMessages messages = snapshot.messages;
+
+        // 账号在其他IP上的有效绑定已达到上限时拒绝，不访问存储
+        // 按内存索引检查: 同一账号同时从多个新IP登录时可能略超上限，之后的登录仍会被拒绝
+        // 群组服中索引通过变更日志同步，其他服务器的绑定在同步后才计入，此上限不保证在服务器间严格生效
+        int maxIps = current.getMaxIpsPerAccount();
+        BindingIndex index = accountIndex;
+        if (maxIps > 0 && index != null && index.isLoaded() && index.countOtherAddresses(playerUUID, key, currentTime) >= maxIps) {
+            return CompletableFuture.completedFuture(LoginVerdict.deny(messages.createAccountLimitMessage(formatBindingKey(current, key), maxIps)));
+        }
+
+        // IP(或其所在的地址段)上其他玩家的有效绑定未达到上限时，绑定到当前玩家；已绑定的玩家续期
+        int timeLimit = current.getTimeLimit();
+        long endTime = timeLimit == 0 ? 0 : currentTime + TimeUnit.MINUTES.toMillis(timeLimit);
+        IPData binding = new IPData(key, playerUUID, playerName, endTime, currentTime);
+
+        return store.get().compareAndBind(binding, currentTime, current.getMaxAccountsPerIp()).thenApply(result -> {
+            if (result.isConflict()) {
+                IPData ipData = result.getBinding();
+                String kickMessage;
+                if (ipData.getEndTime() == 0) {
+                    kickMessage = messages.createPermanentKickMessage(formatBindingKey(current, key), ipData.getPlayerUUID(), ipData.getPlayerName());
+                } else {
+                    kickMessage = messages.createTemporaryKickMessage(formatBindingKey(current, key), ipData.getEndTime(), currentTime, ipData.getPlayerUUID(), ipData.getPlayerName());
+                }
+                return LoginVerdict.deny(kickMessage);
+            }
+
+            return LoginVerdict.bound(messages.createBoundMessage(timeLimit), result.isCreated() ? binding : null);
+        });
+    }
+
+    // 将地址按绑定粒度截取为存储使用的键
+    public IPKey toBindingKey(long high, long low) {
+        return toBindingKey(current.get().settings, high, low);
+    }
+
+    public static IPKey toBindingKey(Settings current, long high, long low) {
+        int prefix = IPKey.isIPv4(high, low) ? current.getIpv4BindingPrefix() : current.getIpv6BindingPrefix();
+        return new IPKey(high & CidrBlock.maskHigh(prefix), low & CidrBlock.maskLow(prefix));
+    }
+
+    // 显示绑定键，按地址段绑定时附带前缀长度
+    public String formatBindingKey(IPKey key) {
+        return formatBindingKey(current.get().settings, key);
+    }
+
+    private static String formatBindingKey(Settings current, IPKey key) {
+        int prefix = key.isIPv4() ? current.getIpv4BindingPrefix() : current.getIpv6BindingPrefix();
+        return CidrBlock.of(key, prefix).toString();
+    }
+
+    // 设置与由其生成的消息、频率限制一起发布，登录线程不会把新的消息或计数与旧的设置混用
+    public static final class Snapshot {
+        private final Settings settings;
+        private final LoginMessages messages;
+        private final ConnectionRateLimiter rateLimiter;
+
+        private Snapshot(Settings settings, LoginMessages messages, ConnectionRateLimiter rateLimiter) {
+            this.settings = settings;
+            this.messages = messages;
+            this.rateLimiter = rateLimiter;
+        }
+
+        public Settings getSettings() { return settings; }
+    }
+}
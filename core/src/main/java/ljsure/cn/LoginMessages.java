@@ -0,0 +1,195 @@
+package ljsure.cn;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// 登录时发送给玩家的消息 (踢出信息和绑定提示)，模板来自配置文件的messages部分
+public class LoginMessages {
+
+    public enum Type {
+        PERMANENT_KICK("permanent-kick",
+                "&c&lIP登录限制\n" +
+                        "&7========================\n" +
+                        "&f您的IP地址: &e{ip}\n" +
+                        "&f限制类型: &c永久绑定\n" +
+                        "&f绑定玩家: &6{player}\n" +
+                        "&f状态: &e已绑定至其他玩家\n" +
+                        "&6如需解除限制，请联系管理员\n" +
+                        "&7========================\n"),
+        TEMPORARY_KICK("temporary-kick",
+                "&c&lIP登录限制\n" +
+                        "&7========================\n" +
+                        "&f您的IP地址: &e{ip}\n" +
+                        "&f限制类型: &6临时绑定\n" +
+                        "&f绑定玩家: &6{player}\n" +
+                        "&f剩余时间: &e{remaining}\n" +
+                        "&f解封时间: &a{unlock-time}\n" +
+                        "&6请等待冷却结束或联系管理员\n" +
+                        "&f状态: &c冷却中\n" +
+                        "&7========================\n"),
+        ACCOUNT_LIMIT("account-limit",
+                "&c&lIP登录限制\n" +
+                        "&7========================\n" +
+                        "&f您的IP地址: &e{ip}\n" +
+                        "&f限制类型: &c账号绑定IP数已满\n" +
+                        "&f您的账号已绑定 &e{limit} &f个其他IP\n" +
+                        "&6请使用已绑定的IP登录或联系管理员\n" +
+                        "&7========================\n"),
+        RATE_LIMITED("rate-limited",
+                "&c&lIP登录限制\n" +
+                        "&7========================\n" +
+                        "&f连接过于频繁\n" +
+                        "&6请稍后重新连接\n" +
+                        "&7========================\n"),
+        CHECK_TIMEOUT("check-timeout",
+                "&c&lIP登录限制\n" +
+                        "&7========================\n" +
+                        "&f服务器繁忙，IP检查超时\n" +
+                        "&6请稍后重新连接\n" +
+                        "&7========================\n"),
+        BOUND_TEMPORARY("bound-temporary", "&a您的IP将在 {time-limit} 分钟后解除绑定"),
+        BOUND_PERMANENT("bound-permanent", "&a您的IP已永久绑定至当前账号");
+
+        private final String key;
+        private final String defaultText;
+
+        Type(String key, String defaultText) {
+            this.key = key;
+            this.defaultText = defaultText;
+        }
+
+        public String getKey() { return key; }
+        public String getDefaultText() { return defaultText; }
+    }
+
+    private final Map<Type, MessageTemplate> templates = new EnumMap<>(Type.class);
+    // DateTimeFormatter不可变，可在多个线程中共用
+    private final DateTimeFormatter unlockTimeFormatter;
+    // 绑定记录中没有玩家名时按UUID查找
+    private final Function<UUID, String> nameResolver;
+    // 没有占位符取值的消息共用
+    private final Arguments noArguments = new Arguments(null, null, null, 0L, 0L, 0, 0);
+
+    // texts中缺少的消息使用默认模板
+    public LoginMessages(Map<Type, String> texts, ZoneId timeZone, DateTimeFormatter unlockTimeFormat,
+                         Function<UUID, String> nameResolver) {
+        for (Type type : Type.values()) {
+            String text = texts.get(type);
+            templates.put(type, MessageTemplate.compile(text != null ? text : type.getDefaultText()));
+        }
+        this.unlockTimeFormatter = unlockTimeFormat.withZone(timeZone);
+        this.nameResolver = nameResolver;
+    }
+
+    public String createPermanentKickMessage(String ip, UUID boundPlayerUUID, String boundPlayerName) {
+        return templates.get(Type.PERMANENT_KICK).render(new Arguments(ip, boundPlayerUUID, boundPlayerName, 0L, 0L, 0, 0));
+    }
+
+    public String createTemporaryKickMessage(String ip, long endTime, long currentTime, UUID boundPlayerUUID, String boundPlayerName) {
+        return templates.get(Type.TEMPORARY_KICK).render(new Arguments(ip, boundPlayerUUID, boundPlayerName, endTime, currentTime, 0, 0));
+    }
+
+    // 账号在其他IP上的绑定已达到limit个
+    public String createAccountLimitMessage(String ip, int limit) {
+        return templates.get(Type.ACCOUNT_LIMIT).render(new Arguments(ip, null, null, 0L, 0L, 0, limit));
+    }
+
+    // timeLimit为0时为永久绑定
+    public String createBoundMessage(int timeLimit) {
+        MessageTemplate template = templates.get(timeLimit > 0 ? Type.BOUND_TEMPORARY : Type.BOUND_PERMANENT);
+        return template.render(new Arguments(null, null, null, 0L, 0L, timeLimit, 0));
+    }
+
+    public String createRateLimitedMessage() {
+        return templates.get(Type.RATE_LIMITED).render(noArguments);
+    }
+
+    public String createCheckTimeoutMessage() {
+        return templates.get(Type.CHECK_TIMEOUT).render(noArguments);
+    }
+
+    public static String formatTime(long milliseconds) {
+        StringBuilder sb = new StringBuilder();
+        appendTime(milliseconds, sb);
+        return sb.toString();
+    }
+
+    private static void appendTime(long milliseconds, StringBuilder sb) {
+        if (milliseconds <= 0) {
+            sb.append("0分钟");
+            return;
+        }
+
+        long days = TimeUnit.MILLISECONDS.toDays(milliseconds);
+        long hours = TimeUnit.MILLISECONDS.toHours(milliseconds) % 24;
+        long minutes = TimeUnit.MILLISECONDS.toMinutes(milliseconds) % 60;
+
+        int start = sb.length();
+        if (days > 0) {
+            sb.append(days).append("天");
+        }
+        if (hours > 0) {
+            sb.append(hours).append("小时");
+        }
+        if (minutes > 0 || sb.length() == start) {
+            sb.append(minutes).append("分钟");
+        }
+    }
+
+    // 一条消息的占位符取值；玩家名只在模板用到时才查找
+    private final class Arguments implements MessageTemplate.Arguments {
+        private final String ip;
+        private final UUID boundPlayerUUID;
+        private final String boundPlayerName;
+        private final long endTime;
+        private final long currentTime;
+        private final int timeLimit;
+        private final int limit;
+
+        private Arguments(String ip, UUID boundPlayerUUID, String boundPlayerName, long endTime, long currentTime, int timeLimit, int limit) {
+            this.ip = ip;
+            this.boundPlayerUUID = boundPlayerUUID;
+            this.boundPlayerName = boundPlayerName;
+            this.endTime = endTime;
+            this.currentTime = currentTime;
+            this.timeLimit = timeLimit;
+            this.limit = limit;
+        }
+
+        @Override
+        public void append(MessageTemplate.Placeholder placeholder, StringBuilder out) {
+            switch (placeholder) {
+                case IP:
+                    out.append(ip != null ? ip : "");
+                    break;
+                case PLAYER:
+                    if (boundPlayerName != null) {
+                        out.append(boundPlayerName);
+                    } else if (boundPlayerUUID != null) {
+                        out.append(nameResolver.apply(boundPlayerUUID));
+                    }
+                    break;
+                case REMAINING:
+                    appendTime(endTime - currentTime, out);
+                    break;
+                case UNLOCK_TIME:
+                    if (endTime > 0) {
+                        unlockTimeFormatter.formatTo(Instant.ofEpochMilli(endTime), out);
+                    }
+                    break;
+                case TIME_LIMIT:
+                    out.append(timeLimit);
+                    break;
+                case LIMIT:
+                    out.append(limit);
+                    break;
+            }
+        }
+    }
+}
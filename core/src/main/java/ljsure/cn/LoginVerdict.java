@@ -0,0 +1,26 @@
+package ljsure.cn;
+
+// 登录检查结果类: 拒绝时message为踢出信息，允许时为进入后发送的提示(可为null)
+// createdBinding为本次检查新建的绑定 (续期或未绑定时为null)，检查超时被拒绝后用于撤销
+public final class LoginVerdict {
+    private final boolean allowed;
+    private final String message;
+    private final IPData createdBinding;
+    private final long createdAt;
+
+    private LoginVerdict(boolean allowed, String message, IPData createdBinding) {
+        this.allowed = allowed;
+        this.message = message;
+        this.createdBinding = createdBinding;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    public static LoginVerdict allow(String joinMessage) { return new LoginVerdict(true, joinMessage, null); }
+    public static LoginVerdict deny(String kickMessage) { return new LoginVerdict(false, kickMessage, null); }
+    static LoginVerdict bound(String joinMessage, IPData createdBinding) { return new LoginVerdict(true, joinMessage, createdBinding); }
+
+    public boolean isAllowed() { return allowed; }
+    public String getMessage() { return message; }
+    IPData getCreatedBinding() { return createdBinding; }
+    public long getCreatedAt() { return createdAt; }
+}
@@ -0,0 +1,148 @@
+package ljsure.cn;
+
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// 基于嵌套键值表的配置，由YAML文件读取；键统一转换为字符串，与Bukkit读取同一文件的结果一致
+public final class MapConfigView implements ConfigView {
+
+    private final Map<String, Object> values;
+    private final char separator;
+
+    private MapConfigView(Map<String, Object> values, char separator) {
+        this.values = values;
+        this.separator = separator;
+    }
+
+    // separator为路径分隔符，键中含有'.'时(例如IP地址)可改用其他字符
+    public static MapConfigView load(File file, char separator) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return load(in, separator);
+        }
+    }
+
+    public static MapConfigView load(InputStream in, char separator) throws IOException {
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            Object root = new Yaml().load(reader);
+            return new MapConfigView(root instanceof Map ? normalize((Map<?, ?>) root) : new LinkedHashMap<>(), separator);
+        } catch (YAMLException e) {
+            throw new IOException("YAML格式错误: " + e.getMessage(), e);
+        }
+    }
+
+    public static MapConfigView of(Map<?, ?> values) {
+        return new MapConfigView(normalize(values), '.');
+    }
+
+    private static Map<String, Object> normalize(Map<?, ?> map) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            Object value = entry.getValue();
+            result.put(String.valueOf(entry.getKey()), value instanceof Map ? normalize((Map<?, ?>) value) : value);
+        }
+        return result;
+    }
+
+    private Object get(String path) {
+        Object current = values;
+        int start = 0;
+        while (true) {
+            if (!(current instanceof Map)) {
+                return null;
+            }
+            int end = path.indexOf(separator, start);
+            String key = end < 0 ? path.substring(start) : path.substring(start, end);
+            current = ((Map<?, ?>) current).get(key);
+            if (end < 0) {
+                return current;
+            }
+            start = end + 1;
+        }
+    }
+
+    @Override
+    public boolean contains(String path) {
+        return get(path) != null;
+    }
+
+    @Override
+    public String getString(String path) {
+        return getString(path, null);
+    }
+
+    @Override
+    public String getString(String path, String def) {
+        Object value = get(path);
+        return value != null && !(value instanceof Map) ? value.toString() : def;
+    }
+
+    @Override
+    public boolean getBoolean(String path, boolean def) {
+        Object value = get(path);
+        return value instanceof Boolean ? (Boolean) value : def;
+    }
+
+    @Override
+    public int getInt(String path, int def) {
+        Object value = get(path);
+        return value instanceof Number ? ((Number) value).intValue() : def;
+    }
+
+    @Override
+    public long getLong(String path, long def) {
+        Object value = get(path);
+        return value instanceof Number ? ((Number) value).longValue() : def;
+    }
+
+    @Override
+    public double getDouble(String path, double def) {
+        Object value = get(path);
+        return value instanceof Number ? ((Number) value).doubleValue() : def;
+    }
+
+    @Override
+    public List<String> getStringList(String path) {
+        Object value = get(path);
+        if (!(value instanceof List)) {
+            return new ArrayList<>();
+        }
+        List<String> result = new ArrayList<>();
+        for (Object element : (List<?>) value) {
+            if (element != null && !(element instanceof Map) && !(element instanceof List)) {
+                result.add(element.toString());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ConfigView getSection(String path) {
+        Object value = get(path);
+        return value instanceof Map ? new MapConfigView((Map<String, Object>) value, separator) : null;
+    }
+
+    @Override
+    public Set<String> getKeys() {
+        return Collections.unmodifiableSet(values.keySet());
+    }
+
+    @Override
+    public String describe(String path) {
+        return String.valueOf(get(path));
+    }
+}
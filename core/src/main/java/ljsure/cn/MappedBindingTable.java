@@ -0,0 +1,652 @@
+package ljsure.cn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+// 堆外绑定表: 内存映射文件中的定长槽位开放寻址哈希表 (线性探测，删除时后移填补)
+// 按地址计算哈希，同一地址的多个玩家各占一个槽位，位于同一条探测链上
+// 正常关闭时在文件头记录对应的日志代，下次启动若日志没有新的记录即可直接使用，无需解析
+public class MappedBindingTable implements BindingTable {
+
+    // 文件头: 0 魔数 | 4 版本 | 8 槽位数 | 12 是否正常关闭 | 16 绑定数 | 24 日志代
+    private static final int MAGIC = 0x4C495049; // "LIPI"
+    // 版本2: 玩家名改为UTF-8，容量与日志相同；旧版本的索引文件丢弃后从日志重建
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+
+    // 槽位: 0 状态(0空 1占用) | 1 名称长度 | 8 IP高64位 | 16 IP低64位 | 24 UUID高64位 | 32 UUID低64位
+    // 40 结束时间 | 48 创建时间 | 56 玩家名(UTF-8，最多48字节)
+    private static final int SLOT_SIZE = 104;
+    private static final int NAME_OFFSET = 56;
+    private static final int NAME_CAPACITY = 48;
+    // 快照每次在读锁内复制的槽位数
+    private static final int SNAPSHOT_CHUNK_SLOTS = 4096;
+
+    // 单个映射不能超过2GB
+    private static final int MAX_CAPACITY = 1 << 24;
+    private static final int MIN_CAPACITY = 1024;
+    private static final double LOAD_FACTOR = 0.6;
+
+    // 分页的顺序: 先按地址，同一地址内按玩家UUID
+    private static final Comparator<IPData> ROW_ORDER = Comparator.comparing(IPData::getKey).thenComparing(IPData::getPlayerUUID);
+
+    private final Logger logger;
+    private final File directory;
+    private final String baseName;
+    private final StampedLock lock = new StampedLock();
+    private volatile Table table;
+    private volatile int size;
+    // 打开时文件头记录的日志代，上次未正常关闭时为-1
+    private final long cleanGeneration;
+    // 快照进行中时记录删除时被前移的绑定 (由写锁保护)，否则为null
+    private List<IPData> movedDuringSnapshot;
+
+    private MappedBindingTable(Logger logger, File directory, String baseName, Table table, int size, long cleanGeneration) {
+        this.logger = logger;
+        this.directory = directory;
+        this.baseName = baseName;
+        this.table = table;
+        this.size = size;
+        this.cleanGeneration = cleanGeneration;
+    }
+
+    // 打开已有的索引文件，不存在或无法识别时按expectedSize新建；打开后立即标记为未正常关闭
+    public static MappedBindingTable open(Logger logger, File directory, String baseName, int expectedSize) throws IOException {
+        Files.createDirectories(directory.toPath());
+        Table table = null;
+        int size = 0;
+        long cleanGeneration = -1;
+
+        // 扩容中断时可能留下多个文件，使用槽位数最大的有效文件
+        List<File> files = listIndexFiles(directory, baseName);
+        files.sort(Comparator.comparingLong(File::length).reversed());
+        for (File file : files) {
+            if (table == null) {
+                Table candidate = Table.open(file);
+                ByteBuffer buffer = candidate.buffer;
+                if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION && buffer.getInt(8) == candidate.capacity) {
+                    table = candidate;
+                    size = (int) buffer.getLong(16);
+                    cleanGeneration = buffer.getInt(12) == 1 ? buffer.getLong(24) : -1;
+                    continue;
+                }
+                candidate.close();
+                if (buffer.getInt(0) == MAGIC && buffer.getInt(4) != VERSION) {
+                    logger.info("索引文件格式已更新，将从日志重建: " + file.getName());
+                } else {
+                    logger.warning("忽略无法识别的索引文件: " + file.getName());
+                }
+            }
+            Files.deleteIfExists(file.toPath());
+        }
+
+        if (table == null) {
+            table = Table.create(indexFile(directory, baseName, capacityFor(expectedSize)), capacityFor(expectedSize));
+        }
+        MappedBindingTable mappedTable = new MappedBindingTable(logger, directory, baseName, table, size, cleanGeneration);
+        table.buffer.putInt(12, 0);
+        table.buffer.force();
+        return mappedTable;
+    }
+
+    // 上次正常关闭时记录的日志代，未正常关闭时为-1
+    public long getCleanGeneration() {
+        return cleanGeneration;
+    }
+
+    @Override
+    public List<IPData> get(long high, long low) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            List<IPData> ipList = readAll(table, high, low);
+            if (lock.validate(stamp)) {
+                return ipList;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return readAll(table, high, low);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public IPData findConflict(long high, long low, UUID playerUUID, long now, int maxAccounts) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            Table t = table;
+            int slot = findConflict(t, high, low, playerUUID, now, maxAccounts);
+            IPData conflict = slot >= 0 ? decode(t.buffer, offset(slot)) : null;
+            if (lock.validate(stamp)) {
+                return conflict;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            Table t = table;
+            int slot = findConflict(t, high, low, playerUUID, now, maxAccounts);
+            return slot >= 0 ? decode(t.buffer, offset(slot)) : null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean isBound(long high, long low, UUID playerUUID, long now) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            boolean bound = isBound(table, high, low, playerUUID, now);
+            if (lock.validate(stamp)) {
+                return bound;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return isBound(table, high, low, playerUUID, now);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static boolean isBound(Table t, long high, long low, UUID playerUUID, long now) {
+        int slot = find(t, high, low, playerUUID.getMostSignificantBits(), playerUUID.getLeastSignificantBits());
+        if (slot < 0) {
+            return false;
+        }
+        long endTime = t.buffer.getLong(offset(slot) + 40);
+        return endTime == 0 || endTime > now;
+    }
+
+    // 返回其他玩家中最早创建的未过期绑定所在的槽位，没有冲突时返回-1
+    private static int findConflict(Table t, long high, long low, UUID playerUUID, long now, int maxAccounts) {
+        int earliest = -1;
+        long earliestCreatedAt = Long.MAX_VALUE;
+        int others = 0;
+        int slot = IPKey.hash(high, low) & t.mask;
+        for (int probes = 0; probes <= t.mask; probes++) {
+            int offset = offset(slot);
+            if (t.buffer.get(offset) == 0) {
+                break;
+            }
+            if (t.buffer.getLong(offset + 8) == high && t.buffer.getLong(offset + 16) == low) {
+                long endTime = t.buffer.getLong(offset + 40);
+                if (endTime == 0 || endTime > now) {
+                    if (t.buffer.getLong(offset + 24) == playerUUID.getMostSignificantBits()
+                            && t.buffer.getLong(offset + 32) == playerUUID.getLeastSignificantBits()) {
+                        return -1;
+                    }
+                    others++;
+                    long createdAt = t.buffer.getLong(offset + 48);
+                    if (createdAt < earliestCreatedAt) {
+                        earliest = slot;
+                        earliestCreatedAt = createdAt;
+                    }
+                }
+            }
+            slot = (slot + 1) & t.mask;
+        }
+        return others >= maxAccounts ? earliest : -1;
+    }
+
+    @Override
+    public void put(IPData ipData) {
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            UUID playerUUID = ipData.getPlayerUUID();
+            int slot = find(t, ipData.getIpHigh(), ipData.getIpLow(), playerUUID.getMostSignificantBits(), playerUUID.getLeastSignificantBits());
+            if (slot < 0) {
+                if (size + 1 > t.capacity * LOAD_FACTOR) {
+                    t = grow(t);
+                }
+                slot = IPKey.hash(ipData.getIpHigh(), ipData.getIpLow()) & t.mask;
+                while (t.buffer.get(offset(slot)) != 0) {
+                    slot = (slot + 1) & t.mask;
+                }
+                size++;
+                t.buffer.putLong(16, size);
+            }
+            write(t.buffer, offset(slot), ipData);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int remove(long high, long low) {
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            int removed = 0;
+            // 删除会移动同一探测链上的槽位，每次都从头查找
+            int slot;
+            while ((slot = find(t, high, low)) >= 0) {
+                deleteAt(t, slot);
+                removed++;
+            }
+            size -= removed;
+            t.buffer.putLong(16, size);
+            return removed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean removeAccount(long high, long low, UUID playerUUID) {
+        return removeAccount(high, low, playerUUID, false, 0L);
+    }
+
+    @Override
+    public boolean removeIfEndTime(long high, long low, UUID playerUUID, long endTime) {
+        return removeAccount(high, low, playerUUID, true, endTime);
+    }
+
+    private boolean removeAccount(long high, long low, UUID playerUUID, boolean checkEndTime, long endTime) {
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            int slot = find(t, high, low, playerUUID.getMostSignificantBits(), playerUUID.getLeastSignificantBits());
+            if (slot < 0 || (checkEndTime && t.buffer.getLong(offset(slot) + 40) != endTime)) {
+                return false;
+            }
+            deleteAt(t, slot);
+            size--;
+            t.buffer.putLong(16, size);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // 遍历整个映射，期间阻塞修改；只用于启动和管理命令
+    @Override
+    public void forEach(Consumer<? super IPData> action) {
+        long stamp = lock.readLock();
+        try {
+            Table t = table;
+            for (int slot = 0; slot < t.capacity; slot++) {
+                int offset = offset(slot);
+                if (t.buffer.get(offset) != 0) {
+                    action.accept(decode(t.buffer, offset));
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // 哈希表没有地址顺序，分页时扫描全部槽位并保留按(地址, 玩家)最小的limit条，再补上最后一个地址的其余绑定；只用于管理命令
+    @Override
+    public List<IPData> page(CidrBlock range, IPKey after, int limit) {
+        PriorityQueue<IPData> smallest = new PriorityQueue<>(ROW_ORDER.reversed());
+        IPKey first = range != null ? range.getNetwork() : null;
+        IPKey last = range != null ? range.getLastAddress() : null;
+        long stamp = lock.readLock();
+        try {
+            Table t = table;
+            for (int slot = 0; slot < t.capacity; slot++) {
+                int offset = offset(slot);
+                if (t.buffer.get(offset) == 0) {
+                    continue;
+                }
+                IPKey key = new IPKey(t.buffer.getLong(offset + 8), t.buffer.getLong(offset + 16));
+                if ((after != null && key.compareTo(after) <= 0)
+                        || (first != null && (key.compareTo(first) < 0 || key.compareTo(last) > 0))) {
+                    continue;
+                }
+                if (smallest.size() < limit) {
+                    smallest.add(decode(t.buffer, offset));
+                } else if (limit > 0) {
+                    IPData largest = smallest.peek();
+                    int order = key.compareTo(largest.getKey());
+                    if (order < 0 || (order == 0 && new UUID(t.buffer.getLong(offset + 24), t.buffer.getLong(offset + 32))
+                            .compareTo(largest.getPlayerUUID()) < 0)) {
+                        smallest.poll();
+                        smallest.add(decode(t.buffer, offset));
+                    }
+                }
+            }
+
+            List<IPData> ipList = new ArrayList<>(smallest);
+            ipList.sort(ROW_ORDER);
+            if (limit > 0 && ipList.size() >= limit) {
+                IPKey lastKey = ipList.get(ipList.size() - 1).getKey();
+                ipList.removeIf(ipData -> ipData.getKey().equals(lastKey));
+                List<IPData> lastRows = readAll(t, lastKey.getHigh(), lastKey.getLow());
+                lastRows.sort(ROW_ORDER);
+                ipList.addAll(lastRows);
+            }
+            return ipList;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            for (int slot = 0; slot < t.capacity; slot++) {
+                t.buffer.put(offset(slot), (byte) 0);
+            }
+            size = 0;
+            t.buffer.putLong(16, 0L);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // 不复制整个映射: 遍历时每次在读锁内复制一段槽位，段之间修改可以继续，不会长时间阻塞登录
+    // 遍历期间的修改可能部分出现在结果中，这些修改都记录在快照之后的日志里，重放时覆盖；
+    // 删除时后移的绑定可能从未复制的位置移到已复制的位置，遍历结束时补上
+    @Override
+    public BindingJournal.BindingSource snapshot() {
+        Table source;
+        long stamp = lock.writeLock();
+        try {
+            source = table;
+            movedDuringSnapshot = new ArrayList<>();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        return action -> {
+            ByteBuffer chunk = ByteBuffer.allocate(SNAPSHOT_CHUNK_SLOTS * SLOT_SIZE);
+            List<IPData> moved;
+            try {
+                for (int first = 0; first < source.capacity; first += SNAPSHOT_CHUNK_SLOTS) {
+                    int count = Math.min(SNAPSHOT_CHUNK_SLOTS, source.capacity - first);
+                    long readStamp = lock.readLock();
+                    try {
+                        // 扩容后旧映射不再修改，仍可读取
+                        ByteBuffer slots = source.buffer.duplicate();
+                        slots.limit(offset(first + count)).position(offset(first));
+                        chunk.clear();
+                        chunk.put(slots);
+                    } finally {
+                        lock.unlockRead(readStamp);
+                    }
+                    for (int i = 0; i < count; i++) {
+                        if (chunk.get(i * SLOT_SIZE) != 0) {
+                            action.accept(decode(chunk, i * SLOT_SIZE));
+                        }
+                    }
+                }
+            } finally {
+                long writeStamp = lock.writeLock();
+                try {
+                    moved = movedDuringSnapshot;
+                    movedDuringSnapshot = null;
+                } finally {
+                    lock.unlockWrite(writeStamp);
+                }
+            }
+            for (IPData ipData : moved) {
+                action.accept(ipData);
+            }
+        };
+    }
+
+    @Override
+    public void close(long journalGeneration) {
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            t.buffer.putLong(16, size);
+            t.buffer.putLong(24, journalGeneration);
+            t.buffer.force();
+            // 其余内容都已写入后再标记为正常关闭
+            t.buffer.putInt(12, 1);
+            t.buffer.force();
+            t.close();
+        } catch (IOException e) {
+            logger.severe("关闭绑定索引失败: " + e.getMessage());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // 调用方需持有写锁
+    private Table grow(Table old) {
+        if (old.capacity >= MAX_CAPACITY) {
+            throw new IllegalStateException("绑定索引已满 (" + size + " 条)");
+        }
+        int capacity = old.capacity << 1;
+        Table resized;
+        try {
+            resized = Table.create(indexFile(directory, baseName, capacity), capacity);
+        } catch (IOException e) {
+            throw new IllegalStateException("扩容绑定索引失败: " + e.getMessage(), e);
+        }
+        for (int slot = 0; slot < old.capacity; slot++) {
+            int from = offset(slot);
+            if (old.buffer.get(from) == 0) {
+                continue;
+            }
+            int target = IPKey.hash(old.buffer.getLong(from + 8), old.buffer.getLong(from + 16)) & resized.mask;
+            while (resized.buffer.get(offset(target)) != 0) {
+                target = (target + 1) & resized.mask;
+            }
+            copySlot(old.buffer, from, resized.buffer, offset(target));
+        }
+        resized.buffer.putLong(16, size);
+        resized.buffer.force();
+        table = resized;
+
+        // 旧映射在被回收前仍然有效，删除失败(例如Windows)时下次启动再删除
+        try {
+            old.close();
+            Files.deleteIfExists(old.file.toPath());
+        } catch (IOException e) {
+            logger.warning("无法删除旧的索引文件: " + old.file.getName());
+        }
+        logger.info("绑定索引已扩容至 " + capacity + " 个槽位");
+        return resized;
+    }
+
+    // 删除后将同一探测链上的后续条目前移，保持表中没有墓碑；调用方需持有写锁
+    private void deleteAt(Table t, int slot) {
+        t.buffer.put(offset(slot), (byte) 0);
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & t.mask;
+            int nextOffset = offset(next);
+            if (t.buffer.get(nextOffset) == 0) {
+                return;
+            }
+            int home = IPKey.hash(t.buffer.getLong(nextOffset + 8), t.buffer.getLong(nextOffset + 16)) & t.mask;
+            boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (movable) {
+                if (movedDuringSnapshot != null) {
+                    movedDuringSnapshot.add(decode(t.buffer, nextOffset));
+                }
+                copySlot(t.buffer, nextOffset, t.buffer, offset(hole));
+                t.buffer.put(nextOffset, (byte) 0);
+                hole = next;
+            }
+        }
+    }
+
+    // 返回该地址任意一个绑定所在的槽位；同一地址的绑定都在从其起始槽位开始、到第一个空槽位为止的探测链上
+    private static int find(Table t, long high, long low) {
+        // 乐观读取时表可能正在被修改，限制探测次数防止死循环，结果由validate保证
+        int slot = IPKey.hash(high, low) & t.mask;
+        for (int probes = 0; probes <= t.mask; probes++) {
+            int offset = offset(slot);
+            if (t.buffer.get(offset) == 0) {
+                return -1;
+            }
+            if (t.buffer.getLong(offset + 8) == high && t.buffer.getLong(offset + 16) == low) {
+                return slot;
+            }
+            slot = (slot + 1) & t.mask;
+        }
+        return -1;
+    }
+
+    private static int find(Table t, long high, long low, long uuidHigh, long uuidLow) {
+        int slot = IPKey.hash(high, low) & t.mask;
+        for (int probes = 0; probes <= t.mask; probes++) {
+            int offset = offset(slot);
+            if (t.buffer.get(offset) == 0) {
+                return -1;
+            }
+            if (t.buffer.getLong(offset + 8) == high && t.buffer.getLong(offset + 16) == low
+                    && t.buffer.getLong(offset + 24) == uuidHigh && t.buffer.getLong(offset + 32) == uuidLow) {
+                return slot;
+            }
+            slot = (slot + 1) & t.mask;
+        }
+        return -1;
+    }
+
+    private static List<IPData> readAll(Table t, long high, long low) {
+        List<IPData> ipList = new ArrayList<>(1);
+        int slot = IPKey.hash(high, low) & t.mask;
+        for (int probes = 0; probes <= t.mask; probes++) {
+            int offset = offset(slot);
+            if (t.buffer.get(offset) == 0) {
+                break;
+            }
+            if (t.buffer.getLong(offset + 8) == high && t.buffer.getLong(offset + 16) == low) {
+                ipList.add(decode(t.buffer, offset));
+            }
+            slot = (slot + 1) & t.mask;
+        }
+        return ipList;
+    }
+
+    private static IPData decode(ByteBuffer buffer, int offset) {
+        int nameLength = Math.min(buffer.get(offset + 1) & 0xFF, NAME_CAPACITY);
+        String name = null;
+        if (nameLength > 0) {
+            byte[] bytes = new byte[nameLength];
+            for (int i = 0; i < nameLength; i++) {
+                bytes[i] = buffer.get(offset + NAME_OFFSET + i);
+            }
+            name = new String(bytes, StandardCharsets.UTF_8);
+        }
+        IPKey key = new IPKey(buffer.getLong(offset + 8), buffer.getLong(offset + 16));
+        UUID playerUUID = new UUID(buffer.getLong(offset + 24), buffer.getLong(offset + 32));
+        return new IPData(key, playerUUID, name, buffer.getLong(offset + 40), buffer.getLong(offset + 48));
+    }
+
+    private static void write(ByteBuffer buffer, int offset, IPData ipData) {
+        byte[] name = ipData.getPlayerName() != null ? ipData.getPlayerName().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int nameLength = BindingJournal.utf8PrefixLength(name, NAME_CAPACITY);
+        buffer.putLong(offset + 8, ipData.getIpHigh());
+        buffer.putLong(offset + 16, ipData.getIpLow());
+        buffer.putLong(offset + 24, ipData.getPlayerUUID().getMostSignificantBits());
+        buffer.putLong(offset + 32, ipData.getPlayerUUID().getLeastSignificantBits());
+        buffer.putLong(offset + 40, ipData.getEndTime());
+        buffer.putLong(offset + 48, ipData.getCreatedAt());
+        for (int i = 0; i < NAME_CAPACITY; i++) {
+            buffer.put(offset + NAME_OFFSET + i, i < nameLength ? name[i] : 0);
+        }
+        buffer.put(offset + 1, (byte) nameLength);
+        buffer.put(offset, (byte) 1);
+    }
+
+    private static void copySlot(ByteBuffer from, int fromOffset, ByteBuffer to, int toOffset) {
+        for (int i = 0; i < SLOT_SIZE; i += 8) {
+            to.putLong(toOffset + i, from.getLong(fromOffset + i));
+        }
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize && capacity < MAX_CAPACITY) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static File indexFile(File directory, String baseName, int capacity) {
+        return new File(directory, baseName + "-" + capacity + ".index");
+    }
+
+    private static List<File> listIndexFiles(File directory, String baseName) {
+        List<File> files = new ArrayList<>();
+        File[] candidates = directory.listFiles();
+        if (candidates == null) {
+            return files;
+        }
+        for (File file : candidates) {
+            if (file.getName().startsWith(baseName + "-") && file.getName().endsWith(".index")) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private static final class Table {
+        private final File file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private final int mask;
+
+        private Table(File file, FileChannel channel, MappedByteBuffer buffer, int capacity) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+        }
+
+        static Table open(File file) throws IOException {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long length = channel.size();
+            int capacity = length > HEADER_SIZE ? (int) Math.min((length - HEADER_SIZE) / SLOT_SIZE, MAX_CAPACITY) : 0;
+            if (Integer.bitCount(capacity) != 1) {
+                // 长度不对的文件只映射文件头，由调用方判定为无效
+                return new Table(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE), -1);
+            }
+            return new Table(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE), capacity);
+        }
+
+        static Table create(File file, int capacity) throws IOException {
+            FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, capacity);
+            buffer.putInt(12, 0);
+            buffer.putLong(16, 0L);
+            buffer.putLong(24, -1L);
+            return new Table(file, channel, buffer, capacity);
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ljsure.cn;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// 预先解析的消息模板: 加载时转换颜色代码并拆分为文本段和占位符，生成消息时只做拼接
+// 解析后不再修改，可在多个线程中同时使用
+public final class MessageTemplate {
+
+    public enum Placeholder {
+        IP("ip"),
+        PLAYER("player"),
+        REMAINING("remaining"),
+        UNLOCK_TIME("unlock-time"),
+        TIME_LIMIT("time-limit"),
+        LIMIT("limit");
+
+        private final String key;
+
+        Placeholder(String key) {
+            this.key = key;
+        }
+
+        public String getKey() { return key; }
+
+        static Placeholder byKey(String key) {
+            for (Placeholder placeholder : values()) {
+                if (placeholder.key.equals(key)) {
+                    return placeholder;
+                }
+            }
+            return null;
+        }
+    }
+
+    // 占位符的取值，生成消息时按需调用
+    public interface Arguments {
+        void append(Placeholder placeholder, StringBuilder out);
+    }
+
+    // literals比placeholders多一个元素: 文本段0, 占位符0, 文本段1, ... 文本段n
+    private final String[] literals;
+    private final Placeholder[] placeholders;
+    private final Set<Placeholder> used;
+    private final int literalLength;
+
+    private MessageTemplate(String[] literals, Placeholder[] placeholders) {
+        this.literals = literals;
+        this.placeholders = placeholders;
+        this.used = placeholders.length == 0 ? EnumSet.noneOf(Placeholder.class) : EnumSet.of(placeholders[0], placeholders);
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    // 用&表示颜色代码，{ip}等表示占位符；不认识的{...}原样保留
+    public static MessageTemplate compile(String text) {
+        String translated = translateColorCodes(text);
+        List<String> literals = new ArrayList<>();
+        List<Placeholder> placeholders = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int index = 0;
+        while (index < translated.length()) {
+            char c = translated.charAt(index);
+            int close = c == '{' ? translated.indexOf('}', index + 1) : -1;
+            Placeholder placeholder = close > 0
+                    ? Placeholder.byKey(translated.substring(index + 1, close).trim().toLowerCase(Locale.ROOT))
+                    : null;
+            if (placeholder == null) {
+                literal.append(c);
+                index++;
+                continue;
+            }
+            literals.add(literal.toString());
+            literal.setLength(0);
+            placeholders.add(placeholder);
+            index = close + 1;
+        }
+        literals.add(literal.toString());
+        return new MessageTemplate(literals.toArray(new String[0]), placeholders.toArray(new Placeholder[0]));
+    }
+
+    // 与Bukkit的ChatColor.translateAlternateColorCodes相同: &后跟颜色或格式代码时替换为§
+    private static String translateColorCodes(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length - 1; i++) {
+            if (chars[i] == '&' && "0123456789AaBbCcDdEeFfKkLlMmNnOoRrXx".indexOf(chars[i + 1]) >= 0) {
+                chars[i] = '§';
+                chars[i + 1] = Character.toLowerCase(chars[i + 1]);
+            }
+        }
+        return new String(chars);
+    }
+
+    public boolean uses(Placeholder placeholder) {
+        return used.contains(placeholder);
+    }
+
+    public boolean isConstant() {
+        return placeholders.length == 0;
+    }
+
+    public String render(Arguments arguments) {
+        if (placeholders.length == 0) {
+            return literals[0];
+        }
+        // 预留占位符的长度，通常不需要扩容
+        StringBuilder out = new StringBuilder(literalLength + placeholders.length * 24);
+        for (int i = 0; i < placeholders.length; i++) {
+            out.append(literals[i]);
+            arguments.append(placeholders[i], out);
+        }
+        return out.append(literals[placeholders.length]).toString();
+    }
+}
@@ -0,0 +1,202 @@
+package ljsure.cn;
+
+import com.zaxxer.hikari.HikariConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+// MySQL存储，可在群组服间共享绑定数据
+public class MySQLBindingStore extends SqlBindingStore {
+
+    public MySQLBindingStore(Logger logger, HikariConfig poolConfig, String tableName,
+                             SqlWriteQueue.Options queueOptions, int cleanupBatchSize,
+                             SqlChangeSync.Options syncOptions, BloomFilter.Options filterOptions) {
+        super(logger, "MySQL", poolConfig, tableName, queueOptions, cleanupBatchSize, syncOptions, filterOptions);
+    }
+
+    @Override
+    protected void createSchema(Connection connection) throws SQLException {
+        // IP以16字节的二进制形式保存 (IPv4为IPv4映射地址)
+        String sql = "CREATE TABLE IF NOT EXISTS " + tableName + " (" +
+                "id INT AUTO_INCREMENT PRIMARY KEY," +
+                "ip VARBINARY(16) NOT NULL," +
+                "player_uuid VARCHAR(36) NOT NULL," +
+                "player_name VARCHAR(16) NOT NULL," +
+                "end_time BIGINT NOT NULL," +
+                "created_at BIGINT NOT NULL," +
+                "UNIQUE KEY uk_ip_player (ip, player_uuid)," +
+                "INDEX idx_end_time (end_time)," +
+                "INDEX idx_player_uuid (player_uuid)," +
+                "INDEX idx_created_at (created_at)" +
+                ")";
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+        migrateIPColumn(connection);
+        migrateBindingKey(connection);
+        // 旧版本创建的表没有按玩家和创建时间查找的索引
+        addIndexIfMissing(connection, "idx_player_uuid", "player_uuid");
+        addIndexIfMissing(connection, "idx_created_at", "created_at");
+    }
+
+    private void addIndexIfMissing(Connection connection, String indexName, String column) throws SQLException {
+        try (ResultSet indexes = connection.getMetaData().getIndexInfo(connection.getCatalog(), null, tableName, false, false)) {
+            while (indexes.next()) {
+                if (indexName.equalsIgnoreCase(indexes.getString("INDEX_NAME"))) {
+                    return;
+                }
+            }
+        }
+        logger.info("正在为" + tableName + "添加索引 " + indexName + "...");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE " + tableName + " ADD INDEX " + indexName + " (" + column + ")");
+        }
+    }
+
+    // 旧版本的表每个IP只允许一条绑定 (ip列上的唯一索引)，改为每个IP的每个玩家一条
+    // 按IP查找使用新唯一索引的前缀，按玩家查找使用idx_player_uuid
+    private void migrateBindingKey(Connection connection) throws SQLException {
+        Map<String, List<String>> uniqueIndexes = new LinkedHashMap<>();
+        try (ResultSet indexes = connection.getMetaData().getIndexInfo(connection.getCatalog(), null, tableName, true, false)) {
+            while (indexes.next()) {
+                String indexName = indexes.getString("INDEX_NAME");
+                String column = indexes.getString("COLUMN_NAME");
+                if (indexName != null && column != null) {
+                    uniqueIndexes.computeIfAbsent(indexName, name -> new ArrayList<>()).add(column.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        List<String> ipOnly = new ArrayList<>();
+        for (Map.Entry<String, List<String>> index : uniqueIndexes.entrySet()) {
+            if (index.getValue().equals(Collections.singletonList("ip"))) {
+                ipOnly.add(index.getKey());
+            }
+        }
+        if (ipOnly.isEmpty()) {
+            return;
+        }
+
+        logger.info("正在将" + tableName + "的唯一键改为(ip, player_uuid)...");
+        StringBuilder sql = new StringBuilder("ALTER TABLE ").append(tableName);
+        for (String indexName : ipOnly) {
+            sql.append(" DROP INDEX `").append(indexName).append("`,");
+        }
+        if (uniqueIndexes.containsKey("uk_ip_player")) {
+            sql.setLength(sql.length() - 1);
+        } else {
+            sql.append(" ADD UNIQUE KEY uk_ip_player (ip, player_uuid)");
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql.toString());
+        }
+    }
+
+    @Override
+    protected void createChangeLogSchema(Connection connection) throws SQLException {
+        String sql = "CREATE TABLE IF NOT EXISTS " + changeTableName + " (" +
+                "id BIGINT AUTO_INCREMENT PRIMARY KEY," +
+                "ip VARBINARY(16) NOT NULL," +
+                "prefix_length INT NOT NULL," +
+                "changed_at BIGINT NOT NULL," +
+                "INDEX idx_changed_at (changed_at)" +
+                ")";
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    @Override
+    protected String upsertSql() {
+        return "INSERT INTO " + tableName + " (ip, player_uuid, player_name, end_time, created_at) VALUES (?, ?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE player_name = VALUES(player_name), " +
+                "end_time = VALUES(end_time), created_at = VALUES(created_at)";
+    }
+
+    @Override
+    protected String deleteExpiredSql() {
+        // 分批删除，每批只锁定少量索引范围
+        return "DELETE FROM " + tableName + " WHERE end_time > 0 AND end_time <= ? ORDER BY end_time LIMIT ?";
+    }
+
+    // 将旧版本的VARCHAR(45)文本IP列迁移为VARBINARY(16)，中途中断后可在下次启动时继续
+    private void migrateIPColumn(Connection connection) throws SQLException {
+        String ipType = getColumnType(connection, "ip");
+        boolean hasBinaryColumn = getColumnType(connection, "ip_bin") != null;
+        boolean textColumn = ipType != null && ipType.toUpperCase(Locale.ROOT).contains("CHAR");
+        if (!textColumn && !hasBinaryColumn) {
+            return;
+        }
+
+        logger.info("正在将IP列迁移为二进制格式...");
+        try (Statement statement = connection.createStatement()) {
+            if (textColumn) {
+                if (!hasBinaryColumn) {
+                    statement.execute("ALTER TABLE " + tableName + " ADD COLUMN ip_bin VARBINARY(16) NULL AFTER id");
+                }
+                int migrated = backfillBinaryIPs(connection);
+
+                // 不同文本形式可能对应同一地址，只保留最新的一条
+                statement.executeUpdate("DELETE a FROM " + tableName + " a JOIN " + tableName + " b " +
+                        "ON a.ip_bin = b.ip_bin AND a.id < b.id");
+                statement.execute("ALTER TABLE " + tableName + " DROP COLUMN ip");
+                logger.info("已转换 " + migrated + " 条IP记录");
+            }
+            statement.execute("ALTER TABLE " + tableName + " CHANGE COLUMN ip_bin ip VARBINARY(16) NOT NULL, " +
+                    "ADD UNIQUE KEY uk_ip_player (ip, player_uuid)");
+        }
+        logger.info("IP列迁移完成");
+    }
+
+    private int backfillBinaryIPs(Connection connection) throws SQLException {
+        String selectSql = "SELECT id, ip FROM " + tableName + " WHERE ip_bin IS NULL LIMIT 1000";
+        String updateSql = "UPDATE " + tableName + " SET ip_bin = ? WHERE id = ?";
+        String deleteSql = "DELETE FROM " + tableName + " WHERE id = ?";
+        int migrated = 0;
+        try (PreparedStatement select = connection.prepareStatement(selectSql);
+             PreparedStatement update = connection.prepareStatement(updateSql);
+             PreparedStatement delete = connection.prepareStatement(deleteSql)) {
+            while (true) {
+                int rows = 0;
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        rows++;
+                        int id = resultSet.getInt("id");
+                        String ip = resultSet.getString("ip");
+                        IPKey key = IPKey.parse(ip);
+                        if (key == null) {
+                            logger.warning("删除无效的IP记录: " + ip);
+                            delete.setInt(1, id);
+                            delete.addBatch();
+                            continue;
+                        }
+                        update.setBytes(1, key.toBytes());
+                        update.setInt(2, id);
+                        update.addBatch();
+                        migrated++;
+                    }
+                }
+                if (rows == 0) {
+                    return migrated;
+                }
+                update.executeBatch();
+                delete.executeBatch();
+            }
+        }
+    }
+
+    private String getColumnType(Connection connection, String column) throws SQLException {
+        try (ResultSet columns = connection.getMetaData().getColumns(connection.getCatalog(), null, tableName, column)) {
+            return columns.next() ? columns.getString("TYPE_NAME") : null;
+        }
+    }
+}
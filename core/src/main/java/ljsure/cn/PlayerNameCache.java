@@ -0,0 +1,246 @@
+package ljsure.cn;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+// UUID -> 玩家名缓存: 由每次登录和绑定记录中的玩家名填充，保存在插件目录中
+// 查询不会阻塞，未缓存或已过时的名称在后台线程上查找，下次查询时生效
+public class PlayerNameCache implements BindingListener {
+
+    private static final int FILE_VERSION = 1;
+    // 首次建立缓存时分批读取存储的每页数量
+    private static final int SEED_PAGE_SIZE = 500;
+
+    private final Logger logger;
+    private final File file;
+    private final int maxSize;
+    private final long refreshAfter;
+    // 阻塞的名称查找 (例如Bukkit.getOfflinePlayer)，只在refreshExecutor上调用
+    private final Function<UUID, String> lookup;
+    private final Executor refreshExecutor;
+
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<UUID> refreshing = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean trimming = new AtomicBoolean();
+    private volatile boolean dirty;
+
+    public PlayerNameCache(Logger logger, File file, int maxSize, long refreshAfter,
+                           Function<UUID, String> lookup, Executor refreshExecutor) {
+        this.logger = logger;
+        this.file = file;
+        this.maxSize = Math.max(100, maxSize);
+        this.refreshAfter = refreshAfter;
+        this.lookup = lookup;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    // 返回缓存的名称，未缓存时返回UUID的简短形式
+    public String resolve(UUID playerUUID) {
+        Entry entry = entries.get(playerUUID);
+        if (entry == null) {
+            scheduleRefresh(playerUUID);
+            return playerUUID.toString().substring(0, 8) + "...";
+        }
+        if (refreshAfter > 0 && System.currentTimeMillis() - entry.updatedAt > refreshAfter) {
+            scheduleRefresh(playerUUID);
+        }
+        return entry.name;
+    }
+
+    public void put(UUID playerUUID, String name) {
+        if (playerUUID == null || name == null || name.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Entry previous = entries.get(playerUUID);
+        // 同名且不久前更新过的不重复写入
+        if (previous != null && previous.name.equals(name) && now - previous.updatedAt < 60000L) {
+            return;
+        }
+        entries.put(playerUUID, new Entry(name, now));
+        dirty = true;
+        if (entries.size() > maxSize) {
+            trim();
+        }
+    }
+
+    // 按玩家名查找UUID (不区分大小写)，同名时返回最近更新的；需要遍历整个缓存，只在命令中使用
+    public UUID findByName(String name) {
+        UUID found = null;
+        long foundAt = Long.MIN_VALUE;
+        for (Map.Entry<UUID, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().name.equalsIgnoreCase(name) && entry.getValue().updatedAt > foundAt) {
+                found = entry.getKey();
+                foundAt = entry.getValue().updatedAt;
+            }
+        }
+        return found;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void onBind(IPData ipData) {
+        put(ipData.getPlayerUUID(), ipData.getPlayerName());
+    }
+
+    @Override
+    public void onRemove(IPKey key) {
+    }
+
+    @Override
+    public void onRemoveAccount(IPKey key, UUID playerUUID) {
+    }
+
+    @Override
+    public void onRemoveRange(CidrBlock block) {
+    }
+
+    // 读取保存的缓存，文件不存在时返回false
+    public boolean load() {
+        if (!file.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != FILE_VERSION) {
+                logger.warning("玩家名缓存文件版本不符，将重新建立");
+                return false;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                UUID playerUUID = new UUID(in.readLong(), in.readLong());
+                long updatedAt = in.readLong();
+                String name = in.readUTF();
+                entries.putIfAbsent(playerUUID, new Entry(name, updatedAt));
+            }
+            return true;
+        } catch (EOFException e) {
+            logger.warning("玩家名缓存文件不完整，已读取 " + entries.size() + " 条");
+            return true;
+        } catch (IOException e) {
+            logger.warning("读取玩家名缓存失败: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // 没有保存的缓存时从绑定记录的玩家名建立，应在异步线程上调用
+    public void seed(BindingStore store) {
+        IPKey after = null;
+        while (true) {
+            List<IPData> page = store.page(null, after, SEED_PAGE_SIZE).join();
+            for (IPData ipData : page) {
+                if (ipData.getPlayerName() != null) {
+                    entries.putIfAbsent(ipData.getPlayerUUID(), new Entry(ipData.getPlayerName(), ipData.getCreatedAt()));
+                }
+            }
+            if (page.size() < SEED_PAGE_SIZE) {
+                break;
+            }
+            after = page.get(page.size() - 1).getKey();
+        }
+        dirty = true;
+        if (entries.size() > maxSize) {
+            trim();
+        }
+    }
+
+    // 有修改时写入文件 (先写临时文件再替换)
+    public void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        List<Map.Entry<UUID, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("无法创建目录: " + parent);
+        }
+        File temp = new File(parent, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(FILE_VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<UUID, Entry> entry : snapshot) {
+                out.writeLong(entry.getKey().getMostSignificantBits());
+                out.writeLong(entry.getKey().getLeastSignificantBits());
+                out.writeLong(entry.getValue().updatedAt);
+                out.writeUTF(entry.getValue().name);
+            }
+        } catch (IOException e) {
+            dirty = true;
+            throw e;
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void scheduleRefresh(UUID playerUUID) {
+        if (!refreshing.add(playerUUID)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    String name = lookup.apply(playerUUID);
+                    if (name != null) {
+                        put(playerUUID, name);
+                    }
+                } catch (RuntimeException e) {
+                    logger.fine("查找玩家名失败: " + playerUUID + ": " + e.getMessage());
+                } finally {
+                    refreshing.remove(playerUUID);
+                }
+            });
+        } catch (RuntimeException e) {
+            // 插件关闭后无法再提交任务
+            refreshing.remove(playerUUID);
+        }
+    }
+
+    // 超出上限时移除最久未更新的十分之一
+    private void trim() {
+        if (!trimming.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int excess = entries.size() - maxSize + maxSize / 10;
+            if (excess <= 0) {
+                return;
+            }
+            List<Map.Entry<UUID, Entry>> oldest = new ArrayList<>(entries.entrySet());
+            oldest.sort((a, b) -> Long.compare(a.getValue().updatedAt, b.getValue().updatedAt));
+            for (int i = 0; i < excess && i < oldest.size(); i++) {
+                entries.remove(oldest.get(i).getKey(), oldest.get(i).getValue());
+            }
+        } finally {
+            trimming.set(false);
+        }
+    }
+
+    private static final class Entry {
+        private final String name;
+        private final long updatedAt;
+
+        private Entry(String name, long updatedAt) {
+            this.name = name;
+            this.updatedAt = updatedAt;
+        }
+    }
+}
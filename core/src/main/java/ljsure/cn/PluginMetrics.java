@@ -0,0 +1,134 @@
+package ljsure.cn;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// 插件运行指标: 各操作的延迟直方图与错误计数，以及由各组件提供的即时值
+public class PluginMetrics {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // 操作名称 -> 指标，按名称排序便于显示
+    private final Map<String, Operation> operations = new ConcurrentSkipListMap<>();
+    private volatile Supplier<Map<String, Number>> gauges = Collections::emptyMap;
+    private final long startedAt = System.nanoTime();
+
+    public Operation operation(String name) {
+        return operations.computeIfAbsent(name, ignored -> new Operation());
+    }
+
+    public Map<String, Operation> getOperations() {
+        return Collections.unmodifiableMap(operations);
+    }
+
+    // 即时值在读取指标时才计算
+    public void setGauges(Supplier<Map<String, Number>> gauges) {
+        this.gauges = gauges;
+    }
+
+    public Map<String, Number> readGauges() {
+        try {
+            return gauges.get();
+        } catch (RuntimeException e) {
+            return Collections.emptyMap();
+        }
+    }
+
+    public double getUptimeSeconds() {
+        return (System.nanoTime() - startedAt) / 1e9;
+    }
+
+    // 展开为扁平的数值表，用于JMX属性
+    public Map<String, Number> flatten() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Operation> entry : operations.entrySet()) {
+            String name = entry.getKey();
+            LatencyHistogram.Snapshot snapshot = entry.getValue().latency.snapshot();
+            values.put(name + "_count", snapshot.getCount());
+            values.put(name + "_errors", entry.getValue().errors.sum());
+            values.put(name + "_mean_ms", snapshot.getMean() / 1e6);
+            values.put(name + "_p50_ms", snapshot.getPercentile(0.5) / 1e6);
+            values.put(name + "_p99_ms", snapshot.getPercentile(0.99) / 1e6);
+            values.put(name + "_max_ms", snapshot.getMax() / 1e6);
+        }
+        values.putAll(readGauges());
+        return values;
+    }
+
+    // 以Prometheus文本格式写入文件 (先写临时文件再替换，采集方不会读到写了一半的文件)
+    public void writePrometheus(File file) throws IOException {
+        StringBuilder text = new StringBuilder();
+        text.append("# HELP loginiplimit_operation_duration_seconds Latency of LoginIPLimit operations.\n");
+        text.append("# TYPE loginiplimit_operation_duration_seconds summary\n");
+        for (Map.Entry<String, Operation> entry : operations.entrySet()) {
+            String label = "operation=\"" + entry.getKey() + "\"";
+            LatencyHistogram.Snapshot snapshot = entry.getValue().latency.snapshot();
+            for (double quantile : QUANTILES) {
+                text.append("loginiplimit_operation_duration_seconds{").append(label)
+                        .append(",quantile=\"").append(quantile).append("\"} ")
+                        .append(format(snapshot.getPercentile(quantile) / 1e9)).append('\n');
+            }
+            text.append("loginiplimit_operation_duration_seconds_sum{").append(label).append("} ")
+                    .append(format(snapshot.getSum() / 1e9)).append('\n');
+            text.append("loginiplimit_operation_duration_seconds_count{").append(label).append("} ")
+                    .append(snapshot.getCount()).append('\n');
+        }
+
+        text.append("# HELP loginiplimit_operation_errors_total Failed LoginIPLimit operations.\n");
+        text.append("# TYPE loginiplimit_operation_errors_total counter\n");
+        for (Map.Entry<String, Operation> entry : operations.entrySet()) {
+            text.append("loginiplimit_operation_errors_total{operation=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().errors.sum()).append('\n');
+        }
+
+        for (Map.Entry<String, Number> entry : readGauges().entrySet()) {
+            String name = "loginiplimit_" + entry.getKey();
+            text.append("# TYPE ").append(name).append(" gauge\n");
+            text.append(name).append(' ').append(format(entry.getValue().doubleValue())).append('\n');
+        }
+        text.append("# TYPE loginiplimit_uptime_seconds gauge\n");
+        text.append("loginiplimit_uptime_seconds ").append(format(getUptimeSeconds())).append('\n');
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("无法创建目录: " + parent);
+        }
+        File temp = new File(parent, file.getName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(text.toString());
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.9g", value);
+    }
+
+    // 单个操作的延迟与错误计数
+    public static class Operation {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        // startNanos为System.nanoTime()的起始值
+        public void record(long startNanos, boolean failed) {
+            latency.record(System.nanoTime() - startNanos);
+            if (failed) {
+                errors.increment();
+            }
+        }
+
+        public LatencyHistogram.Snapshot getLatency() { return latency.snapshot(); }
+        public long getErrors() { return errors.sum(); }
+    }
+}
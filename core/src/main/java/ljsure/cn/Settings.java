@@ -0,0 +1,357 @@
+package ljsure.cn;
+
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// 解析后的配置: 创建后不再修改，修改配置时创建新的实例并整体替换，登录线程读取时无需加锁
+public final class Settings {
+
+    private final boolean enabled;
+    private final int timeLimit;
+    // 绑定粒度，均为128位地址中的前缀长度
+    private final int ipv4BindingPrefix;
+    private final int ipv6BindingPrefix;
+    private final int maxAccountsPerIp;
+    private final int maxIpsPerAccount;
+    private final long loginCheckTimeout;
+    private final boolean denyOnTimeout;
+
+    private final Set<CidrBlock> bypassBlocks;
+    private final CidrTrie bypassTrie;
+
+    private final boolean rateLimitEnabled;
+    private final ConnectionRateLimiter.Limit ipRateLimit;
+    private final ConnectionRateLimiter.Limit subnetRateLimit;
+    private final int rateLimitIpv4Prefix;
+    private final int rateLimitIpv6Prefix;
+    private final int rateLimitMaxEntries;
+    private final String rateLimitFingerprint;
+
+    private final Map<LoginMessages.Type, String> messageTexts;
+    private final ZoneId timeZone;
+    private final DateTimeFormatter timeFormat;
+
+    private final int nameCacheMaxSize;
+    private final long nameRefreshAfter;
+    private final long reconcileInterval;
+    private final boolean jmxEnabled;
+    private final boolean prometheusEnabled;
+    private final String prometheusFile;
+    private final long prometheusInterval;
+
+    private final Storage storage;
+
+    public Settings(ConfigView config, Logger logger) {
+        this.enabled = config.getBoolean("enabled", true);
+        this.timeLimit = Math.max(0, config.getInt("time-limit", 10));
+        this.ipv4BindingPrefix = 96 + Math.max(0, Math.min(32, config.getInt("binding.ipv4-prefix", 32)));
+        this.ipv6BindingPrefix = Math.max(0, Math.min(128, config.getInt("binding.ipv6-prefix", 128)));
+        this.maxAccountsPerIp = Math.max(1, config.getInt("binding.max-accounts-per-ip", 1));
+        this.maxIpsPerAccount = Math.max(0, config.getInt("binding.max-ips-per-account", 0));
+        this.loginCheckTimeout = config.getLong("login-check.timeout", 3000L);
+        this.denyOnTimeout = "deny".equalsIgnoreCase(config.getString("login-check.timeout-policy", "allow"));
+
+        Set<CidrBlock> blocks = new LinkedHashSet<>();
+        for (String entry : config.getStringList("bypass-ips")) {
+            if (entry.equalsIgnoreCase("localhost")) {
+                blocks.add(CidrBlock.parse("127.0.0.1"));
+                blocks.add(CidrBlock.parse("::1"));
+                continue;
+            }
+            CidrBlock block = CidrBlock.parse(entry);
+            if (block == null) {
+                logger.warning("无效的绕过地址: " + entry);
+                continue;
+            }
+            blocks.add(block);
+        }
+        this.bypassBlocks = Collections.unmodifiableSet(blocks);
+        this.bypassTrie = CidrTrie.build(blocks);
+
+        this.rateLimitEnabled = config.getBoolean("rate-limit.enabled", false);
+        this.ipRateLimit = ConnectionRateLimiter.Limit.of(config.getDouble("rate-limit.per-ip.per-minute", 6.0),
+                config.getInt("rate-limit.per-ip.burst", 3));
+        this.subnetRateLimit = ConnectionRateLimiter.Limit.of(config.getDouble("rate-limit.per-subnet.per-minute", 60.0),
+                config.getInt("rate-limit.per-subnet.burst", 20));
+        this.rateLimitIpv4Prefix = 96 + Math.max(0, Math.min(32, config.getInt("rate-limit.per-subnet.ipv4-prefix", 24)));
+        this.rateLimitIpv6Prefix = Math.max(0, Math.min(128, config.getInt("rate-limit.per-subnet.ipv6-prefix", 48)));
+        this.rateLimitMaxEntries = config.getInt("rate-limit.max-entries", 100000);
+        this.rateLimitFingerprint = fingerprint(config, "rate-limit");
+
+        Map<LoginMessages.Type, String> texts = new EnumMap<>(LoginMessages.Type.class);
+        for (LoginMessages.Type type : LoginMessages.Type.values()) {
+            String text = config.getString("messages." + type.getKey());
+            if (text != null) {
+                texts.put(type, text);
+            }
+        }
+        this.messageTexts = Collections.unmodifiableMap(texts);
+        ZoneId zone;
+        try {
+            zone = ZoneId.of(config.getString("messages.time-zone", "Asia/Shanghai"));
+        } catch (DateTimeException e) {
+            logger.warning("无效的时区: " + config.getString("messages.time-zone") + "，使用Asia/Shanghai");
+            zone = ZoneId.of("Asia/Shanghai");
+        }
+        this.timeZone = zone;
+        DateTimeFormatter format;
+        try {
+            format = DateTimeFormatter.ofPattern(config.getString("messages.time-format", "yyyy-MM-dd HH:mm:ss"));
+        } catch (IllegalArgumentException e) {
+            logger.warning("无效的时间格式: " + config.getString("messages.time-format") + "，使用yyyy-MM-dd HH:mm:ss");
+            format = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        }
+        this.timeFormat = format;
+
+        this.nameCacheMaxSize = config.getInt("names.max-size", 50000);
+        this.nameRefreshAfter = TimeUnit.DAYS.toMillis(config.getLong("names.refresh-after", 7L));
+        this.reconcileInterval = config.getLong("statistics.reconcile-interval", 30L);
+        this.jmxEnabled = config.getBoolean("metrics.jmx", true);
+        this.prometheusEnabled = config.getBoolean("metrics.prometheus.enabled", false);
+        this.prometheusFile = config.getString("metrics.prometheus.file", "metrics.prom");
+        this.prometheusInterval = Math.max(1L, config.getLong("metrics.prometheus.interval", 15L));
+
+        this.storage = new Storage(config);
+    }
+
+    // 复制并替换可由命令修改的设置
+    private Settings(Settings base, boolean enabled, int timeLimit, Set<CidrBlock> bypassBlocks) {
+        this.enabled = enabled;
+        this.timeLimit = timeLimit;
+        this.ipv4BindingPrefix = base.ipv4BindingPrefix;
+        this.ipv6BindingPrefix = base.ipv6BindingPrefix;
+        this.maxAccountsPerIp = base.maxAccountsPerIp;
+        this.maxIpsPerAccount = base.maxIpsPerAccount;
+        this.loginCheckTimeout = base.loginCheckTimeout;
+        this.denyOnTimeout = base.denyOnTimeout;
+        this.bypassBlocks = bypassBlocks == base.bypassBlocks ? bypassBlocks
+                : Collections.unmodifiableSet(new LinkedHashSet<>(bypassBlocks));
+        this.bypassTrie = bypassBlocks == base.bypassBlocks ? base.bypassTrie : CidrTrie.build(bypassBlocks);
+        this.rateLimitEnabled = base.rateLimitEnabled;
+        this.ipRateLimit = base.ipRateLimit;
+        this.subnetRateLimit = base.subnetRateLimit;
+        this.rateLimitIpv4Prefix = base.rateLimitIpv4Prefix;
+        this.rateLimitIpv6Prefix = base.rateLimitIpv6Prefix;
+        this.rateLimitMaxEntries = base.rateLimitMaxEntries;
+        this.rateLimitFingerprint = base.rateLimitFingerprint;
+        this.messageTexts = base.messageTexts;
+        this.timeZone = base.timeZone;
+        this.timeFormat = base.timeFormat;
+        this.nameCacheMaxSize = base.nameCacheMaxSize;
+        this.nameRefreshAfter = base.nameRefreshAfter;
+        this.reconcileInterval = base.reconcileInterval;
+        this.jmxEnabled = base.jmxEnabled;
+        this.prometheusEnabled = base.prometheusEnabled;
+        this.prometheusFile = base.prometheusFile;
+        this.prometheusInterval = base.prometheusInterval;
+        this.storage = base.storage;
+    }
+
+    public Settings withEnabled(boolean enabled) {
+        return new Settings(this, enabled, timeLimit, bypassBlocks);
+    }
+
+    public Settings withTimeLimit(int timeLimit) {
+        return new Settings(this, enabled, timeLimit, bypassBlocks);
+    }
+
+    public Settings withBypassBlocks(Set<CidrBlock> bypassBlocks) {
+        return new Settings(this, enabled, timeLimit, bypassBlocks);
+    }
+
+    // 频率限制设置未修改时重新加载配置可以保留已有的计数
+    public ConnectionRateLimiter createRateLimiter() {
+        if (!rateLimitEnabled) {
+            return null;
+        }
+        return new ConnectionRateLimiter(ipRateLimit, subnetRateLimit, rateLimitIpv4Prefix, rateLimitIpv6Prefix, rateLimitMaxEntries);
+    }
+
+    // 配置段内容的文本形式，用于判断重新加载时该部分是否有修改
+    private static String fingerprint(ConfigView config, String... paths) {
+        StringBuilder text = new StringBuilder();
+        for (String path : paths) {
+            text.append(path).append('=').append(config.describe(path)).append(';');
+        }
+        return text.toString();
+    }
+
+    public boolean isEnabled() { return enabled; }
+    public int getTimeLimit() { return timeLimit; }
+    public int getIpv4BindingPrefix() { return ipv4BindingPrefix; }
+    public int getIpv6BindingPrefix() { return ipv6BindingPrefix; }
+    public int getMaxAccountsPerIp() { return maxAccountsPerIp; }
+    public int getMaxIpsPerAccount() { return maxIpsPerAccount; }
+    public long getLoginCheckTimeout() { return loginCheckTimeout; }
+    public boolean isDenyOnTimeout() { return denyOnTimeout; }
+    public Set<CidrBlock> getBypassBlocks() { return bypassBlocks; }
+    public CidrTrie getBypassTrie() { return bypassTrie; }
+    public String getRateLimitFingerprint() { return rateLimitFingerprint; }
+    public Map<LoginMessages.Type, String> getMessageTexts() { return messageTexts; }
+    public ZoneId getTimeZone() { return timeZone; }
+    public DateTimeFormatter getTimeFormat() { return timeFormat; }
+    public int getNameCacheMaxSize() { return nameCacheMaxSize; }
+    public long getNameRefreshAfter() { return nameRefreshAfter; }
+    public long getReconcileInterval() { return reconcileInterval; }
+    public boolean isJmxEnabled() { return jmxEnabled; }
+    public boolean isPrometheusEnabled() { return prometheusEnabled; }
+    public String getPrometheusFile() { return prometheusFile; }
+    public long getPrometheusInterval() { return prometheusInterval; }
+    public Storage getStorage() { return storage; }
+
+    // 存储相关的设置，任何一项修改后重新加载配置都会重新打开存储
+    public static final class Storage {
+        private final String type;
+
+        private final long localFsyncInterval;
+        private final long localCompactThreshold;
+        private final boolean localMappedIndex;
+        private final int localMappedIndexCapacity;
+
+        private final String h2File;
+        private final int h2PoolSize;
+
+        private final String mysqlHost;
+        private final int mysqlPort;
+        private final String mysqlDatabase;
+        private final String mysqlUsername;
+        private final String mysqlPassword;
+        private final boolean mysqlUseSSL;
+        private final String tablePrefix;
+        private final int maximumPoolSize;
+        private final int minimumIdle;
+        private final long connectionTimeout;
+        private final long idleTimeout;
+        private final long maxLifetime;
+        private final long keepaliveTime;
+        private final long leakDetectionThreshold;
+        private final int statementCacheSize;
+        private final int cleanupBatchSize;
+        private final SqlWriteQueue.Options queueOptions;
+        private final SqlChangeSync.Options syncOptions;
+        private final BloomFilter.Options filterOptions;
+
+        private final String fingerprint;
+
+        private Storage(ConfigView config) {
+            // 存储类型: local(或yaml)、mysql 或 h2；兼容旧配置中的 mysql.enabled
+            this.type = config.getBoolean("mysql.enabled", false) ? "mysql"
+                    : config.getString("storage.type", "local").toLowerCase(Locale.ROOT);
+
+            this.localFsyncInterval = config.getLong("local.fsync-interval", 50L);
+            this.localCompactThreshold = config.getLong("local.compact-threshold", 10000L);
+            this.localMappedIndex = config.getBoolean("local.mapped-index", false);
+            this.localMappedIndexCapacity = config.getInt("local.mapped-index-capacity", 100000);
+
+            this.h2File = config.getString("h2.file", "bindings");
+            this.h2PoolSize = Math.max(1, config.getInt("h2.pool-size", 4));
+
+            this.mysqlHost = config.getString("mysql.host", "localhost");
+            this.mysqlPort = config.getInt("mysql.port", 3306);
+            this.mysqlDatabase = config.getString("mysql.database", "minecraft");
+            this.mysqlUsername = config.getString("mysql.username", "root");
+            this.mysqlPassword = config.getString("mysql.password", "");
+            this.mysqlUseSSL = config.getBoolean("mysql.use-ssl", false);
+            this.tablePrefix = config.getString("mysql.table-prefix", "iplimit_");
+            this.maximumPoolSize = config.getInt("mysql.pool.maximum-pool-size", 10);
+            this.minimumIdle = config.getInt("mysql.pool.minimum-idle", 2);
+            this.connectionTimeout = config.getLong("mysql.pool.connection-timeout", 5000L);
+            this.idleTimeout = config.getLong("mysql.pool.idle-timeout", 600000L);
+            this.maxLifetime = config.getLong("mysql.pool.max-lifetime", 1800000L);
+            this.keepaliveTime = config.getLong("mysql.pool.keepalive-time", 60000L);
+            this.leakDetectionThreshold = config.getLong("mysql.pool.leak-detection-threshold", 10000L);
+            this.statementCacheSize = config.getInt("mysql.pool.statement-cache-size", 250);
+            this.cleanupBatchSize = config.getInt("mysql.cleanup-batch-size", 1000);
+
+            this.queueOptions = new SqlWriteQueue.Options(
+                    config.getInt("mysql.write-queue.batch-size", 100),
+                    config.getLong("mysql.write-queue.flush-interval", 500L),
+                    config.getInt("mysql.write-queue.max-pending", 10000),
+                    config.getLong("mysql.write-queue.max-wait", 1000L));
+            this.syncOptions = new SqlChangeSync.Options(
+                    config.getBoolean("mysql.shared", true),
+                    config.getBoolean("mysql.sync.enabled", true),
+                    config.getLong("mysql.sync.poll-interval", 1000L),
+                    config.getLong("mysql.sync.max-staleness", 5000L),
+                    config.getLong("mysql.sync.log-retention", 86400000L));
+            this.filterOptions = !config.getBoolean("mysql.filter.enabled", true) ? null : new BloomFilter.Options(
+                    config.getDouble("mysql.filter.false-positive-rate", 0.01),
+                    config.getLong("mysql.filter.max-memory", 16L) * 1024L * 1024L,
+                    config.getLong("mysql.filter.rebuild-interval", 360L) * 60000L);
+
+            this.fingerprint = fingerprint(config, "storage", "local", "h2", "mysql");
+        }
+
+        // 与base相同但使用另一种存储类型，用于在存储之间迁移
+        private Storage(Storage base, String type) {
+            this.type = type;
+            this.localFsyncInterval = base.localFsyncInterval;
+            this.localCompactThreshold = base.localCompactThreshold;
+            this.localMappedIndex = base.localMappedIndex;
+            this.localMappedIndexCapacity = base.localMappedIndexCapacity;
+            this.h2File = base.h2File;
+            this.h2PoolSize = base.h2PoolSize;
+            this.mysqlHost = base.mysqlHost;
+            this.mysqlPort = base.mysqlPort;
+            this.mysqlDatabase = base.mysqlDatabase;
+            this.mysqlUsername = base.mysqlUsername;
+            this.mysqlPassword = base.mysqlPassword;
+            this.mysqlUseSSL = base.mysqlUseSSL;
+            this.tablePrefix = base.tablePrefix;
+            this.maximumPoolSize = base.maximumPoolSize;
+            this.minimumIdle = base.minimumIdle;
+            this.connectionTimeout = base.connectionTimeout;
+            this.idleTimeout = base.idleTimeout;
+            this.maxLifetime = base.maxLifetime;
+            this.keepaliveTime = base.keepaliveTime;
+            this.leakDetectionThreshold = base.leakDetectionThreshold;
+            this.statementCacheSize = base.statementCacheSize;
+            this.cleanupBatchSize = base.cleanupBatchSize;
+            this.queueOptions = base.queueOptions;
+            this.syncOptions = base.syncOptions;
+            this.filterOptions = base.filterOptions;
+            this.fingerprint = base.fingerprint + "type=" + type + ";";
+        }
+
+        public Storage withType(String type) {
+            return new Storage(this, type.toLowerCase(Locale.ROOT));
+        }
+
+        public String getType() { return type; }
+        public long getLocalFsyncInterval() { return localFsyncInterval; }
+        public long getLocalCompactThreshold() { return localCompactThreshold; }
+        public boolean isLocalMappedIndex() { return localMappedIndex; }
+        public int getLocalMappedIndexCapacity() { return localMappedIndexCapacity; }
+        public String getH2File() { return h2File; }
+        public int getH2PoolSize() { return h2PoolSize; }
+        public String getMysqlHost() { return mysqlHost; }
+        public int getMysqlPort() { return mysqlPort; }
+        public String getMysqlDatabase() { return mysqlDatabase; }
+        public String getMysqlUsername() { return mysqlUsername; }
+        public String getMysqlPassword() { return mysqlPassword; }
+        public boolean isMysqlUseSSL() { return mysqlUseSSL; }
+        public String getTablePrefix() { return tablePrefix; }
+        public int getMaximumPoolSize() { return maximumPoolSize; }
+        public int getMinimumIdle() { return minimumIdle; }
+        public long getConnectionTimeout() { return connectionTimeout; }
+        public long getIdleTimeout() { return idleTimeout; }
+        public long getMaxLifetime() { return maxLifetime; }
+        public long getKeepaliveTime() { return keepaliveTime; }
+        public long getLeakDetectionThreshold() { return leakDetectionThreshold; }
+        public int getStatementCacheSize() { return statementCacheSize; }
+        public int getCleanupBatchSize() { return cleanupBatchSize; }
+        public SqlWriteQueue.Options getQueueOptions() { return queueOptions; }
+        public SqlChangeSync.Options getSyncOptions() { return syncOptions; }
+        public BloomFilter.Options getFilterOptions() { return filterOptions; }
+        public String getFingerprint() { return fingerprint; }
+    }
+}
@@ -0,0 +1,833 @@
+package ljsure.cn;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+// 基于JDBC连接池的存储: 查询在存储线程池上执行，写入经由SqlWriteQueue合并后批量提交
+public abstract class SqlBindingStore implements BindingStore {
+
+    // 建立过滤器时每次读取的IP数量，以及过滤器的最小容量
+    private static final int FILTER_PAGE_SIZE = 5000;
+    private static final long FILTER_MIN_CAPACITY = 10000L;
+    // 群组服中检查每IP账号数并绑定时锁定的行数，同一IP总是锁定同一行
+    private static final int QUOTA_LOCK_STRIPES = 1024;
+
+    protected final Logger logger;
+    protected final String tableName;
+    private final String name;
+    private final HikariConfig poolConfig;
+    private final SqlWriteQueue.Options queueOptions;
+    private final int cleanupBatchSize;
+    private final SqlChangeSync.Options syncOptions;
+    private final BloomFilter.Options filterOptions;
+    protected final String changeTableName;
+    private final String lockTableName;
+
+    // 同一IP的比较与绑定在本实例内串行执行
+    private final Object[] bindLocks = new Object[64];
+
+    protected HikariDataSource dataSource;
+    protected SqlWriteQueue writeQueue;
+    private ExecutorService executor;
+    private SqlChangeSync changeSync;
+    private volatile BindingListener listener = BindingListener.NONE;
+    // 单条查询命中本地缓存和查询数据库的次数
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    // 已绑定IP的过滤器，未建立或失效时为null；重建期间新绑定的IP同时加入新旧两个过滤器
+    private volatile BloomFilter keyFilter;
+    private volatile BloomFilter buildingFilter;
+    private final AtomicBoolean filterBuilding = new AtomicBoolean();
+    private volatile long filterBuiltAt;
+    // 被过滤器判定为不存在而跳过的查询，以及过滤器判定可能存在但数据库中没有的查询
+    private final LongAdder filterSkips = new LongAdder();
+    private final LongAdder filterFalsePositives = new LongAdder();
+
+    protected SqlBindingStore(Logger logger, String name, HikariConfig poolConfig, String tableName,
+                              SqlWriteQueue.Options queueOptions, int cleanupBatchSize,
+                              SqlChangeSync.Options syncOptions, BloomFilter.Options filterOptions) {
+        this.logger = logger;
+        this.name = name;
+        this.poolConfig = poolConfig;
+        this.tableName = tableName;
+        this.queueOptions = queueOptions;
+        this.cleanupBatchSize = Math.max(1, cleanupBatchSize);
+        this.syncOptions = syncOptions;
+        this.filterOptions = filterOptions;
+        this.changeTableName = tableName + "_changes";
+        this.lockTableName = tableName + "_locks";
+        for (int i = 0; i < bindLocks.length; i++) {
+            bindLocks[i] = new Object();
+        }
+    }
+
+    // 建表及迁移
+    protected abstract void createSchema(Connection connection) throws SQLException;
+
+    // 变更日志表: (id自增, ip, prefix_length, changed_at)，changed_at需要索引
+    protected abstract void createChangeLogSchema(Connection connection) throws SQLException;
+
+    // 按(ip, player_uuid)写入或覆盖，参数依次为(ip, player_uuid, player_name, end_time, created_at)
+    protected abstract String upsertSql();
+
+    // 参数依次为(当前时间, 每批数量)
+    protected abstract String deleteExpiredSql();
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean initialize() {
+        try {
+            dataSource = new HikariDataSource(poolConfig);
+            try (Connection connection = dataSource.getConnection()) {
+                createSchema(connection);
+                if (syncOptions != null) {
+                    createChangeLogSchema(connection);
+                    if (syncOptions.isShared()) {
+                        createQuotaLockSchema(connection);
+                    }
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            logger.severe(name + "数据库连接失败: " + e.getMessage());
+            if (dataSource != null) {
+                dataSource.close();
+                dataSource = null;
+            }
+            return false;
+        }
+
+        writeQueue = new SqlWriteQueue(logger, "LoginIPLimit-" + name + "-Writer", dataSource,
+                "DELETE FROM " + tableName + " WHERE ip = ?", "DELETE FROM " + tableName + " WHERE ip = ? AND player_uuid = ?", upsertSql(),
+                syncOptions != null ? changeLogSql() : null, queueOptions);
+        writeQueue.start();
+
+        // 启用过滤器但不缓存绑定时仍需轮询变更日志，以得知其他服务器新绑定的IP
+        if (syncOptions != null && (syncOptions.isCacheEnabled() || filterOptions != null)) {
+            changeSync = new SqlChangeSync(logger, name, dataSource, tableName, changeTableName, writeQueue, syncOptions);
+            changeSync.setListener(listener);
+            if (filterOptions != null) {
+                changeSync.setObserver(new SqlChangeSync.ChangeObserver() {
+                    @Override
+                    public void onChanged(IPKey key) {
+                        addToFilter(key);
+                    }
+
+                    @Override
+                    public void onResync() {
+                        // 错过的变更无法补回，重建完成前不使用过滤器
+                        keyFilter = null;
+                        rebuildFilter();
+                    }
+                });
+            }
+            try {
+                changeSync.start();
+            } catch (SQLException e) {
+                logger.severe(name + "读取绑定缓存失败: " + e.getMessage());
+                changeSync.close();
+                changeSync = null;
+                close();
+                return false;
+            }
+            if (changeSync.isCaching()) {
+                logger.info("已缓存 " + changeSync.size() + " 条IP记录，将轮询其他服务器的修改");
+            }
+        }
+
+        AtomicInteger threadId = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, poolConfig.getMaximumPoolSize()), runnable -> {
+            Thread thread = new Thread(runnable, "LoginIPLimit-" + name + "-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (filterOptions != null) {
+            rebuildFilter();
+        }
+        logger.info(name + "数据库连接成功!");
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> get(IPKey key) {
+        return supply(() -> load(key));
+    }
+
+    @Override
+    public CompletableFuture<BindResult> compareAndBind(IPData binding, long now, int maxAccounts) {
+        return supply(() -> {
+            synchronized (bindLocks[binding.getKey().hashCode() & (bindLocks.length - 1)]) {
+                List<IPData> existing = load(binding.getKey());
+                IPData conflict = BindingStore.findConflict(existing, binding.getPlayerUUID(), now, maxAccounts);
+                if (conflict != null) {
+                    return BindResult.conflict(conflict);
+                }
+                boolean created = !BindingStore.isBound(existing, binding.getPlayerUUID(), now);
+                if (created && syncOptions != null && syncOptions.isShared()) {
+                    // 群组服中本地缓存和写入队列无法阻止其他服务器同时为同一IP绑定新账号，在数据库事务中重新检查并直接写入
+                    // 续期不会增加账号数，仍由写入队列写入
+                    BindResult result = bindShared(binding, now, maxAccounts);
+                    if (result.isConflict()) {
+                        return result;
+                    }
+                    created = result.isCreated();
+                } else {
+                    writeQueue.enqueueSave(binding);
+                }
+                // 先写入再加入过滤器: 重建过滤器时若未看到此次添加，必然能在写入队列或数据表中读到
+                addToFilter(binding.getKey());
+                if (changeSync != null) {
+                    changeSync.applyLocal(binding);
+                }
+                listener.onBind(binding);
+                return BindResult.bound(binding, created);
+            }
+        });
+    }
+
+    // 锁定该IP对应的锁行后读取数据库中的绑定，没有冲突时在同一事务中写入绑定和变更日志
+    // 各服务器按相同规则锁定同一行，无论隔离级别如何，同一IP的检查与写入在所有服务器间串行执行
+    private BindResult bindShared(IPData binding, long now, int maxAccounts) throws SQLException {
+        IPKey key = binding.getKey();
+        // 本IP尚未写入的修改先写入数据库，之后数据库中的记录即为完整的
+        if (writeQueue.peek(key) != null) {
+            writeQueue.flush();
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                lockQuotaStripe(connection, key);
+                List<IPData> existing;
+                try (PreparedStatement statement = connection.prepareStatement("SELECT ip, player_uuid, player_name, end_time, created_at FROM " +
+                        tableName + " WHERE ip = ? FOR UPDATE")) {
+                    statement.setBytes(1, key.toBytes());
+                    existing = readAll(statement);
+                }
+                IPData conflict = BindingStore.findConflict(existing, binding.getPlayerUUID(), now, maxAccounts);
+                if (conflict != null) {
+                    connection.rollback();
+                    return BindResult.conflict(conflict);
+                }
+                try (PreparedStatement statement = connection.prepareStatement(upsertSql())) {
+                    statement.setBytes(1, key.toBytes());
+                    statement.setString(2, binding.getPlayerUUID().toString());
+                    statement.setString(3, binding.getPlayerName());
+                    statement.setLong(4, binding.getEndTime());
+                    statement.setLong(5, binding.getCreatedAt());
+                    statement.executeUpdate();
+                }
+                try (PreparedStatement statement = connection.prepareStatement(changeLogSql())) {
+                    statement.setBytes(1, key.toBytes());
+                    statement.setInt(2, 128);
+                    statement.setLong(3, System.currentTimeMillis());
+                    statement.executeUpdate();
+                }
+                connection.commit();
+                return BindResult.bound(binding, !BindingStore.isBound(existing, binding.getPlayerUUID(), now));
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private void lockQuotaStripe(Connection connection, IPKey key) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT stripe FROM " + lockTableName + " WHERE stripe = ? FOR UPDATE")) {
+            statement.setInt(1, key.hashCode() & (QUOTA_LOCK_STRIPES - 1));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    throw new SQLException(lockTableName + "缺少锁定行，请重启服务器以重新创建");
+                }
+            }
+        }
+    }
+
+    // 锁表: 每个锁定行一条记录，启动时补齐缺少的行 (多台服务器同时启动时插入重复的行会失败，忽略即可)
+    private void createQuotaLockSchema(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + lockTableName + " (stripe INT NOT NULL PRIMARY KEY)");
+        }
+        boolean[] present = new boolean[QUOTA_LOCK_STRIPES];
+        try (PreparedStatement statement = connection.prepareStatement("SELECT stripe FROM " + lockTableName);
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                int stripe = resultSet.getInt(1);
+                if (stripe >= 0 && stripe < QUOTA_LOCK_STRIPES) {
+                    present[stripe] = true;
+                }
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO " + lockTableName + " (stripe) VALUES (?)")) {
+            for (int stripe = 0; stripe < QUOTA_LOCK_STRIPES; stripe++) {
+                if (present[stripe]) {
+                    continue;
+                }
+                statement.setInt(1, stripe);
+                try {
+                    statement.executeUpdate();
+                } catch (SQLIntegrityConstraintViolationException ignored) {
+                    // 其他服务器已插入
+                }
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> remove(IPKey key) {
+        return supply(() -> {
+            boolean existed = !load(key).isEmpty();
+            writeQueue.enqueueRemove(key);
+            if (changeSync != null) {
+                changeSync.applyLocalRemove(key);
+            }
+            if (existed) {
+                listener.onRemove(key);
+            }
+            return existed;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeRange(CidrBlock block) {
+        return supply(() -> {
+            // 先写入队列中的修改，保证范围删除在这些修改之后执行
+            writeQueue.flush();
+            String sql = "DELETE FROM " + tableName + " WHERE ip BETWEEN ? AND ?";
+            int deleted;
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                        statement.setBytes(1, block.getNetwork().toBytes());
+                        statement.setBytes(2, block.getLastAddress().toBytes());
+                        deleted = statement.executeUpdate();
+                    }
+                    // 整个地址段记为一条变更
+                    if (syncOptions != null && deleted > 0) {
+                        try (PreparedStatement statement = connection.prepareStatement(changeLogSql())) {
+                            statement.setBytes(1, block.getNetwork().toBytes());
+                            statement.setInt(2, block.getPrefixLength());
+                            statement.setLong(3, System.currentTimeMillis());
+                            statement.executeUpdate();
+                        }
+                    }
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            }
+            if (changeSync != null) {
+                changeSync.applyLocalRange(block);
+            }
+            if (deleted > 0) {
+                listener.onRemoveRange(block);
+            }
+            return deleted;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> scanExpiring(long before, int limit) {
+        return supply(() -> {
+            writeQueue.flush();
+            String sql = "SELECT ip, player_uuid, player_name, end_time, created_at FROM " + tableName +
+                    " WHERE end_time > 0 AND end_time <= ? ORDER BY end_time LIMIT ?";
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setLong(1, before);
+                statement.setInt(2, limit);
+                return readAll(statement);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeExpired(long now) {
+        // 在写入线程上执行，先写完队列中的修改，再分批删除过期记录
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        writeQueue.submit(() -> {
+            int deleted = 0;
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(deleteExpiredSql())) {
+                int affected;
+                do {
+                    // 每批之间先写入队列中新产生的修改
+                    writeQueue.flush();
+                    statement.setLong(1, now);
+                    statement.setInt(2, cleanupBatchSize);
+                    affected = statement.executeUpdate();
+                    deleted += affected;
+                } while (affected >= cleanupBatchSize);
+                if (syncOptions != null) {
+                    pruneChangeLog(connection, now);
+                }
+                if (changeSync != null) {
+                    changeSync.purgeExpired(now);
+                }
+                // 定期重建过滤器以清除过期的绑定；置位过多导致误判率升高时提前重建
+                BloomFilter filter = keyFilter;
+                if (filterOptions != null && (filter == null || now - filterBuiltAt >= filterOptions.getRebuildInterval() ||
+                        filter.getEstimatedFalsePositiveRate() > filterOptions.getFalsePositiveRate() * 2)) {
+                    rebuildFilter();
+                }
+                future.complete(deleted);
+            } catch (SQLException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Integer> count() {
+        return supply(() -> {
+            writeQueue.flush();
+            String sql = "SELECT COUNT(*) FROM " + tableName;
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql);
+                 ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> find(BindingQuery query, IPKey after, int limit) {
+        return supply(() -> {
+            writeQueue.flush();
+            // 按玩家查找使用player_uuid索引，按时间查找使用created_at索引
+            StringBuilder where = new StringBuilder(" WHERE 1 = 1");
+            List<Object> params = new ArrayList<>();
+            if (query.getRange() != null) {
+                where.append(" AND ip BETWEEN ? AND ?");
+                params.add(query.getRange().getNetwork().toBytes());
+                params.add(query.getRange().getLastAddress().toBytes());
+            }
+            if (query.getPlayerUUID() != null) {
+                where.append(" AND player_uuid = ?");
+                params.add(query.getPlayerUUID().toString());
+            }
+            if (query.getCreatedBefore() > 0) {
+                where.append(" AND created_at < ?");
+                params.add(query.getCreatedBefore());
+            }
+            return selectGrouped(where.toString(), params, after, limit);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeAll(List<IPData> bindings) {
+        return supply(() -> {
+            // 先写入队列中的修改，保证删除在这些修改之后执行；写入数据库后才返回，批量删除的速度不会超过数据库的写入速度
+            writeQueue.flush();
+            int[] counts;
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    try (PreparedStatement statement = connection.prepareStatement(
+                            "DELETE FROM " + tableName + " WHERE ip = ? AND player_uuid = ?")) {
+                        for (IPData ipData : bindings) {
+                            statement.setBytes(1, ipData.getKey().toBytes());
+                            statement.setString(2, ipData.getPlayerUUID().toString());
+                            statement.addBatch();
+                        }
+                        counts = statement.executeBatch();
+                    }
+                    if (syncOptions != null) {
+                        long now = System.currentTimeMillis();
+                        try (PreparedStatement statement = connection.prepareStatement(changeLogSql())) {
+                            for (int i = 0; i < bindings.size(); i++) {
+                                if (counts[i] != 0) {
+                                    statement.setBytes(1, bindings.get(i).getKey().toBytes());
+                                    statement.setInt(2, 128);
+                                    statement.setLong(3, now);
+                                    statement.addBatch();
+                                }
+                            }
+                            statement.executeBatch();
+                        }
+                    }
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            }
+            // 只通知确实删除了的记录 (驱动无法得知行数时按已删除处理)
+            int removed = 0;
+            for (int i = 0; i < bindings.size(); i++) {
+                if (counts[i] == 0) {
+                    continue;
+                }
+                IPData ipData = bindings.get(i);
+                if (changeSync != null) {
+                    changeSync.applyLocalRemoveAccount(ipData.getKey(), ipData.getPlayerUUID());
+                }
+                listener.onRemoveAccount(ipData.getKey(), ipData.getPlayerUUID());
+                removed++;
+            }
+            return removed;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Integer> putAll(List<IPData> bindings) {
+        return supply(() -> {
+            // 先写入队列中的修改，之前排队的修改不会覆盖本批记录
+            writeQueue.flush();
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    try (PreparedStatement statement = connection.prepareStatement(upsertSql())) {
+                        for (IPData ipData : bindings) {
+                            statement.setBytes(1, ipData.getKey().toBytes());
+                            statement.setString(2, ipData.getPlayerUUID().toString());
+                            statement.setString(3, ipData.getPlayerName());
+                            statement.setLong(4, ipData.getEndTime());
+                            statement.setLong(5, ipData.getCreatedAt());
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                    if (syncOptions != null) {
+                        long now = System.currentTimeMillis();
+                        try (PreparedStatement statement = connection.prepareStatement(changeLogSql())) {
+                            for (IPData ipData : bindings) {
+                                statement.setBytes(1, ipData.getKey().toBytes());
+                                statement.setInt(2, 128);
+                                statement.setLong(3, now);
+                                statement.addBatch();
+                            }
+                            statement.executeBatch();
+                        }
+                    }
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            }
+            for (IPData ipData : bindings) {
+                addToFilter(ipData.getKey());
+                if (changeSync != null) {
+                    changeSync.applyLocal(ipData);
+                }
+                listener.onBind(ipData);
+            }
+            return bindings.size();
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> page(CidrBlock range, IPKey after, int limit) {
+        return supply(() -> {
+            writeQueue.flush();
+            List<Object> params = new ArrayList<>();
+            if (range != null) {
+                params.add(range.getNetwork().toBytes());
+                params.add(range.getLastAddress().toBytes());
+            }
+            return selectGrouped(range != null ? " WHERE ip BETWEEN ? AND ?" : " WHERE 1 = 1", params, after, limit);
+        });
+    }
+
+    // 基于(ip, player_uuid)唯一索引的键集分页: 读取满足条件且IP大于after的前limit条，
+    // 读满时再读取最后一个IP的其余绑定，同一IP的绑定不会分在两页；params依次为where中的参数
+    private List<IPData> selectGrouped(String where, List<Object> params, IPKey after, int limit) throws SQLException {
+        String columns = "SELECT ip, player_uuid, player_name, end_time, created_at FROM " + tableName;
+        try (Connection connection = dataSource.getConnection()) {
+            List<IPData> ipList;
+            try (PreparedStatement statement = connection.prepareStatement(columns + where +
+                    (after != null ? " AND ip > ?" : "") + " ORDER BY ip, player_uuid LIMIT ?")) {
+                int index = bind(statement, params);
+                if (after != null) {
+                    statement.setBytes(index++, after.toBytes());
+                }
+                statement.setInt(index, limit);
+                ipList = readAll(statement);
+            }
+            if (limit > 0 && ipList.size() >= limit) {
+                IPData last = ipList.get(ipList.size() - 1);
+                try (PreparedStatement statement = connection.prepareStatement(columns + where +
+                        " AND ip = ? AND player_uuid > ? ORDER BY player_uuid")) {
+                    int index = bind(statement, params);
+                    statement.setBytes(index++, last.getKey().toBytes());
+                    statement.setString(index, last.getPlayerUUID().toString());
+                    ipList.addAll(readAll(statement));
+                }
+            }
+            return ipList;
+        }
+    }
+
+    // 按顺序设置参数，返回下一个参数的位置
+    private static int bind(PreparedStatement statement, List<Object> params) throws SQLException {
+        int index = 1;
+        for (Object param : params) {
+            if (param instanceof byte[]) {
+                statement.setBytes(index++, (byte[]) param);
+            } else if (param instanceof Long) {
+                statement.setLong(index++, (Long) param);
+            } else {
+                statement.setString(index++, param.toString());
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public Map<String, Number> getGauges() {
+        Map<String, Number> gauges = new LinkedHashMap<>();
+        gauges.put("write_queue_depth", writeQueue.size());
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool != null) {
+            gauges.put("pool_active_connections", pool.getActiveConnections());
+            gauges.put("pool_idle_connections", pool.getIdleConnections());
+            gauges.put("pool_pending_threads", pool.getThreadsAwaitingConnection());
+        }
+        gauges.put("cache_hits", cacheHits.sum());
+        gauges.put("cache_misses", cacheMisses.sum());
+        if (changeSync != null && changeSync.isCaching()) {
+            gauges.put("cache_size", changeSync.size());
+            gauges.put("cache_fresh", changeSync.isFresh() ? 1 : 0);
+        }
+        if (filterOptions != null) {
+            BloomFilter filter = keyFilter;
+            gauges.put("filter_ready", usableFilter() != null ? 1 : 0);
+            gauges.put("filter_skips", filterSkips.sum());
+            gauges.put("filter_false_positives", filterFalsePositives.sum());
+            if (filter != null) {
+                gauges.put("filter_bytes", filter.getBitCount() / 8);
+                gauges.put("filter_hashes", filter.getHashCount());
+                gauges.put("filter_fill_ratio", filter.getFillRatio());
+                gauges.put("filter_estimated_fpp", filter.getEstimatedFalsePositiveRate());
+            }
+        }
+        return gauges;
+    }
+
+    @Override
+    public void setListener(BindingListener listener) {
+        this.listener = listener != null ? listener : BindingListener.NONE;
+        if (changeSync != null) {
+            // 其他服务器的修改由同步线程通知
+            changeSync.setListener(this.listener);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (changeSync != null) {
+            changeSync.close();
+        }
+        if (writeQueue != null) {
+            writeQueue.close();
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    private List<IPData> load(IPKey key) throws SQLException {
+        // 尚未写入数据库的修改叠加在已写入的绑定之上；清空过该IP时不需要读取已写入的绑定
+        SqlWriteQueue.PendingWrite pendingWrite = writeQueue.peek(key);
+        if (pendingWrite != null && pendingWrite.isClear()) {
+            return pendingWrite.applyTo(Collections.emptyList());
+        }
+        List<IPData> stored = loadStored(key);
+        return pendingWrite != null ? pendingWrite.applyTo(stored) : stored;
+    }
+
+    private List<IPData> loadStored(IPKey key) throws SQLException {
+        // 缓存在允许的延迟内时直接使用缓存
+        if (changeSync != null && changeSync.isCaching() && changeSync.isFresh()) {
+            cacheHits.increment();
+            return changeSync.get(key);
+        }
+        cacheMisses.increment();
+
+        // 过滤器中没有的IP一定没有绑定
+        BloomFilter filter = usableFilter();
+        if (filter != null && !filter.mightContain(key)) {
+            filterSkips.increment();
+            return Collections.emptyList();
+        }
+
+        // 由(ip, player_uuid)唯一索引的前缀查找
+        String sql = "SELECT ip, player_uuid, player_name, end_time, created_at FROM " + tableName + " WHERE ip = ?";
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setBytes(1, key.toBytes());
+            List<IPData> result = readAll(statement);
+            if (result.isEmpty() && filter != null) {
+                filterFalsePositives.increment();
+            }
+            return result;
+        }
+    }
+
+    // 只有本服务器写入时过滤器总是完整的；多服务器共享时需要变更日志同步正常，才能得知其他服务器新绑定的IP
+    private BloomFilter usableFilter() {
+        BloomFilter filter = keyFilter;
+        if (filter == null || syncOptions == null) {
+            return filter;
+        }
+        return changeSync != null && changeSync.isFresh() ? filter : null;
+    }
+
+    // 必须先读buildingFilter再读keyFilter: 重建完成时先发布keyFilter再清空buildingFilter，
+    // 读到buildingFilter为空时，要么重建尚未开始 (之后会从写入队列或数据表读到此IP)，要么随后读到的已是新过滤器
+    private void addToFilter(IPKey key) {
+        BloomFilter building = buildingFilter;
+        BloomFilter filter = keyFilter;
+        if (building != null) {
+            building.add(key);
+        }
+        if (filter != null && filter != building) {
+            filter.add(key);
+        }
+    }
+
+    // 在存储线程上按IP顺序分批读取全部绑定，建立新的过滤器后替换旧的
+    private void rebuildFilter() {
+        if (!filterBuilding.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            long startedAt = System.currentTimeMillis();
+            try {
+                long rows;
+                try (Connection connection = dataSource.getConnection();
+                     PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM " + tableName);
+                     ResultSet resultSet = statement.executeQuery()) {
+                    rows = resultSet.next() ? resultSet.getLong(1) : 0L;
+                }
+                // 预留一倍的增长空间，直到下次重建
+                BloomFilter next = BloomFilter.create(Math.max(FILTER_MIN_CAPACITY, rows * 2),
+                        filterOptions.getFalsePositiveRate(), filterOptions.getMaxBytes());
+                // 先让新绑定同时加入新过滤器再开始读取，读取期间的绑定不会遗漏
+                buildingFilter = next;
+                for (SqlWriteQueue.PendingWrite pendingWrite : writeQueue.snapshot()) {
+                    if (pendingWrite.hasSaves()) {
+                        next.add(pendingWrite.getKey());
+                    }
+                }
+                String sql = "SELECT ip FROM " + tableName + " WHERE ip > ? ORDER BY ip LIMIT ?";
+                byte[] after = new byte[0];
+                try (Connection connection = dataSource.getConnection();
+                     PreparedStatement statement = connection.prepareStatement(sql)) {
+                    while (true) {
+                        statement.setBytes(1, after);
+                        statement.setInt(2, FILTER_PAGE_SIZE);
+                        int read = 0;
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            while (resultSet.next()) {
+                                after = resultSet.getBytes("ip");
+                                next.add(IPKey.fromBytes(after));
+                                read++;
+                            }
+                        }
+                        if (read < FILTER_PAGE_SIZE) {
+                            break;
+                        }
+                    }
+                }
+                keyFilter = next;
+                filterBuiltAt = startedAt;
+            } catch (SQLException | RuntimeException e) {
+                logger.severe(name + "建立IP过滤器失败: " + e.getMessage());
+            } finally {
+                buildingFilter = null;
+                filterBuilding.set(false);
+            }
+        });
+    }
+
+    private String changeLogSql() {
+        return "INSERT INTO " + changeTableName + " (ip, prefix_length, changed_at) VALUES (?, ?, ?)";
+    }
+
+    // 删除早于保留时间的变更日志；各服务器的同步间隔远小于保留时间，被删除的记录均已读取过
+    private void pruneChangeLog(Connection connection, long now) throws SQLException {
+        String sql = "DELETE FROM " + changeTableName + " WHERE changed_at < ? LIMIT ?";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int affected;
+            do {
+                statement.setLong(1, now - syncOptions.getLogRetention());
+                statement.setInt(2, cleanupBatchSize);
+                affected = statement.executeUpdate();
+            } while (affected >= cleanupBatchSize);
+        }
+    }
+
+    static List<IPData> readAll(PreparedStatement statement) throws SQLException {
+        List<IPData> ipList = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                IPKey key = IPKey.fromBytes(resultSet.getBytes("ip"));
+                UUID playerUUID = UUID.fromString(resultSet.getString("player_uuid"));
+                ipList.add(new IPData(key, playerUUID, resultSet.getString("player_name"),
+                        resultSet.getLong("end_time"), resultSet.getLong("created_at")));
+            }
+        }
+        return ipList;
+    }
+
+    private <T> CompletableFuture<T> supply(SqlTask<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.run();
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private interface SqlTask<T> {
+        T run() throws SQLException;
+    }
+}
@@ -0,0 +1,409 @@
+package ljsure.cn;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// 群组服缓存同步: 在本地缓存数据表的全部绑定，并增量轮询变更日志表，将其他服务器的修改应用到缓存
+// 变更日志的每一行为一个地址段 (单个IP为/128)，轮询时重新读取该地址段的当前数据，重复应用不影响结果
+// 不缓存绑定时只轮询变更日志，将被修改的IP通知给观察者
+public class SqlChangeSync {
+
+    // 连续读取全表时每页的行数
+    private static final int LOAD_PAGE_SIZE = 1000;
+    // 每次轮询最多读取的变更行数，读满时立即继续读取
+    private static final int POLL_BATCH_SIZE = 500;
+    // 同时跟踪的编号空洞上限，以及空洞被视为回滚而放弃等待的时间(毫秒)
+    private static final int MAX_GAPS = 1000;
+    private static final long GAP_TIMEOUT = 10000L;
+
+    private final Logger logger;
+    private final DataSource dataSource;
+    private final String tableName;
+    private final String changeTableName;
+    private final SqlWriteQueue writeQueue;
+    private final Options options;
+    private final ScheduledExecutorService poller;
+
+    private final HeapBindingTable cache = new HeapBindingTable();
+    // 缓存的修改在此锁内执行，保证轮询读到的旧数据不会覆盖本服务器刚写入的数据
+    private final Object cacheLock = new Object();
+
+    // 以下字段只在轮询线程上访问
+    private long lastSeenId;
+    // 尚未出现的变更编号 (编号 -> 发现时间)，并发事务可能乱序提交
+    private final Map<Long, Long> gaps = new LinkedHashMap<>();
+
+    private volatile BindingListener listener = BindingListener.NONE;
+    private volatile ChangeObserver observer;
+    private volatile long lastSyncTime;
+    private volatile boolean stale;
+
+    public SqlChangeSync(Logger logger, String name, DataSource dataSource, String tableName, String changeTableName,
+                         SqlWriteQueue writeQueue, Options options) {
+        this.logger = logger;
+        this.dataSource = dataSource;
+        this.tableName = tableName;
+        this.changeTableName = changeTableName;
+        this.writeQueue = writeQueue;
+        this.options = options;
+        this.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LoginIPLimit-" + name + "-Sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // 读取全部绑定(不缓存时只读取当前的变更编号)后开始轮询
+    public void start() throws SQLException {
+        if (options.cacheEnabled) {
+            reload();
+        } else {
+            skipToLatest();
+        }
+        poller.scheduleWithFixedDelay(this::poll, options.pollInterval, options.pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    // 距上次同步成功不超过max-staleness时缓存可用，否则应直接查询数据库
+    public boolean isFresh() {
+        return System.currentTimeMillis() - lastSyncTime <= options.maxStaleness;
+    }
+
+    // 监听应用到缓存的其他服务器的修改
+    public void setListener(BindingListener listener) {
+        this.listener = listener;
+    }
+
+    // 观察所有读取到的变更，包括本服务器写入的
+    public void setObserver(ChangeObserver observer) {
+        this.observer = observer;
+    }
+
+    public boolean isCaching() {
+        return options.cacheEnabled;
+    }
+
+    public List<IPData> get(IPKey key) {
+        return cache.get(key.getHigh(), key.getLow());
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    // 本服务器的修改在加入写入队列后立即应用到缓存
+    public void applyLocal(IPData data) {
+        synchronized (cacheLock) {
+            cache.put(data);
+        }
+    }
+
+    public void applyLocalRemove(IPKey key) {
+        synchronized (cacheLock) {
+            cache.remove(key.getHigh(), key.getLow());
+        }
+    }
+
+    public void applyLocalRemoveAccount(IPKey key, UUID playerUUID) {
+        synchronized (cacheLock) {
+            cache.removeAccount(key.getHigh(), key.getLow(), playerUUID);
+        }
+    }
+
+    public void applyLocalRange(CidrBlock block) {
+        synchronized (cacheLock) {
+            removeCached(block, null);
+        }
+    }
+
+    // 过期记录由各服务器自行清理，不写入变更日志
+    public void purgeExpired(long now) {
+        List<IPData> expired = new ArrayList<>();
+        cache.forEach(ipData -> {
+            if (!ipData.isActive(now)) {
+                expired.add(ipData);
+            }
+        });
+        synchronized (cacheLock) {
+            for (IPData ipData : expired) {
+                cache.removeIfEndTime(ipData.getIpHigh(), ipData.getIpLow(), ipData.getPlayerUUID(), ipData.getEndTime());
+            }
+        }
+    }
+
+    public void close() {
+        poller.shutdown();
+        try {
+            poller.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        cache.clear();
+    }
+
+    // 先记下当前最大变更编号再读取全表，读取期间的修改会在之后的轮询中再次应用
+    private void reload() throws SQLException {
+        long startId;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT MAX(id) FROM " + changeTableName);
+             ResultSet resultSet = statement.executeQuery()) {
+            startId = resultSet.next() ? resultSet.getLong(1) : 0L;
+        }
+
+        // 按(ip, player_uuid)键集分页，同一IP的绑定跨页时不会遗漏
+        List<IPData> bindings = new ArrayList<>();
+        String sql = "SELECT ip, player_uuid, player_name, end_time, created_at FROM " + tableName +
+                " WHERE ip > ? OR (ip = ? AND player_uuid > ?) ORDER BY ip, player_uuid LIMIT ?";
+        byte[] after = new byte[0];
+        String afterPlayer = "";
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            while (true) {
+                statement.setBytes(1, after);
+                statement.setBytes(2, after);
+                statement.setString(3, afterPlayer);
+                statement.setInt(4, LOAD_PAGE_SIZE);
+                List<IPData> page = SqlBindingStore.readAll(statement);
+                bindings.addAll(page);
+                if (page.size() < LOAD_PAGE_SIZE) {
+                    break;
+                }
+                IPData last = page.get(page.size() - 1);
+                after = last.getKey().toBytes();
+                afterPlayer = last.getPlayerUUID().toString();
+            }
+        }
+
+        synchronized (cacheLock) {
+            cache.clear();
+            listener.onRemoveRange(CidrBlock.of(new IPKey(0L, 0L), 0));
+            // 写入队列中尚未写入数据库的修改以本地为准，叠加在读到的绑定之上
+            Map<IPKey, List<IPData>> pendingStored = new HashMap<>();
+            for (IPData ipData : bindings) {
+                if (writeQueue.peek(ipData.getKey()) == null) {
+                    cache.put(ipData);
+                    listener.onBind(ipData);
+                } else {
+                    pendingStored.computeIfAbsent(ipData.getKey(), key -> new ArrayList<>()).add(ipData);
+                }
+            }
+            for (SqlWriteQueue.PendingWrite pendingWrite : writeQueue.snapshot()) {
+                for (IPData ipData : pendingWrite.applyTo(pendingStored.getOrDefault(pendingWrite.getKey(), Collections.emptyList()))) {
+                    cache.put(ipData);
+                    listener.onBind(ipData);
+                }
+            }
+        }
+        lastSeenId = startId;
+        gaps.clear();
+        lastSyncTime = System.currentTimeMillis();
+    }
+
+    private void skipToLatest() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT MAX(id) FROM " + changeTableName);
+             ResultSet resultSet = statement.executeQuery()) {
+            lastSeenId = resultSet.next() ? resultSet.getLong(1) : 0L;
+        }
+        gaps.clear();
+        lastSyncTime = System.currentTimeMillis();
+    }
+
+    private void poll() {
+        long now = System.currentTimeMillis();
+        try {
+            // 长时间未能同步时变更日志可能已被清理，重新读取全表
+            if (now - lastSyncTime > options.logRetention / 2) {
+                if (options.cacheEnabled) {
+                    logger.warning("缓存同步中断时间过长，正在重新读取全部绑定");
+                    reload();
+                } else {
+                    skipToLatest();
+                }
+                ChangeObserver currentObserver = observer;
+                if (currentObserver != null) {
+                    currentObserver.onResync();
+                }
+            } else {
+                int read;
+                do {
+                    read = pollChanges(now);
+                } while (read >= POLL_BATCH_SIZE);
+                lastSyncTime = now;
+            }
+            if (stale) {
+                stale = false;
+                logger.info("缓存同步已恢复");
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (!stale && !isFresh()) {
+                stale = true;
+                logger.severe("缓存同步失败，将直接查询数据库直到恢复: " + e.getMessage());
+            }
+        }
+    }
+
+    // 读取新的变更以及仍在等待的编号空洞，返回新读取的变更数
+    private int pollChanges(long now) throws SQLException {
+        Set<CidrBlock> changed = new LinkedHashSet<>();
+        int read = 0;
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT id, ip, prefix_length FROM " +
+                    changeTableName + " WHERE id > ? ORDER BY id LIMIT ?")) {
+                statement.setLong(1, lastSeenId);
+                statement.setInt(2, POLL_BATCH_SIZE);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        long id = resultSet.getLong("id");
+                        // 跳过的编号可能属于尚未提交的事务
+                        if (id - lastSeenId - 1 <= MAX_GAPS - gaps.size()) {
+                            for (long gap = lastSeenId + 1; gap < id; gap++) {
+                                gaps.put(gap, now);
+                            }
+                        }
+                        lastSeenId = id;
+                        changed.add(readBlock(resultSet));
+                        read++;
+                    }
+                }
+            }
+
+            if (!gaps.isEmpty()) {
+                StringBuilder sql = new StringBuilder("SELECT id, ip, prefix_length FROM ")
+                        .append(changeTableName).append(" WHERE id IN (");
+                for (int i = 0; i < gaps.size(); i++) {
+                    sql.append(i == 0 ? "?" : ", ?");
+                }
+                sql.append(")");
+                try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+                    int index = 1;
+                    for (Long gap : gaps.keySet()) {
+                        statement.setLong(index++, gap);
+                    }
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            gaps.remove(resultSet.getLong("id"));
+                            changed.add(readBlock(resultSet));
+                        }
+                    }
+                }
+                gaps.values().removeIf(detectedAt -> now - detectedAt > GAP_TIMEOUT);
+            }
+
+            ChangeObserver currentObserver = observer;
+            for (CidrBlock block : changed) {
+                if (currentObserver != null && block.getPrefixLength() == 128) {
+                    currentObserver.onChanged(block.getNetwork());
+                }
+                if (options.cacheEnabled) {
+                    refresh(connection, block);
+                }
+            }
+        }
+        return read;
+    }
+
+    // 重新读取地址段内的当前数据并替换缓存中的对应部分
+    private void refresh(Connection connection, CidrBlock block) throws SQLException {
+        List<IPData> current;
+        if (block.getPrefixLength() == 128) {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT ip, player_uuid, player_name, end_time, created_at FROM " +
+                    tableName + " WHERE ip = ?")) {
+                statement.setBytes(1, block.getNetwork().toBytes());
+                current = SqlBindingStore.readAll(statement);
+            }
+        } else {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT ip, player_uuid, player_name, end_time, created_at FROM " +
+                    tableName + " WHERE ip BETWEEN ? AND ?")) {
+                statement.setBytes(1, block.getNetwork().toBytes());
+                statement.setBytes(2, block.getLastAddress().toBytes());
+                current = SqlBindingStore.readAll(statement);
+            }
+        }
+
+        synchronized (cacheLock) {
+            int removed = removeCached(block, writeQueue);
+            if (removed > 0 && block.getPrefixLength() == 128) {
+                listener.onRemove(block.getNetwork());
+            } else if (removed > 0) {
+                listener.onRemoveRange(block);
+            }
+            for (IPData ipData : current) {
+                if (writeQueue.peek(ipData.getKey()) == null) {
+                    cache.put(ipData);
+                    listener.onBind(ipData);
+                }
+            }
+        }
+    }
+
+    // 删除缓存中地址段内的绑定并返回删除数量；pendingWrites不为null时保留写入队列中尚有修改的IP
+    private int removeCached(CidrBlock block, SqlWriteQueue pendingWrites) {
+        int removed = 0;
+        IPKey after = null;
+        while (true) {
+            List<IPData> page = cache.page(block, after, LOAD_PAGE_SIZE);
+            for (IPData ipData : page) {
+                // 同一IP的其他绑定已随第一条一起删除
+                if (pendingWrites == null || pendingWrites.peek(ipData.getKey()) == null) {
+                    removed += cache.remove(ipData.getIpHigh(), ipData.getIpLow());
+                }
+            }
+            if (page.size() < LOAD_PAGE_SIZE) {
+                return removed;
+            }
+            after = page.get(page.size() - 1).getKey();
+        }
+    }
+
+    private CidrBlock readBlock(ResultSet resultSet) throws SQLException {
+        return CidrBlock.of(IPKey.fromBytes(resultSet.getBytes("ip")), resultSet.getInt("prefix_length"));
+    }
+
+    // 变更日志的观察者，回调在轮询线程上执行
+    public interface ChangeObserver {
+        // 单个IP被绑定或删除 (地址段删除不通知)
+        void onChanged(IPKey key);
+
+        // 中断时间过长，期间的变更已无法逐条读取
+        void onResync();
+    }
+
+    // 同步参数，cacheEnabled为false时只记录和轮询变更日志，不缓存绑定
+    public static class Options {
+        private final boolean shared;
+        private final boolean cacheEnabled;
+        private final long pollInterval;
+        private final long maxStaleness;
+        private final long logRetention;
+
+        // shared表示有其他服务器同时写入同一数据库 (群组服)
+        public Options(boolean shared, boolean cacheEnabled, long pollInterval, long maxStaleness, long logRetention) {
+            this.shared = shared;
+            this.cacheEnabled = cacheEnabled;
+            this.pollInterval = Math.max(50L, pollInterval);
+            this.maxStaleness = Math.max(this.pollInterval, maxStaleness);
+            // 保留时间至少覆盖若干次轮询，避免正常运行时的变更日志被提前清理
+            this.logRetention = Math.max(this.maxStaleness * 10, logRetention);
+        }
+
+        public boolean isShared() { return shared; }
+        public boolean isCacheEnabled() { return cacheEnabled; }
+        public long getLogRetention() { return logRetention; }
+    }
+}
@@ -0,0 +1,399 @@
+package ljsure.cn;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+// SQL写入队列: 按IP合并待写入的修改，由后台线程按批次写入数据库
+public class SqlWriteQueue {
+
+    private final Logger logger;
+    private final DataSource dataSource;
+    private final String deleteSql;
+    private final String deleteAccountSql;
+    private final String upsertSql;
+    private final String changeLogSql;
+    private final int batchSize;
+    private final long flushInterval;
+    private final int maxPending;
+    private final long maxWait;
+
+    // 同一IP的修改合并为一个 (IP -> 修改)
+    private LinkedHashMap<IPKey, PendingWrite> pending = new LinkedHashMap<>();
+    // 正在写入数据库的批次，写入完成前仍对读取可见
+    private Map<IPKey, PendingWrite> inFlight = Collections.emptyMap();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledExecutorService flusher;
+
+    // deleteSql的参数为(ip)，deleteAccountSql的参数依次为(ip, player_uuid)
+    // upsertSql的参数依次为(ip, player_uuid, player_name, end_time, created_at)
+    // changeLogSql的参数依次为(ip, prefix_length, changed_at)，与修改在同一事务中写入，为null时不记录变更
+    public SqlWriteQueue(Logger logger, String threadName, DataSource dataSource,
+                         String deleteSql, String deleteAccountSql, String upsertSql, String changeLogSql, Options options) {
+        this.logger = logger;
+        this.dataSource = dataSource;
+        this.deleteSql = deleteSql;
+        this.deleteAccountSql = deleteAccountSql;
+        this.upsertSql = upsertSql;
+        this.changeLogSql = changeLogSql;
+        this.batchSize = Math.max(1, options.batchSize);
+        this.flushInterval = Math.max(10L, options.flushInterval);
+        this.maxPending = Math.max(this.batchSize, options.maxPending);
+        this.maxWait = Math.max(0L, options.maxWait);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public void enqueueSave(IPData ipData) {
+        enqueue(new PendingWrite(ipData.getKey(), false, Collections.singletonMap(ipData.getPlayerUUID(), ipData)));
+    }
+
+    // 删除该IP上所有玩家的绑定
+    public void enqueueRemove(IPKey key) {
+        enqueue(new PendingWrite(key, true, Collections.emptyMap()));
+    }
+
+    public void enqueueRemoveAccount(IPKey key, UUID playerUUID) {
+        enqueue(new PendingWrite(key, false, Collections.singletonMap(playerUUID, null)));
+    }
+
+    // 返回该IP尚未写入数据库的修改 (包括正在写入的批次)，没有则返回null
+    public PendingWrite peek(IPKey key) {
+        lock.lock();
+        try {
+            PendingWrite write = pending.get(key);
+            PendingWrite writing = inFlight.get(key);
+            if (writing == null) {
+                return write;
+            }
+            return write != null ? writing.then(write) : writing;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<PendingWrite> snapshot() {
+        lock.lock();
+        try {
+            Map<IPKey, PendingWrite> merged = new LinkedHashMap<>(inFlight);
+            for (PendingWrite write : pending.values()) {
+                merged.merge(write.getKey(), write, PendingWrite::then);
+            }
+            return new ArrayList<>(merged.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 在写入线程上执行任务，与后台写入串行；任务需要与之前的修改有序时应先调用flush
+    public void submit(Runnable task) {
+        flusher.execute(task);
+    }
+
+    private void enqueue(PendingWrite write) {
+        boolean full;
+        int size;
+        lock.lock();
+        try {
+            // 队列已满且不是合并到已有的修改时，等待写入线程腾出空间
+            long remaining = TimeUnit.MILLISECONDS.toNanos(maxWait);
+            while (pending.size() >= maxPending && !pending.containsKey(write.getKey()) && remaining > 0) {
+                remaining = notFull.awaitNanos(remaining);
+            }
+            full = pending.size() >= maxPending && !pending.containsKey(write.getKey());
+            if (!full) {
+                merge(write);
+            }
+            size = pending.size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            full = true;
+            size = maxPending;
+        } finally {
+            lock.unlock();
+        }
+
+        if (full) {
+            // 等待超时，由当前线程直接写入队列中的数据后再入队；写入失败时数据仍在队列中
+            flushQuietly();
+            lock.lock();
+            try {
+                merge(write);
+            } finally {
+                lock.unlock();
+            }
+            return;
+        }
+
+        if (size >= batchSize && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    // 调用方需持有lock；合并后的修改移到队列末尾
+    private void merge(PendingWrite write) {
+        PendingWrite previous = pending.remove(write.getKey());
+        pending.put(write.getKey(), previous != null ? previous.then(write) : write);
+    }
+
+    // 写入队列中的全部修改；失败时修改放回队列等待重试并抛出异常，依赖写入顺序的调用方不能继续执行
+    public void flush() throws SQLException {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+
+            Map<IPKey, PendingWrite> batch;
+            lock.lock();
+            try {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new LinkedHashMap<>();
+                inFlight = batch;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                writeBatch(batch.values());
+            } catch (SQLException e) {
+                logger.severe("批量写入数据库失败，将在下次重试: " + e.getMessage());
+                requeue(batch);
+                throw e;
+            } finally {
+                lock.lock();
+                try {
+                    inFlight = Collections.emptyMap();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    // 后台写入: 失败已记录日志且修改仍在队列中，下次写入时重试
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private void writeBatch(Iterable<PendingWrite> writes) throws SQLException {
+        List<PendingWrite> clears = new ArrayList<>();
+        List<IPData> saves = new ArrayList<>();
+        List<PendingWrite> accountRemoves = new ArrayList<>();
+        for (PendingWrite write : writes) {
+            if (write.isClear()) {
+                clears.add(write);
+            }
+            boolean removesAccount = false;
+            for (IPData ipData : write.getRows().values()) {
+                if (ipData != null) {
+                    saves.add(ipData);
+                } else {
+                    removesAccount = true;
+                }
+            }
+            if (removesAccount) {
+                accountRemoves.add(write);
+            }
+        }
+
+        // 同一IP在批次中只出现一次: 先清空整个IP，再删除单个玩家的绑定，最后写入，与修改发生的顺序一致
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                if (!clears.isEmpty()) {
+                    try (PreparedStatement statement = connection.prepareStatement(deleteSql)) {
+                        for (PendingWrite write : clears) {
+                            statement.setBytes(1, write.getKey().toBytes());
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                }
+                if (!accountRemoves.isEmpty()) {
+                    try (PreparedStatement statement = connection.prepareStatement(deleteAccountSql)) {
+                        for (PendingWrite write : accountRemoves) {
+                            for (Map.Entry<UUID, IPData> row : write.getRows().entrySet()) {
+                                if (row.getValue() == null) {
+                                    statement.setBytes(1, write.getKey().toBytes());
+                                    statement.setString(2, row.getKey().toString());
+                                    statement.addBatch();
+                                }
+                            }
+                        }
+                        statement.executeBatch();
+                    }
+                }
+                if (!saves.isEmpty()) {
+                    try (PreparedStatement statement = connection.prepareStatement(upsertSql)) {
+                        for (IPData ipData : saves) {
+                            statement.setBytes(1, ipData.getKey().toBytes());
+                            statement.setString(2, ipData.getPlayerUUID().toString());
+                            statement.setString(3, ipData.getPlayerName());
+                            statement.setLong(4, ipData.getEndTime());
+                            statement.setLong(5, ipData.getCreatedAt());
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                }
+                if (changeLogSql != null) {
+                    long now = System.currentTimeMillis();
+                    try (PreparedStatement statement = connection.prepareStatement(changeLogSql)) {
+                        for (PendingWrite write : writes) {
+                            statement.setBytes(1, write.getKey().toBytes());
+                            statement.setInt(2, 128);
+                            statement.setLong(3, now);
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    // 写入失败的修改放回队列，之后的新修改合并在其后
+    private void requeue(Map<IPKey, PendingWrite> batch) {
+        lock.lock();
+        try {
+            LinkedHashMap<IPKey, PendingWrite> merged = new LinkedHashMap<>(batch);
+            for (Map.Entry<IPKey, PendingWrite> entry : pending.entrySet()) {
+                PendingWrite previous = merged.remove(entry.getKey());
+                merged.put(entry.getKey(), previous != null ? previous.then(entry.getValue()) : entry.getValue());
+            }
+            pending = merged;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 关闭前写入所有剩余的修改
+        flushQuietly();
+        int remaining = size();
+        if (remaining > 0) {
+            logger.severe("关闭时仍有 " + remaining + " 条IP修改未能写入数据库");
+        }
+    }
+
+    // 队列参数
+    public static class Options {
+        private final int batchSize;
+        private final long flushInterval;
+        private final int maxPending;
+        private final long maxWait;
+
+        public Options(int batchSize, long flushInterval, int maxPending, long maxWait) {
+            this.batchSize = batchSize;
+            this.flushInterval = flushInterval;
+            this.maxPending = maxPending;
+            this.maxWait = maxWait;
+        }
+    }
+
+    // 一个IP上待写入的修改: clear为true时先删除该IP上的全部绑定，rows为之后各玩家的绑定 (值为null表示删除该玩家的绑定)
+    // 创建后不再修改，合并时生成新的对象
+    public static class PendingWrite {
+        private final IPKey key;
+        private final boolean clear;
+        private final Map<UUID, IPData> rows;
+
+        public PendingWrite(IPKey key, boolean clear, Map<UUID, IPData> rows) {
+            this.key = key;
+            this.clear = clear;
+            this.rows = rows;
+        }
+
+        public IPKey getKey() { return key; }
+        public boolean isClear() { return clear; }
+        public Map<UUID, IPData> getRows() { return rows; }
+
+        // 是否写入了至少一条绑定
+        public boolean hasSaves() {
+            for (IPData ipData : rows.values()) {
+                if (ipData != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // 先执行本修改再执行next的合并结果
+        public PendingWrite then(PendingWrite next) {
+            if (next.clear) {
+                return next;
+            }
+            Map<UUID, IPData> merged = new LinkedHashMap<>(rows);
+            merged.putAll(next.rows);
+            return new PendingWrite(key, clear, merged);
+        }
+
+        // 将修改应用到该IP已写入数据库的绑定上，返回修改后的全部绑定
+        public List<IPData> applyTo(List<IPData> stored) {
+            List<IPData> result = new ArrayList<>(stored.size() + rows.size());
+            if (!clear) {
+                for (IPData ipData : stored) {
+                    if (!rows.containsKey(ipData.getPlayerUUID())) {
+                        result.add(ipData);
+                    }
+                }
+            }
+            for (IPData ipData : rows.values()) {
+                if (ipData != null) {
+                    result.add(ipData);
+                }
+            }
+            return result;
+        }
+    }
+}
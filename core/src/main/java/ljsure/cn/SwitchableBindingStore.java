@@ -0,0 +1,223 @@
+package ljsure.cn;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+// 可在运行中更换的存储: 更换期间到达的操作排队等待新存储就绪，已开始的操作在旧存储上完成后才关闭旧存储
+public class SwitchableBindingStore implements BindingStore {
+
+    // 等待旧存储上的操作完成的最长时间(毫秒)
+    private static final long DRAIN_TIMEOUT = 30000L;
+
+    private final Logger logger;
+    private volatile Slot current;
+    // 更换当前存储与关闭互斥，关闭后不再更换
+    private final Object slotLock = new Object();
+    private boolean closed;
+    private volatile BindingListener listener = BindingListener.NONE;
+
+    public SwitchableBindingStore(Logger logger, BindingStore initial) {
+        this.logger = logger;
+        this.current = new Slot(CompletableFuture.completedFuture(initial));
+    }
+
+    // 更换为factory创建的存储，应在异步线程上调用；新存储无法初始化时恢复为fallback创建的存储
+    // 先关闭旧存储再打开新存储，同一数据文件或数据表不会同时被两个实例使用
+    public synchronized boolean switchTo(Supplier<BindingStore> factory, Supplier<BindingStore> fallback) {
+        Slot previous;
+        Slot next = new Slot(new CompletableFuture<>());
+        synchronized (slotLock) {
+            if (closed) {
+                return false;
+            }
+            previous = current;
+            current = next;
+        }
+
+        // 等待已开始的操作完成
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+        while (previous.inFlight.get() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (previous.inFlight.get() > 0) {
+            logger.warning("仍有 " + previous.inFlight.get() + " 个存储操作未完成，强制关闭旧存储");
+        }
+        BindingStore old = previous.store.getNow(null);
+        if (old != null) {
+            old.close();
+        }
+
+        // 更换期间已关闭: 不再打开新存储
+        if (isClosed()) {
+            next.store.completeExceptionally(new IllegalStateException("存储已关闭"));
+            return false;
+        }
+        BindingStore created = open(factory);
+        boolean switched = created != null;
+        if (created == null) {
+            created = open(fallback);
+        }
+        if (created == null) {
+            next.store.completeExceptionally(new IllegalStateException("存储不可用"));
+            return false;
+        }
+        created.setListener(listener);
+        next.store.complete(created);
+        return switched;
+    }
+
+    private BindingStore open(Supplier<BindingStore> factory) {
+        try {
+            BindingStore store = factory.get();
+            if (store != null && store.initialize()) {
+                return store;
+            }
+        } catch (RuntimeException e) {
+            logger.severe("打开存储失败: " + e.getMessage());
+        }
+        return null;
+    }
+
+    // 计入当前存储的进行中操作；与更换并发时改用新的存储
+    private Slot acquire() {
+        while (true) {
+            Slot slot = current;
+            slot.inFlight.incrementAndGet();
+            if (slot == current) {
+                return slot;
+            }
+            slot.inFlight.decrementAndGet();
+        }
+    }
+
+    private <T> CompletableFuture<T> call(Function<BindingStore, CompletableFuture<T>> operation) {
+        Slot slot = acquire();
+        CompletableFuture<T> future;
+        try {
+            future = slot.store.thenCompose(operation);
+        } catch (RuntimeException e) {
+            slot.inFlight.decrementAndGet();
+            throw e;
+        }
+        return future.whenComplete((result, error) -> slot.inFlight.decrementAndGet());
+    }
+
+    @Override
+    public String getName() {
+        BindingStore store = current.store.getNow(null);
+        return store != null ? store.getName() : "切换中";
+    }
+
+    @Override
+    public boolean initialize() {
+        return current.store.join().initialize();
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> get(IPKey key) {
+        return call(store -> store.get(key));
+    }
+
+    @Override
+    public CompletableFuture<BindResult> compareAndBind(IPData binding, long now, int maxAccounts) {
+        return call(store -> store.compareAndBind(binding, now, maxAccounts));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> remove(IPKey key) {
+        return call(store -> store.remove(key));
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeRange(CidrBlock block) {
+        return call(store -> store.removeRange(block));
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> scanExpiring(long before, int limit) {
+        return call(store -> store.scanExpiring(before, limit));
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeExpired(long now) {
+        return call(store -> store.removeExpired(now));
+    }
+
+    @Override
+    public CompletableFuture<Integer> count() {
+        return call(BindingStore::count);
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> page(CidrBlock range, IPKey after, int limit) {
+        return call(store -> store.page(range, after, limit));
+    }
+
+    @Override
+    public CompletableFuture<List<IPData>> find(BindingQuery query, IPKey after, int limit) {
+        return call(store -> store.find(query, after, limit));
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeAll(List<IPData> bindings) {
+        return call(store -> store.removeAll(bindings));
+    }
+
+    @Override
+    public CompletableFuture<Integer> putAll(List<IPData> bindings) {
+        return call(store -> store.putAll(bindings));
+    }
+
+    @Override
+    public Map<String, Number> getGauges() {
+        BindingStore store = current.store.getNow(null);
+        return store != null ? store.getGauges() : Collections.emptyMap();
+    }
+
+    @Override
+    public void setListener(BindingListener listener) {
+        this.listener = listener != null ? listener : BindingListener.NONE;
+        BindingStore store = current.store.getNow(null);
+        if (store != null) {
+            store.setListener(this.listener);
+        }
+    }
+
+    // 更换期间关闭时，新存储就绪后立即关闭
+    @Override
+    public void close() {
+        Slot slot;
+        synchronized (slotLock) {
+            closed = true;
+            slot = current;
+        }
+        slot.store.thenAccept(BindingStore::close);
+    }
+
+    private boolean isClosed() {
+        synchronized (slotLock) {
+            return closed;
+        }
+    }
+
+    // 一个存储实例及其上正在进行的操作数
+    private static final class Slot {
+        private final CompletableFuture<BindingStore> store;
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private Slot(CompletableFuture<BindingStore> store) {
+            this.store = store;
+        }
+    }
+}
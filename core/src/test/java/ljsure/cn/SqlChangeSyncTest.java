@@ -0,0 +1,206 @@
+package ljsure.cn;
+
+import com.zaxxer.hikari.HikariConfig;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+// 两个H2(MySQL模式)存储共享同一个内存数据库，模拟群组服中的两台服务器通过变更日志同步缓存
+class SqlChangeSyncTest {
+
+    private static final String TABLE = "iplimit_data";
+    private static final UUID FIRST_PLAYER = new UUID(0L, 1L);
+    private static final UUID SECOND_PLAYER = new UUID(0L, 2L);
+
+    private JdbcDataSource dataSource;
+    private H2BindingStore first;
+    private H2BindingStore second;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:sync-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        first = open("A");
+        second = open("B");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        first.close();
+        second.close();
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+    }
+
+    @Test
+    void bindOnOneServerIsVisibleOnTheOther() throws Exception {
+        IPKey key = IPKey.parse("10.0.0.1");
+        long now = System.currentTimeMillis();
+        assertFalse(first.compareAndBind(new IPData(key, FIRST_PLAYER, "first", 0L, now), now, 1).join().isConflict());
+
+        await("B读到A的绑定", () -> second.get(key).join().size() == 1);
+        BindingStore.BindResult result = second.compareAndBind(new IPData(key, SECOND_PLAYER, "second", 0L, now), now, 1).join();
+        assertTrue(result.isConflict());
+        assertEquals(FIRST_PLAYER, result.getBinding().getPlayerUUID());
+    }
+
+    @Test
+    void eraseOnOneServerIsVisibleOnTheOther() throws Exception {
+        IPKey single = IPKey.parse("10.0.0.1");
+        IPKey inRange = IPKey.parse("10.0.1.7");
+        IPKey shared = IPKey.parse("10.0.2.1");
+        long now = System.currentTimeMillis();
+        first.compareAndBind(new IPData(single, FIRST_PLAYER, "first", 0L, now), now, 1).join();
+        first.compareAndBind(new IPData(inRange, FIRST_PLAYER, "first", 0L, now), now, 1).join();
+        first.compareAndBind(new IPData(shared, FIRST_PLAYER, "first", 0L, now), now, 2).join();
+        first.compareAndBind(new IPData(shared, SECOND_PLAYER, "second", 0L, now), now, 2).join();
+        await("B读到A的全部绑定", () -> second.get(single).join().size() == 1
+                && second.get(inRange).join().size() == 1 && second.get(shared).join().size() == 2);
+
+        assertTrue(first.remove(single).join());
+        assertEquals(1, first.removeRange(CidrBlock.parse("10.0.1.0/24")).join());
+        List<IPData> account = Collections.singletonList(new IPData(shared, FIRST_PLAYER, "first", 0L, now));
+        assertEquals(1, first.removeAll(account).join());
+        // 已不存在的记录不计入删除数量
+        assertEquals(0, first.removeAll(account).join());
+
+        await("B读到A的删除", () -> second.get(single).join().isEmpty() && second.get(inRange).join().isEmpty()
+                && second.get(shared).join().size() == 1);
+        assertEquals(SECOND_PLAYER, second.get(shared).join().get(0).getPlayerUUID());
+    }
+
+    @Test
+    void accountLimitHoldsAcrossServers() throws Exception {
+        // 两台服务器同时为同一IP绑定不同玩家，缓存尚未同步时数据库中的检查仍须只放行maxAccounts个
+        IPKey key = IPKey.parse("10.0.5.1");
+        long now = System.currentTimeMillis();
+        int maxAccounts = 2;
+        List<CompletableFuture<BindingStore.BindResult>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            H2BindingStore store = i % 2 == 0 ? first : second;
+            results.add(store.compareAndBind(new IPData(key, new UUID(1L, i), "player" + i, 0L, now), now, maxAccounts));
+        }
+        int bound = 0;
+        for (CompletableFuture<BindingStore.BindResult> result : results) {
+            if (!result.join().isConflict()) {
+                bound++;
+            }
+        }
+        assertEquals(maxAccounts, bound);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM " + TABLE + " WHERE ip = ?")) {
+            statement.setBytes(1, key.toBytes());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                assertTrue(resultSet.next());
+                assertEquals(maxAccounts, resultSet.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    void changeCommittedOutOfOrderIsPickedUp() throws Exception {
+        IPKey late = IPKey.parse("10.0.3.1");
+        IPKey next = IPKey.parse("10.0.3.2");
+        long now = System.currentTimeMillis();
+        try (Connection connection = dataSource.getConnection()) {
+            // 先取得较小的变更编号但暂不提交，模拟另一台服务器上较慢的事务
+            connection.setAutoCommit(false);
+            insertBinding(connection, new IPData(late, FIRST_PLAYER, "late", 0L, now));
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO " + TABLE + "_changes (ip, prefix_length, changed_at) VALUES (?, 128, ?)")) {
+                statement.setBytes(1, late.toBytes());
+                statement.setLong(2, now);
+                statement.executeUpdate();
+            }
+
+            // 编号较大的变更先提交，B读到后越过尚未提交的编号
+            first.compareAndBind(new IPData(next, SECOND_PLAYER, "next", 0L, now), now, 1).join();
+            await("B读到编号较大的变更", () -> second.get(next).join().size() == 1);
+            assertTrue(second.get(late).join().isEmpty());
+
+            connection.commit();
+        }
+        await("B读到乱序提交的变更", () -> second.get(late).join().size() == 1);
+    }
+
+    @Test
+    void staleCacheFallsBackToDatabaseAndReloads() throws Exception {
+        // 直接写入数据表且没有变更日志的绑定只能通过查询数据库或重新读取全表看到
+        IPKey direct = IPKey.parse("10.0.4.1");
+        long now = System.currentTimeMillis();
+        try (Connection connection = dataSource.getConnection()) {
+            insertBinding(connection, new IPData(direct, FIRST_PLAYER, "direct", 0L, now));
+        }
+        assertTrue(second.get(direct).join().isEmpty());
+
+        // 变更日志无法读取时，超过允许的延迟后直接查询数据库
+        execute("ALTER TABLE " + TABLE + "_changes RENAME TO " + TABLE + "_moved");
+        await("同步中断后查询数据库", () -> second.get(direct).join().size() == 1);
+
+        // 中断超过保留时间的一半后恢复，重新读取全表
+        Thread.sleep(1200);
+        execute("ALTER TABLE " + TABLE + "_moved RENAME TO " + TABLE + "_changes");
+        await("同步恢复", () -> second.getGauges().get("cache_fresh").intValue() == 1);
+        assertEquals(1, second.get(direct).join().size());
+    }
+
+    private H2BindingStore open(String name) {
+        HikariConfig poolConfig = new HikariConfig();
+        poolConfig.setDataSource(dataSource);
+        poolConfig.setMaximumPoolSize(4);
+        poolConfig.setPoolName("test-" + name);
+        // 每50毫秒轮询，缓存最多允许200毫秒的延迟，变更日志保留2秒 (同步中断超过1秒后重新读取全表)
+        H2BindingStore store = new H2BindingStore(Logger.getLogger("test-" + name), poolConfig, TABLE,
+                new SqlWriteQueue.Options(100, 20, 1000, 100), 100, new SqlChangeSync.Options(true, true, 50, 200, 2000), null);
+        assertTrue(store.initialize());
+        return store;
+    }
+
+    private void insertBinding(Connection connection, IPData ipData) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO " + TABLE + " (ip, player_uuid, player_name, end_time, created_at) VALUES (?, ?, ?, ?, ?)")) {
+            statement.setBytes(1, ipData.getKey().toBytes());
+            statement.setString(2, ipData.getPlayerUUID().toString());
+            statement.setString(3, ipData.getPlayerName());
+            statement.setLong(4, ipData.getEndTime());
+            statement.setLong(5, ipData.getCreatedAt());
+            statement.executeUpdate();
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static void await(String description, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("等待超时: " + description);
+            }
+            Thread.sleep(20L);
+        }
+    }
+}
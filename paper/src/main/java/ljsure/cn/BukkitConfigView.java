@@ -0,0 +1,73 @@
+package ljsure.cn;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.List;
+import java.util.Set;
+
+// 以ConfigView读取插件的配置文件，命令修改的配置项可以直接读到
+public final class BukkitConfigView implements ConfigView {
+
+    private final ConfigurationSection section;
+
+    public BukkitConfigView(ConfigurationSection section) {
+        this.section = section;
+    }
+
+    @Override
+    public boolean contains(String path) {
+        return section.contains(path);
+    }
+
+    @Override
+    public String getString(String path) {
+        return section.getString(path);
+    }
+
+    @Override
+    public String getString(String path, String def) {
+        return section.getString(path, def);
+    }
+
+    @Override
+    public boolean getBoolean(String path, boolean def) {
+        return section.getBoolean(path, def);
+    }
+
+    @Override
+    public int getInt(String path, int def) {
+        return section.getInt(path, def);
+    }
+
+    @Override
+    public long getLong(String path, long def) {
+        return section.getLong(path, def);
+    }
+
+    @Override
+    public double getDouble(String path, double def) {
+        return section.getDouble(path, def);
+    }
+
+    @Override
+    public List<String> getStringList(String path) {
+        return section.getStringList(path);
+    }
+
+    @Override
+    public ConfigView getSection(String path) {
+        ConfigurationSection child = section.getConfigurationSection(path);
+        return child != null ? new BukkitConfigView(child) : null;
+    }
+
+    @Override
+    public Set<String> getKeys() {
+        return section.getKeys(false);
+    }
+
+    @Override
+    public String describe(String path) {
+        ConfigurationSection child = section.getConfigurationSection(path);
+        return String.valueOf(child != null ? child.getValues(true) : section.get(path));
+    }
+}
@@ -0,0 +1,1017 @@
+package ljsure.cn;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabCompleter;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.util.StringUtil;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+public class LoginIPLimit extends JavaPlugin implements Listener {
+
+    // /ip list 每页显示的绑定数，以及/ip erase 补全的最大条目数
+    private static final int LIST_PAGE_SIZE = 10;
+    private static final int COMPLETION_LIMIT = 50;
+
+    private FileConfiguration config;
+    private DatabaseManager databaseManager;
+    private BindingIndex bindingIndex;
+    private final PluginMetrics metrics = new PluginMetrics();
+    // 每次玩家登录都要记录，启动时解析一次
+    private final PluginMetrics.Operation applyOperation = metrics.operation("login_apply");
+    private ObjectName metricsObjectName;
+
+    // 登录检查及当前设置: 设置只在主线程替换，登录线程每次检查读取一次
+    private LoginGuard guard;
+    private PlayerNameCache nameCache;
+
+    // 配置文件的异步保存: 只写入最近一次修改的内容
+    private final Object configSaveLock = new Object();
+    private final AtomicLong configSaveSequence = new AtomicLong();
+    private long configSavedSequence;
+
+    // 正在进行的批量删除，与迁移相同，erasing只在主线程读写
+    private volatile BulkEraseJob eraseJob;
+    private boolean erasing;
+
+    // 正在进行的存储迁移；migrating只在主线程读写，打开存储期间migration尚未创建
+    private volatile BindingMigration migration;
+    private boolean migrating;
+
+    // 待应用的登录检查结果 (UUID -> 结果)
+    private final Map<UUID, LoginVerdict> pendingVerdicts = new ConcurrentHashMap<>();
+
+    @Override
+    public void onEnable() {
+        // 加载配置文件
+        saveDefaultConfig();
+        config = getConfig();
+        Settings current = new Settings(new BukkitConfigView(config), getLogger());
+
+        // 玩家名缓存 (踢出信息中显示绑定玩家时使用)
+        nameCache = new PlayerNameCache(getLogger(), new File(getDataFolder(), "names.dat"),
+                current.getNameCacheMaxSize(), current.getNameRefreshAfter(),
+                this::lookupPlayerName, runnable -> Bukkit.getScheduler().runTaskAsynchronously(this, runnable));
+        boolean namesLoaded = nameCache.load();
+
+        // 初始化数据库管理器
+        databaseManager = new DatabaseManager(getLogger(), getDataFolder(), metrics);
+        if (!databaseManager.initialize(current.getStorage())) {
+            getLogger().severe("数据库初始化失败，插件将禁用!");
+            Bukkit.getPluginManager().disablePlugin(this);
+            return;
+        }
+
+        // 登录检查 (解析登录消息模板，创建登录频率限制)
+        guard = new LoginGuard(getLogger(), databaseManager::getStore, metrics, nameCache::resolve, current);
+
+        // 建立绑定索引(命令补全、统计计数和每个账号的IP数限制): 先注册监听器再读取已有绑定，读取期间的修改不会丢失
+        bindingIndex = new BindingIndex(this::formatBindingKey);
+        guard.setAccountIndex(bindingIndex);
+        databaseManager.getStore().setListener(BindingListener.of(bindingIndex, nameCache));
+        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+            try {
+                bindingIndex.load(databaseManager.getStore());
+                if (!namesLoaded) {
+                    nameCache.seed(databaseManager.getStore());
+                }
+            } catch (CompletionException e) {
+                getLogger().severe("建立绑定索引失败: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+            }
+        });
+
+        // 注册事件
+        getServer().getPluginManager().registerEvents(this, this);
+
+        // 注册命令和自动补全
+        IPCommand ipCommand = new IPCommand();
+        Objects.requireNonNull(getCommand("ip")).setExecutor(ipCommand);
+        Objects.requireNonNull(getCommand("ip")).setTabCompleter(ipCommand);
+
+        // 启动定时清理任务
+        startCleanupTask();
+        startReconcileTask();
+
+        // 运行指标
+        startMetrics();
+
+        getLogger().info("LoginIPLimit 插件已启用! 使用" + databaseManager.getStore().getName() + "存储");
+    }
+
+    @Override
+    public void onDisable() {
+        // 迁移在当前批次写入后停止，进度保留到下次启动后继续
+        BindingMigration running = migration;
+        if (running != null) {
+            running.cancel();
+        }
+        BulkEraseJob runningErase = eraseJob;
+        if (runningErase != null) {
+            runningErase.cancel();
+        }
+        if (metricsObjectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsObjectName);
+            } catch (Exception e) {
+                getLogger().warning("注销JMX指标失败: " + e.getMessage());
+            }
+            metricsObjectName = null;
+        }
+        if (databaseManager != null) {
+            databaseManager.close();
+        }
+        if (nameCache != null) {
+            try {
+                nameCache.save();
+            } catch (IOException e) {
+                getLogger().warning("保存玩家名缓存失败: " + e.getMessage());
+            }
+        }
+        // 关闭时异步任务不再执行，写入尚未保存的配置修改
+        if (config != null) {
+            flushConfigSave();
+        }
+        getLogger().info("LoginIPLimit 插件已禁用!");
+    }
+
+    public Settings getSettings() {
+        return guard.getSettings();
+    }
+
+    // 在主线程上修改配置后调用: 发布新的设置，并在异步线程上写入配置文件
+    private void updateSettings(UnaryOperator<Settings> update) {
+        guard.updateSettings(update);
+        String data = config.saveToString();
+        long sequence = configSaveSequence.incrementAndGet();
+        Bukkit.getScheduler().runTaskAsynchronously(this, () -> writeConfig(data, sequence));
+    }
+
+    private void writeConfig(String data, long sequence) {
+        synchronized (configSaveLock) {
+            // 已经写入了更新的内容
+            if (sequence <= configSavedSequence) {
+                return;
+            }
+            File file = new File(getDataFolder(), "config.yml");
+            File temp = new File(getDataFolder(), "config.yml.tmp");
+            try {
+                Files.write(temp.toPath(), data.getBytes(StandardCharsets.UTF_8));
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                configSavedSequence = sequence;
+            } catch (IOException e) {
+                getLogger().severe("保存配置文件失败: " + e.getMessage());
+            }
+        }
+    }
+
+    // 在主线程上同步写入尚未保存的修改 (重新加载配置和关闭插件前调用)
+    private void flushConfigSave() {
+        long sequence = configSaveSequence.get();
+        boolean pending;
+        synchronized (configSaveLock) {
+            pending = sequence > configSavedSequence;
+        }
+        if (pending) {
+            writeConfig(config.saveToString(), sequence);
+        }
+    }
+
+    // 重新读取配置文件并替换设置；存储设置有修改时在异步线程上更换存储，期间的登录检查等待新存储就绪
+    private void reloadSettings(CommandSender sender) {
+        flushConfigSave();
+        reloadConfig();
+        config = getConfig();
+        Settings previous = guard.getSettings();
+        Settings next = new Settings(new BukkitConfigView(config), getLogger());
+        guard.applySettings(next);
+        sender.sendMessage(ChatColor.GREEN + "配置已重新加载 (玩家名缓存、统计和指标的设置需要重启服务器后生效)");
+
+        boolean storageChanged = !next.getStorage().getFingerprint().equals(databaseManager.getSettings().getFingerprint());
+        boolean bindingChanged = next.getIpv4BindingPrefix() != previous.getIpv4BindingPrefix()
+                || next.getIpv6BindingPrefix() != previous.getIpv6BindingPrefix();
+        if (!storageChanged && !bindingChanged) {
+            return;
+        }
+        if (storageChanged) {
+            sender.sendMessage(ChatColor.YELLOW + "存储设置已修改，正在重新打开存储...");
+        }
+        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+            if (storageChanged) {
+                if (databaseManager.switchStore(next.getStorage())) {
+                    getLogger().info("已切换到" + databaseManager.getStore().getName() + "存储");
+                    sender.sendMessage(ChatColor.GREEN + "已切换到" + databaseManager.getStore().getName() + "存储");
+                } else {
+                    getLogger().severe("无法打开新的存储，继续使用原来的存储设置");
+                    sender.sendMessage(ChatColor.RED + "无法打开新的存储，继续使用原来的存储设置，详见控制台");
+                }
+            }
+            // 存储或绑定粒度改变后重新建立绑定索引
+            try {
+                bindingIndex.reconcile(databaseManager.getStore());
+            } catch (CompletionException e) {
+                getLogger().severe("核对绑定索引失败: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+            }
+        });
+    }
+
+    // 在异步线程上打开两个存储并执行迁移；与当前存储类型相同的一方直接使用当前存储
+    private void startMigration(CommandSender sender, String from, String to) {
+        String sourceType = DatabaseManager.normalizeType(from);
+        String targetType = DatabaseManager.normalizeType(to);
+        if (sourceType == null || targetType == null) {
+            sender.sendMessage(ChatColor.RED + "存储类型只能是 local、h2 或 mysql");
+            return;
+        }
+        if (sourceType.equals(targetType)) {
+            sender.sendMessage(ChatColor.RED + "源存储和目标存储不能相同");
+            return;
+        }
+        if (migrating) {
+            BindingMigration running = migration;
+            sender.sendMessage(ChatColor.YELLOW + "已有迁移正在进行" + (running == null ? "" : ": " + running.getSourceType() + " -> " +
+                    running.getTargetType() + " (" + running.getCopied() + " / " + running.getTotal() + ")"));
+            return;
+        }
+        String activeType = DatabaseManager.normalizeType(databaseManager.getSettings().getType());
+        if (sourceType.equals(activeType) && guard.getSettings().isEnabled()) {
+            sender.sendMessage(ChatColor.YELLOW + "源存储正在使用中，迁移期间新的绑定可能不会被迁移，建议先执行 /ip disable");
+        }
+        migrating = true;
+        sender.sendMessage(ChatColor.YELLOW + "正在打开存储...");
+        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+            BindingStore source = sourceType.equals(activeType) ? databaseManager.getStore() : databaseManager.openStore(sourceType);
+            BindingStore target = targetType.equals(activeType) ? databaseManager.getStore() : databaseManager.openStore(targetType);
+            try {
+                if (source == null || target == null) {
+                    getLogger().severe("无法打开" + (source == null ? sourceType : targetType) + "存储，迁移未开始");
+                    sendLater(sender, ChatColor.RED + "无法打开" + (source == null ? sourceType : targetType) + "存储，迁移未开始，详见控制台");
+                    return;
+                }
+                BindingMigration task = new BindingMigration(getLogger(), new File(getDataFolder(), "migrate-checkpoint.yml"),
+                        sourceType, targetType, source, target, message -> sendLater(sender, ChatColor.YELLOW + message));
+                migration = task;
+                task.run();
+            } catch (CompletionException | IllegalStateException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                getLogger().severe("迁移失败: " + cause.getMessage());
+                sendLater(sender, ChatColor.RED + "迁移失败，进度已保存，再次执行相同的命令可以继续，详见控制台");
+            } finally {
+                migration = null;
+                // 只关闭为迁移打开的存储
+                if (source != null && !sourceType.equals(activeType)) {
+                    source.close();
+                }
+                if (target != null && !targetType.equals(activeType)) {
+                    target.close();
+                }
+                if (isEnabled()) {
+                    Bukkit.getScheduler().runTask(this, () -> migrating = false);
+                }
+            }
+        });
+    }
+
+    // 参数为 <CIDR>、player <玩家名|UUID> 或 older <天数>，最后可加 dry-run 只统计数量
+    private void startBulkErase(CommandSender sender, String[] args) {
+        if (erasing) {
+            BulkEraseJob running = eraseJob;
+            sender.sendMessage(ChatColor.YELLOW + "已有批量删除正在进行" + (running == null ? "" : ": " + running.getDescription() +
+                    (running.isDryRun() ? "，已找到 " + running.getMatched() : "，已删除 " + running.getRemoved()) + " 条") +
+                    "，可用 /ip erase cancel 取消");
+            return;
+        }
+        boolean dryRun = args[args.length - 1].equalsIgnoreCase("dry-run");
+        BindingQuery query;
+        String description;
+        switch (args[1].toLowerCase(Locale.ROOT)) {
+            case "player": {
+                if (args.length < 3 || args[2].equalsIgnoreCase("dry-run")) {
+                    sender.sendMessage(ChatColor.RED + "用法: /ip erase player <玩家名|UUID> [dry-run]");
+                    return;
+                }
+                UUID playerUUID = findPlayerUUID(args[2]);
+                if (playerUUID == null) {
+                    sender.sendMessage(ChatColor.RED + "找不到玩家: " + args[2] + "，请使用UUID");
+                    return;
+                }
+                query = BindingQuery.ofPlayer(playerUUID);
+                description = "玩家 " + args[2] + " ";
+                break;
+            }
+            case "older": {
+                int days;
+                try {
+                    days = Integer.parseInt(args.length < 3 ? "" : args[2]);
+                } catch (NumberFormatException e) {
+                    days = 0;
+                }
+                if (days <= 0) {
+                    sender.sendMessage(ChatColor.RED + "用法: /ip erase older <天数> [dry-run]，天数必须大于0");
+                    return;
+                }
+                query = BindingQuery.createdBefore(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days));
+                description = days + "天前创建";
+                break;
+            }
+            default: {
+                CidrBlock block = CidrBlock.parse(args[1]);
+                if (block == null) {
+                    sender.sendMessage(ChatColor.RED + "无效的CIDR: " + args[1]);
+                    return;
+                }
+                query = BindingQuery.inRange(block);
+                description = "地址段 " + block + " 内";
+                break;
+            }
+        }
+
+        BulkEraseJob job = new BulkEraseJob(getLogger(), databaseManager.getStore(), query, description, dryRun,
+                message -> sendLater(sender, ChatColor.YELLOW + message));
+        erasing = true;
+        eraseJob = job;
+        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+            try {
+                job.run();
+            } catch (CompletionException | IllegalStateException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                getLogger().severe("批量删除失败: " + cause.getMessage());
+                sendLater(sender, ChatColor.RED + "批量删除失败，已删除 " + job.getRemoved() + " 条，详见控制台");
+            } finally {
+                eraseJob = null;
+                if (isEnabled()) {
+                    Bukkit.getScheduler().runTask(this, () -> erasing = false);
+                }
+            }
+        });
+    }
+
+    // 玩家名或UUID -> UUID: 先查在线玩家，再查玩家名缓存
+    private UUID findPlayerUUID(String text) {
+        try {
+            return UUID.fromString(text);
+        } catch (IllegalArgumentException e) {
+            Player online = Bukkit.getPlayerExact(text);
+            return online != null ? online.getUniqueId() : nameCache.findByName(text);
+        }
+    }
+
+    // 从异步线程发送消息: 回到主线程发送，插件已关闭时忽略
+    private void sendLater(CommandSender sender, String message) {
+        if (isEnabled()) {
+            Bukkit.getScheduler().runTask(this, () -> sender.sendMessage(message));
+        }
+    }
+
+    // 将地址按绑定粒度截取为存储使用的键
+    public IPKey toBindingKey(long high, long low) {
+        return guard.toBindingKey(high, low);
+    }
+
+    // 显示绑定键，按地址段绑定时附带前缀长度
+    public String formatBindingKey(IPKey key) {
+        return guard.formatBindingKey(key);
+    }
+
+    private void startCleanupTask() {
+        // 每分钟清理一次过期的IP记录 (异步执行，不占用主线程)
+        PluginMetrics.Operation cleanupOperation = metrics.operation("cleanup_task");
+        Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> {
+            long start = System.nanoTime();
+            databaseManager.cleanupExpiredIPs();
+            bindingIndex.prune(System.currentTimeMillis());
+            ConnectionRateLimiter limiter = guard.getRateLimiter();
+            if (limiter != null) {
+                limiter.evictIdle();
+            }
+            cleanupOperation.record(start, false);
+
+            // 清理未能进入PlayerLoginEvent的检查结果(例如客户端在预登录后断开)
+            long staleBefore = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1);
+            pendingVerdicts.values().removeIf(verdict -> verdict.getCreatedAt() < staleBefore);
+        }, 0L, 20L * 60L); // 每分钟执行一次
+
+        // 每5分钟保存一次有修改的玩家名缓存
+        Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> {
+            try {
+                nameCache.save();
+            } catch (IOException e) {
+                getLogger().warning("保存玩家名缓存失败: " + e.getMessage());
+            }
+        }, 20L * 60L * 5L, 20L * 60L * 5L);
+    }
+
+    private void startReconcileTask() {
+        // 定期与存储核对绑定索引，修正未通知到的修改 (例如其他服务器在同步关闭时的修改)
+        long interval = guard.getSettings().getReconcileInterval();
+        if (interval <= 0) {
+            return;
+        }
+        long ticks = 20L * 60L * interval;
+        Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> {
+            if (!bindingIndex.isLoaded()) {
+                return;
+            }
+            try {
+                int corrected = bindingIndex.reconcile(databaseManager.getStore());
+                if (corrected > 0) {
+                    getLogger().info("绑定索引核对完成，修正了 " + corrected + " 条记录");
+                }
+            } catch (CompletionException e) {
+                getLogger().severe("核对绑定索引失败: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+            }
+        }, ticks, ticks);
+    }
+
+    // 供其他插件读取绑定统计
+    public BindingIndex getBindingIndex() {
+        return bindingIndex;
+    }
+
+    public PluginMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void startMetrics() {
+        metrics.setGauges(() -> {
+            Map<String, Number> gauges = new LinkedHashMap<>(databaseManager.getStore().getGauges());
+            long now = System.currentTimeMillis();
+            gauges.put("bindings_total", bindingIndex.getTotalCount());
+            gauges.put("bindings_permanent", bindingIndex.getPermanentCount());
+            gauges.put("bindings_temporary", bindingIndex.getTemporaryCount());
+            gauges.put("bindings_expiring_1h", bindingIndex.getExpiringWithin(now, TimeUnit.HOURS.toMillis(1)));
+            gauges.put("pending_verdicts", pendingVerdicts.size());
+            ConnectionRateLimiter limiter = guard.getRateLimiter();
+            if (limiter != null) {
+                gauges.put("rate_limit_rejected_ip", limiter.getRejectedByIp());
+                gauges.put("rate_limit_rejected_subnet", limiter.getRejectedBySubnet());
+                gauges.put("rate_limit_untracked", limiter.getUntracked());
+                gauges.put("rate_limit_buckets", limiter.getTrackedCount());
+            }
+            return gauges;
+        });
+
+        Settings current = guard.getSettings();
+        if (current.isJmxEnabled()) {
+            try {
+                metricsObjectName = new ObjectName("ljsure.cn:type=LoginIPLimit,name=Metrics");
+                if (!ManagementFactory.getPlatformMBeanServer().isRegistered(metricsObjectName)) {
+                    ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(metrics), metricsObjectName);
+                } else {
+                    metricsObjectName = null;
+                }
+            } catch (Exception e) {
+                metricsObjectName = null;
+                getLogger().warning("注册JMX指标失败: " + e.getMessage());
+            }
+        }
+
+        if (current.isPrometheusEnabled()) {
+            String path = current.getPrometheusFile();
+            File file = new File(path).isAbsolute() ? new File(path) : new File(getDataFolder(), path);
+            long ticks = 20L * current.getPrometheusInterval();
+            Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> {
+                try {
+                    metrics.writePrometheus(file);
+                } catch (IOException e) {
+                    getLogger().warning("写入Prometheus指标文件失败: " + e.getMessage());
+                }
+            }, ticks, ticks);
+        }
+    }
+
+    @EventHandler
+    public void onAsyncPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+
+        // 本次检查全程使用同一份设置
+        LoginGuard.Snapshot current = guard.snapshot();
+
+        if (!current.getSettings().isEnabled()) {
+            return;
+        }
+
+        InetAddress address = event.getAddress();
+        String rateLimitedMessage = guard.checkRateLimit(current, address);
+        if (rateLimitedMessage != null) {
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, rateLimitedMessage);
+            return;
+        }
+
+        UUID playerUUID = event.getUniqueId();
+        LoginVerdict verdict = guard.check(current, address, playerUUID, event.getName());
+        pendingVerdicts.put(playerUUID, verdict);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPlayerPreLoginMonitor(AsyncPlayerPreLoginEvent event) {
+        // 其他插件拒绝了本次登录，丢弃已计算的结果
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            pendingVerdicts.remove(event.getUniqueId());
+        }
+    }
+
+    @EventHandler
+    public void onPlayerLogin(PlayerLoginEvent event) {
+        long start = System.nanoTime();
+        Player player = event.getPlayer();
+        LoginVerdict verdict = pendingVerdicts.remove(player.getUniqueId());
+        if (verdict == null || verdict.isAllowed()) {
+            nameCache.put(player.getUniqueId(), player.getName());
+        }
+        if (verdict == null) {
+            applyOperation.record(start, false);
+            return;
+        }
+
+        if (!verdict.isAllowed()) {
+            event.disallow(PlayerLoginEvent.Result.KICK_OTHER, verdict.getMessage());
+        } else if (verdict.getMessage() != null) {
+            player.sendMessage(verdict.getMessage());
+        }
+        applyOperation.record(start, false);
+    }
+
+    // 通过Bukkit API查找玩家名，可能读取磁盘，只在玩家名缓存的后台任务中调用
+    private String lookupPlayerName(UUID playerUUID) {
+        OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(playerUUID);
+        return offlinePlayer != null ? offlinePlayer.getName() : null;
+    }
+
+    public class IPCommand implements org.bukkit.command.CommandExecutor, TabCompleter {
+
+        private final List<String> subCommands = Arrays.asList("enable", "disable", "timelimit", "erase", "bypass", "unbypass", "status", "list", "metrics", "reload", "migrate");
+        // 每个发送者最近一次 /ip list 的翻页位置 (发送者名称 -> 游标)
+        private final Map<String, ListCursor> listCursors = new ConcurrentHashMap<>();
+
+        @Override
+        public boolean onCommand(CommandSender sender, org.bukkit.command.Command command, String label, String[] args) {
+            if (!sender.hasPermission("loginiplimit.admin")) {
+                sender.sendMessage(ChatColor.RED + "你没有权限使用此命令!");
+                return true;
+            }
+
+            if (args.length == 0) {
+                sendHelp(sender);
+                return true;
+            }
+
+            switch (args[0].toLowerCase()) {
+                case "enable":
+                    config.set("enabled", true);
+                    updateSettings(current -> current.withEnabled(true));
+                    sender.sendMessage(ChatColor.GREEN + "IP限制功能已启用!");
+                    break;
+
+                case "disable":
+                    config.set("enabled", false);
+                    updateSettings(current -> current.withEnabled(false));
+                    sender.sendMessage(ChatColor.GREEN + "IP限制功能已禁用!");
+                    break;
+
+                case "timelimit":
+                    if (args.length < 2) {
+                        sender.sendMessage(ChatColor.RED + "用法: /ip timelimit <分钟>");
+                        return true;
+                    }
+                    try {
+                        int minutes = Integer.parseInt(args[1]);
+                        if (minutes < 0) {
+                            sender.sendMessage(ChatColor.RED + "时间不能为负数!");
+                            return true;
+                        }
+                        config.set("time-limit", minutes);
+                        updateSettings(current -> current.withTimeLimit(minutes));
+                        sender.sendMessage(ChatColor.GREEN + "IP冷却时间已设置为: " + minutes + "分钟");
+                    } catch (NumberFormatException e) {
+                        sender.sendMessage(ChatColor.RED + "请输入有效的数字!");
+                    }
+                    break;
+
+                case "erase":
+                    if (args.length < 2) {
+                        sender.sendMessage(ChatColor.RED + "用法: /ip erase <IP地址|CIDR|player <玩家名|UUID>|older <天数>> [dry-run]");
+                        return true;
+                    }
+                    String ipToErase = args[1];
+                    if (ipToErase.equalsIgnoreCase("cancel")) {
+                        BulkEraseJob running = eraseJob;
+                        if (running == null) {
+                            sender.sendMessage(ChatColor.YELLOW + "没有正在进行的批量删除");
+                        } else {
+                            running.cancel();
+                            sender.sendMessage(ChatColor.YELLOW + "批量删除将在当前批次完成后停止");
+                        }
+                        return true;
+                    }
+                    if (ipToErase.equalsIgnoreCase("player") || ipToErase.equalsIgnoreCase("older") || ipToErase.indexOf('/') >= 0) {
+                        startBulkErase(sender, args);
+                        return true;
+                    }
+                    IPKey keyToErase = IPKey.parse(ipToErase);
+                    if (keyToErase == null) {
+                        sender.sendMessage(ChatColor.RED + "无效的IP地址: " + ipToErase);
+                        return true;
+                    }
+                    keyToErase = toBindingKey(keyToErase.getHigh(), keyToErase.getLow());
+                    // 删除在存储线程上执行，结果回到主线程发送
+                    databaseManager.getStore().remove(keyToErase).whenComplete((existed, error) -> Bukkit.getScheduler().runTask(LoginIPLimit.this, () -> {
+                        if (error != null) {
+                            Throwable cause = error.getCause() != null ? error.getCause() : error;
+                            getLogger().severe("删除IP数据失败: " + cause.getMessage());
+                            sender.sendMessage(ChatColor.RED + "删除IP数据失败，请查看控制台");
+                        } else if (existed) {
+                            sender.sendMessage(ChatColor.GREEN + "IP " + ipToErase + " 的限制已移除!");
+                        } else {
+                            sender.sendMessage(ChatColor.YELLOW + "IP " + ipToErase + " 没有限制记录");
+                        }
+                    }));
+                    break;
+
+                case "bypass":
+                    if (args.length < 2) {
+                        sender.sendMessage(ChatColor.RED + "用法: /ip bypass <IP地址|CIDR>");
+                        return true;
+                    }
+                    CidrBlock blockToBypass = CidrBlock.parse(args[1]);
+                    if (blockToBypass == null) {
+                        sender.sendMessage(ChatColor.RED + "无效的IP地址或CIDR: " + args[1]);
+                        return true;
+                    }
+                    Set<CidrBlock> bypassBlocks = guard.getSettings().getBypassBlocks();
+                    if (bypassBlocks.contains(blockToBypass)) {
+                        sender.sendMessage(ChatColor.YELLOW + "IP " + blockToBypass + " 已在绕过列表中");
+                    } else {
+                        Set<CidrBlock> updated = new LinkedHashSet<>(bypassBlocks);
+                        updated.add(blockToBypass);
+                        List<String> bypassList = config.getStringList("bypass-ips");
+                        bypassList.add(blockToBypass.toString());
+                        config.set("bypass-ips", bypassList);
+                        updateSettings(current -> current.withBypassBlocks(updated));
+                        sender.sendMessage(ChatColor.GREEN + "已添加IP " + blockToBypass + " 到绕过列表");
+                    }
+                    break;
+
+                case "unbypass":
+                    if (args.length < 2) {
+                        sender.sendMessage(ChatColor.RED + "用法: /ip unbypass <IP地址|CIDR>");
+                        return true;
+                    }
+                    CidrBlock blockToUnbypass = CidrBlock.parse(args[1]);
+                    if (blockToUnbypass == null) {
+                        sender.sendMessage(ChatColor.RED + "无效的IP地址或CIDR: " + args[1]);
+                        return true;
+                    }
+                    Set<CidrBlock> remaining = new LinkedHashSet<>(guard.getSettings().getBypassBlocks());
+                    if (remaining.remove(blockToUnbypass)) {
+                        List<String> bypassList = config.getStringList("bypass-ips");
+                        bypassList.removeIf(entry -> blockToUnbypass.equals(CidrBlock.parse(entry)));
+                        config.set("bypass-ips", bypassList);
+                        updateSettings(current -> current.withBypassBlocks(remaining));
+                        sender.sendMessage(ChatColor.GREEN + "已移除IP " + blockToUnbypass + " 的绕过权限");
+                    } else {
+                        sender.sendMessage(ChatColor.YELLOW + "IP " + blockToUnbypass + " 不在绕过列表中");
+                    }
+                    break;
+
+                case "status":
+                    Settings status = guard.getSettings();
+                    sender.sendMessage(ChatColor.GOLD + "=== IP限制插件状态 ===");
+                    sender.sendMessage(ChatColor.YELLOW + "插件状态: " +
+                            (status.isEnabled() ? ChatColor.GREEN + "已启用" : ChatColor.RED + "已禁用"));
+                    sender.sendMessage(ChatColor.YELLOW + "冷却时间: " + ChatColor.AQUA +
+                            status.getTimeLimit() + "分钟");
+                    sender.sendMessage(ChatColor.YELLOW + "存储方式: " + ChatColor.AQUA + databaseManager.getStore().getName());
+                    // 计数由绑定索引维护，不查询存储
+                    long now = System.currentTimeMillis();
+                    String loading = bindingIndex.isLoaded() ? "" : ChatColor.GRAY + " (加载中)";
+                    sender.sendMessage(ChatColor.YELLOW + "当前限制IP数量: " + ChatColor.AQUA + bindingIndex.getTotalCount() + loading);
+                    sender.sendMessage(ChatColor.YELLOW + "  永久绑定: " + ChatColor.AQUA + bindingIndex.getPermanentCount() +
+                            ChatColor.YELLOW + "  临时绑定: " + ChatColor.AQUA + bindingIndex.getTemporaryCount());
+                    sender.sendMessage(ChatColor.YELLOW + "  一小时内到期: " + ChatColor.AQUA +
+                            bindingIndex.getExpiringWithin(now, TimeUnit.HOURS.toMillis(1)));
+                    sender.sendMessage(ChatColor.YELLOW + "  绑定地址: " + ChatColor.AQUA + bindingIndex.getAddressCount() +
+                            ChatColor.YELLOW + "  绑定账号: " + ChatColor.AQUA + bindingIndex.getAccountCount());
+                    sender.sendMessage(ChatColor.YELLOW + "账号限制: " + ChatColor.AQUA + "每IP " + status.getMaxAccountsPerIp() + " 个账号, 每账号 " +
+                            (status.getMaxIpsPerAccount() > 0 ? status.getMaxIpsPerAccount() + " 个IP" : "不限IP"));
+                    sender.sendMessage(ChatColor.YELLOW + "绕过IP数量: " + ChatColor.AQUA + status.getBypassBlocks().size());
+                    ConnectionRateLimiter limiter = guard.getRateLimiter();
+                    if (limiter != null) {
+                        sender.sendMessage(ChatColor.YELLOW + "频率限制拒绝: " + ChatColor.AQUA + "单IP " + limiter.getRejectedByIp() +
+                                ChatColor.YELLOW + "  地址段 " + ChatColor.AQUA + limiter.getRejectedBySubnet());
+                    }
+                    break;
+
+                case "list":
+                    if (args.length > 1 && args[1].equalsIgnoreCase("bypass")) {
+                        // 显示绕过列表
+                        sender.sendMessage(ChatColor.GOLD + "=== 绕过IP列表 ===");
+                        Set<CidrBlock> bypassList = guard.getSettings().getBypassBlocks();
+                        if (bypassList.isEmpty()) {
+                            sender.sendMessage(ChatColor.YELLOW + "没有绕过IP");
+                        } else {
+                            for (CidrBlock block : bypassList) {
+                                sender.sendMessage(ChatColor.AQUA + "- " + block);
+                            }
+                        }
+                    } else {
+                        listBindings(sender, args);
+                    }
+                    break;
+
+                case "metrics":
+                    sendMetrics(sender);
+                    break;
+
+                case "reload":
+                    reloadSettings(sender);
+                    break;
+
+                case "migrate":
+                    if (args.length == 2 && args[1].equalsIgnoreCase("cancel")) {
+                        BindingMigration running = migration;
+                        if (running == null) {
+                            sender.sendMessage(ChatColor.YELLOW + "没有正在进行的迁移");
+                        } else {
+                            running.cancel();
+                            sender.sendMessage(ChatColor.YELLOW + "迁移将在当前批次写入后暂停");
+                        }
+                        return true;
+                    }
+                    if (args.length < 3) {
+                        sender.sendMessage(ChatColor.RED + "用法: /ip migrate <local|h2|mysql> <local|h2|mysql> 或 /ip migrate cancel");
+                        return true;
+                    }
+                    startMigration(sender, args[1], args[2]);
+                    break;
+
+                default:
+                    sendHelp(sender);
+                    break;
+            }
+
+            return true;
+        }
+
+        @Override
+        public List<String> onTabComplete(CommandSender sender, org.bukkit.command.Command command, String alias, String[] args) {
+            List<String> completions = new ArrayList<>();
+
+            if (args.length == 1) {
+                // 子命令补全
+                StringUtil.copyPartialMatches(args[0], subCommands, completions);
+            } else if (args.length == 2) {
+                switch (args[0].toLowerCase()) {
+                    case "erase":
+                        // IP地址补全: 只查询内存中的有序索引
+                        completions.addAll(bindingIndex.complete(args[1], COMPLETION_LIMIT, System.currentTimeMillis()));
+                        StringUtil.copyPartialMatches(args[1], Arrays.asList("player", "older", "cancel"), completions);
+                        break;
+                    case "bypass":
+                        // 无特定补全
+                        break;
+                    case "unbypass":
+                        // 绕过IP补全
+                        List<String> bypassEntries = new ArrayList<>();
+                        for (CidrBlock block : guard.getSettings().getBypassBlocks()) {
+                            bypassEntries.add(block.toString());
+                        }
+                        StringUtil.copyPartialMatches(args[1], bypassEntries, completions);
+                        break;
+                    case "timelimit":
+                        // 时间建议
+                        List<String> timeSuggestions = Arrays.asList("0", "10", "30", "60", "120", "1440");
+                        StringUtil.copyPartialMatches(args[1], timeSuggestions, completions);
+                        break;
+                    case "list":
+                        // 列表类型补全
+                        List<String> listTypes = Arrays.asList("bypass");
+                        StringUtil.copyPartialMatches(args[1], listTypes, completions);
+                        break;
+                    case "migrate":
+                        StringUtil.copyPartialMatches(args[1], Arrays.asList("local", "h2", "mysql", "cancel"), completions);
+                        break;
+                }
+            } else if (args.length >= 3 && args[0].equalsIgnoreCase("erase")) {
+                if (args.length == 3 && args[1].equalsIgnoreCase("player")) {
+                    List<String> playerNames = new ArrayList<>();
+                    for (Player player : Bukkit.getOnlinePlayers()) {
+                        playerNames.add(player.getName());
+                    }
+                    StringUtil.copyPartialMatches(args[2], playerNames, completions);
+                } else if (args.length == 4 || (args.length == 3 && args[1].indexOf('/') >= 0)) {
+                    StringUtil.copyPartialMatches(args[args.length - 1], Collections.singletonList("dry-run"), completions);
+                }
+            } else if (args.length == 3 && args[0].equalsIgnoreCase("migrate")) {
+                StringUtil.copyPartialMatches(args[2], Arrays.asList("local", "h2", "mysql"), completions);
+            }
+
+            Collections.sort(completions);
+            return completions;
+        }
+
+        // 参数为 [页码] [IP|CIDR]，两者顺序不限；查询在存储线程上执行，结果回到主线程发送
+        private void listBindings(CommandSender sender, String[] args) {
+            int page = 1;
+            String filterText = null;
+            for (int i = 1; i < args.length && i < 3; i++) {
+                try {
+                    page = Integer.parseInt(args[i]);
+                } catch (NumberFormatException e) {
+                    filterText = args[i];
+                }
+            }
+            if (page < 1) {
+                sender.sendMessage(ChatColor.RED + "页码必须大于0!");
+                return;
+            }
+
+            CidrBlock filter = null;
+            if (filterText != null) {
+                filter = CidrBlock.parse(filterText);
+                if (filter == null) {
+                    sender.sendMessage(ChatColor.RED + "无效的IP地址或CIDR: " + filterText);
+                    return;
+                }
+                if (filterText.indexOf('/') < 0) {
+                    // 单个地址按绑定粒度查找其所在的绑定
+                    filter = CidrBlock.of(toBindingKey(filter.getHigh(), filter.getLow()), 128);
+                }
+            }
+
+            // 同一发送者使用同一筛选条件翻页时复用已知的页起点
+            String filterKey = filterText;
+            ListCursor cursor = listCursors.compute(sender.getName(), (name, existing) ->
+                    existing != null && Objects.equals(existing.filter, filterKey) ? existing : new ListCursor(filterKey));
+            int requestedPage = page;
+            fetchPage(cursor, filter, requestedPage).whenComplete((ipList, error) -> Bukkit.getScheduler().runTask(LoginIPLimit.this, () -> {
+                if (error != null) {
+                    Throwable cause = error.getCause() != null ? error.getCause() : error;
+                    getLogger().severe("获取IP数据列表失败: " + cause.getMessage());
+                    sender.sendMessage(ChatColor.RED + "获取IP数据列表失败，请查看控制台");
+                    return;
+                }
+
+                sender.sendMessage(ChatColor.GOLD + "=== 受限制IP列表 (第" + requestedPage + "页" +
+                        (filterKey != null ? "，筛选: " + filterKey : "") + ") ===");
+                if (ipList.isEmpty()) {
+                    sender.sendMessage(ChatColor.YELLOW + (requestedPage == 1 ? "没有受限制的IP" : "该页没有记录"));
+                    return;
+                }
+                long currentTime = System.currentTimeMillis();
+                for (IPData ipData : ipList) {
+                    String ip = formatBindingKey(ipData.getKey());
+                    long endTime = ipData.getEndTime();
+                    String playerName = ipData.getPlayerName() != null ? ipData.getPlayerName() : nameCache.resolve(ipData.getPlayerUUID());
+
+                    if (endTime == 0) {
+                        sender.sendMessage(ChatColor.RED + "- " + ip + " (永久绑定) -> " + playerName);
+                    } else if (endTime > currentTime) {
+                        String timeLeft = LoginMessages.formatTime(endTime - currentTime);
+                        sender.sendMessage(ChatColor.YELLOW + "- " + ip + " (" + timeLeft + ") -> " + playerName);
+                    } else {
+                        sender.sendMessage(ChatColor.GRAY + "- " + ip + " (已过期) -> " + playerName);
+                    }
+                }
+                if (ipList.size() >= LIST_PAGE_SIZE) {
+                    sender.sendMessage(ChatColor.GRAY + "下一页: /ip list " + (requestedPage + 1) + (filterKey != null ? " " + filterKey : ""));
+                }
+            }));
+        }
+
+        // 从不超过目标页的最近一个已知页起点开始，按键集分页向后读取；途经的页起点都记入游标
+        private CompletableFuture<List<IPData>> fetchPage(ListCursor cursor, CidrBlock filter, int targetPage) {
+            Map.Entry<Integer, IPKey> anchor = cursor.floor(targetPage);
+            if (anchor == null) {
+                return walkPages(cursor, filter, 1, null, targetPage);
+            }
+            return walkPages(cursor, filter, anchor.getKey(), anchor.getValue(), targetPage);
+        }
+
+        // 每页至少LIST_PAGE_SIZE条，并在同一地址的最后一条处结束 (同一地址的绑定总在同一页)，因此页起点总是某个地址之后
+        private CompletableFuture<List<IPData>> walkPages(ListCursor cursor, CidrBlock filter, int page, IPKey after, int targetPage) {
+            // 一次最多读取约50页，只保留目标页的数据
+            int limit = Math.min(targetPage - page + 1, 50) * LIST_PAGE_SIZE;
+            return databaseManager.getStore().page(filter, after, limit).thenCompose(rows -> {
+                int current = page;
+                int start = 0;
+                for (int i = 0; i < rows.size(); i++) {
+                    boolean groupEnd = i == rows.size() - 1 || !rows.get(i + 1).getKey().equals(rows.get(i).getKey());
+                    if (!groupEnd || i - start + 1 < LIST_PAGE_SIZE) {
+                        continue;
+                    }
+                    if (current == targetPage) {
+                        return CompletableFuture.completedFuture(new ArrayList<>(rows.subList(start, i + 1)));
+                    }
+                    current++;
+                    cursor.put(current, rows.get(i).getKey());
+                    start = i + 1;
+                }
+                if (rows.size() < limit) {
+                    // 已读完，剩余不足一页的记录即为最后一页
+                    return CompletableFuture.completedFuture(current == targetPage
+                            ? new ArrayList<>(rows.subList(start, rows.size())) : Collections.<IPData>emptyList());
+                }
+                // 剩余的记录不足一页，从当前页的起点重新读取
+                return walkPages(cursor, filter, current, start > 0 ? rows.get(start - 1).getKey() : after, targetPage);
+            });
+        }
+
+        private void sendMetrics(CommandSender sender) {
+            double uptime = Math.max(1.0, metrics.getUptimeSeconds());
+            sender.sendMessage(ChatColor.GOLD + "=== 运行指标 (运行 " + LoginMessages.formatTime((long) (uptime * 1000)) + ") ===");
+            for (Map.Entry<String, PluginMetrics.Operation> entry : metrics.getOperations().entrySet()) {
+                LatencyHistogram.Snapshot latency = entry.getValue().getLatency();
+                if (latency.getCount() == 0) {
+                    continue;
+                }
+                sender.sendMessage(ChatColor.YELLOW + entry.getKey() + ": " + ChatColor.AQUA + latency.getCount() + "次" +
+                        ChatColor.GRAY + String.format(Locale.ROOT, " (%.2f/秒)", latency.getCount() / uptime) +
+                        ChatColor.YELLOW + " 错误 " + ChatColor.AQUA + entry.getValue().getErrors() +
+                        ChatColor.YELLOW + String.format(Locale.ROOT, " p50 %.2fms p99 %.2fms 最大 %.2fms",
+                        latency.getPercentile(0.5) / 1e6, latency.getPercentile(0.99) / 1e6, latency.getMax() / 1e6));
+            }
+            Map<String, Number> gauges = metrics.readGauges();
+            if (!gauges.isEmpty()) {
+                StringBuilder line = new StringBuilder(ChatColor.YELLOW + "状态:");
+                for (Map.Entry<String, Number> entry : gauges.entrySet()) {
+                    line.append(' ').append(entry.getKey()).append('=').append(ChatColor.AQUA).append(entry.getValue()).append(ChatColor.YELLOW);
+                }
+                sender.sendMessage(line.toString());
+            }
+            Number hits = gauges.get("cache_hits");
+            Number misses = gauges.get("cache_misses");
+            if (hits != null && misses != null && hits.longValue() + misses.longValue() > 0) {
+                double ratio = 100.0 * hits.longValue() / (hits.longValue() + misses.longValue());
+                sender.sendMessage(ChatColor.YELLOW + "缓存命中率: " + ChatColor.AQUA + String.format(Locale.ROOT, "%.1f%%", ratio));
+            }
+            Number skips = gauges.get("filter_skips");
+            Number falsePositives = gauges.get("filter_false_positives");
+            if (skips != null && falsePositives != null && skips.longValue() + falsePositives.longValue() > 0) {
+                // 查询的IP实际不存在时被过滤器误判为可能存在的比例
+                double ratio = 100.0 * falsePositives.longValue() / (skips.longValue() + falsePositives.longValue());
+                sender.sendMessage(ChatColor.YELLOW + "过滤器跳过查询: " + ChatColor.AQUA + skips +
+                        ChatColor.YELLOW + "  误判率: " + ChatColor.AQUA + String.format(Locale.ROOT, "%.2f%%", ratio));
+            }
+        }
+
+        private void sendHelp(CommandSender sender) {
+            sender.sendMessage(ChatColor.GOLD + "=== IP限制管理命令 ===");
+            sender.sendMessage(ChatColor.YELLOW + "/ip enable - 启用IP限制");
+            sender.sendMessage(ChatColor.YELLOW + "/ip disable - 禁用IP限制");
+            sender.sendMessage(ChatColor.YELLOW + "/ip timelimit <分钟> - 设置IP冷却时间(0为永久)");
+            sender.sendMessage(ChatColor.YELLOW + "/ip erase <IP|CIDR> - 强制移除IP或地址段内的限制");
+            sender.sendMessage(ChatColor.YELLOW + "/ip erase player <玩家名|UUID> - 移除该玩家的所有限制");
+            sender.sendMessage(ChatColor.YELLOW + "/ip erase older <天数> - 移除早于该天数创建的限制");
+            sender.sendMessage(ChatColor.YELLOW + "  批量移除在后台分批执行，末尾加 dry-run 只统计数量，/ip erase cancel 取消");
+            sender.sendMessage(ChatColor.YELLOW + "/ip bypass <IP|CIDR> - 添加IP或地址段到绕过列表");
+            sender.sendMessage(ChatColor.YELLOW + "/ip unbypass <IP|CIDR> - 从绕过列表移除IP或地址段");
+            sender.sendMessage(ChatColor.YELLOW + "/ip list [页码] [IP|CIDR] - 分页查看受限制IP列表");
+            sender.sendMessage(ChatColor.YELLOW + "/ip list bypass - 查看绕过IP列表");
+            sender.sendMessage(ChatColor.YELLOW + "/ip status - 查看插件状态");
+            sender.sendMessage(ChatColor.YELLOW + "/ip metrics - 查看运行指标");
+            sender.sendMessage(ChatColor.YELLOW + "/ip reload - 重新加载配置文件");
+            sender.sendMessage(ChatColor.YELLOW + "/ip migrate <源> <目标> - 在存储之间迁移绑定 (local|h2|mysql)，cancel暂停");
+        }
+    }
+
+    // /ip list 的翻页游标: 记录已知页的起点 (页码 -> 上一页最后一条绑定的地址)，第1页从头开始
+    private static class ListCursor {
+        private final String filter;
+        private final TreeMap<Integer, IPKey> pageStarts = new TreeMap<>();
+
+        ListCursor(String filter) {
+            this.filter = filter;
+        }
+
+        synchronized Map.Entry<Integer, IPKey> floor(int page) {
+            return pageStarts.floorEntry(page);
+        }
+
+        synchronized void put(int page, IPKey after) {
+            pageStarts.put(page, after);
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package ljsure.cn.velocity;
+
+import com.google.inject.Inject;
+import com.velocitypowered.api.command.CommandSource;
+import com.velocitypowered.api.command.SimpleCommand;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.ResultedEvent;
+import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.connection.LoginEvent;
+import com.velocitypowered.api.event.connection.PostLoginEvent;
+import com.velocitypowered.api.event.connection.PreLoginEvent;
+import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
+import com.velocitypowered.api.plugin.Plugin;
+import com.velocitypowered.api.plugin.annotation.DataDirectory;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import ljsure.cn.BindingIndex;
+import ljsure.cn.BindingListener;
+import ljsure.cn.BindingQuery;
+import ljsure.cn.BulkEraseJob;
+import ljsure.cn.CidrBlock;
+import ljsure.cn.ConnectionRateLimiter;
+import ljsure.cn.DatabaseManager;
+import ljsure.cn.IPKey;
+import ljsure.cn.LoginGuard;
+import ljsure.cn.LoginVerdict;
+import ljsure.cn.MapConfigView;
+import ljsure.cn.PlayerNameCache;
+import ljsure.cn.PluginMetrics;
+import ljsure.cn.Settings;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// 代理端版本: 在代理的登录阶段检查一次，后端服务器无需安装插件，所有服务器共用一个存储连接池
+@Plugin(id = "loginiplimit", name = "MC-LoginIPLimit", version = "2.0",
+        description = "IP登录限制插件 (Velocity代理端)", authors = {"Superbomb"})
+public class VelocityLoginIPLimit {
+
+    private static final int COMPLETION_LIMIT = 50;
+
+    private final ProxyServer server;
+    private final File dataFolder;
+    private final Logger logger = Logger.getLogger("LoginIPLimit");
+    private final PluginMetrics metrics = new PluginMetrics();
+
+    private DatabaseManager databaseManager;
+    private BindingIndex bindingIndex;
+    private PlayerNameCache nameCache;
+    private LoginGuard guard;
+
+    // 正在进行的批量删除
+    private volatile BulkEraseJob eraseJob;
+
+    // 通过检查后进入时发送的提示 (UUID -> 消息)，在PostLoginEvent中发送
+    private final Map<UUID, String> pendingMessages = new ConcurrentHashMap<>();
+
+    @Inject
+    public VelocityLoginIPLimit(ProxyServer server, @DataDirectory Path dataDirectory) {
+        this.server = server;
+        this.dataFolder = dataDirectory.toFile();
+    }
+
+    @Subscribe
+    public void onProxyInitialize(ProxyInitializeEvent event) {
+        // 加载配置文件，与服务端版本使用相同的格式；代理端不通过命令修改配置
+        Settings current = loadSettings();
+        if (current == null) {
+            logger.severe("读取配置文件失败，插件将不会生效!");
+            return;
+        }
+
+        // 玩家名缓存 (踢出信息中显示绑定玩家时使用)，代理端只能查到在线玩家
+        nameCache = new PlayerNameCache(logger, new File(dataFolder, "names.dat"),
+                current.getNameCacheMaxSize(), current.getNameRefreshAfter(),
+                playerUUID -> server.getPlayer(playerUUID).map(Player::getUsername).orElse(null),
+                runnable -> server.getScheduler().buildTask(this, runnable).schedule());
+        boolean namesLoaded = nameCache.load();
+
+        databaseManager = new DatabaseManager(logger, dataFolder, metrics);
+        if (!databaseManager.initialize(current.getStorage())) {
+            logger.severe("数据库初始化失败，插件将不会生效!");
+            databaseManager = null;
+            return;
+        }
+        guard = new LoginGuard(logger, databaseManager::getStore, metrics, nameCache::resolve, current);
+
+        // 建立绑定索引: 先注册监听器再读取已有绑定，读取期间的修改不会丢失
+        bindingIndex = new BindingIndex(guard::formatBindingKey);
+        guard.setAccountIndex(bindingIndex);
+        databaseManager.getStore().setListener(BindingListener.of(bindingIndex, nameCache));
+        server.getScheduler().buildTask(this, () -> {
+            try {
+                bindingIndex.load(databaseManager.getStore());
+                if (!namesLoaded) {
+                    nameCache.seed(databaseManager.getStore());
+                }
+            } catch (CompletionException e) {
+                logger.severe("建立绑定索引失败: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+            }
+        }).schedule();
+
+        server.getCommandManager().register(server.getCommandManager().metaBuilder("iplimit").plugin(this).build(), new IPLimitCommand());
+        startTasks(current);
+
+        logger.info("LoginIPLimit 代理端已启用! 使用" + databaseManager.getStore().getName() + "存储");
+    }
+
+    @Subscribe
+    public void onProxyShutdown(ProxyShutdownEvent event) {
+        BulkEraseJob runningErase = eraseJob;
+        if (runningErase != null) {
+            runningErase.cancel();
+        }
+        if (databaseManager != null) {
+            databaseManager.close();
+        }
+        if (nameCache != null) {
+            try {
+                nameCache.save();
+            } catch (IOException e) {
+                logger.warning("保存玩家名缓存失败: " + e.getMessage());
+            }
+        }
+        logger.info("LoginIPLimit 代理端已禁用!");
+    }
+
+    // 首次启动时从插件包中复制默认配置
+    private Settings loadSettings() {
+        File file = new File(dataFolder, "config.yml");
+        try {
+            if (!file.exists()) {
+                Files.createDirectories(dataFolder.toPath());
+                try (InputStream in = VelocityLoginIPLimit.class.getResourceAsStream("/config.yml")) {
+                    if (in == null) {
+                        throw new IOException("插件包中缺少config.yml");
+                    }
+                    Files.copy(in, file.toPath());
+                }
+            }
+            return new Settings(MapConfigView.load(file, '.'), logger);
+        } catch (IOException e) {
+            logger.severe("读取配置文件失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void startTasks(Settings current) {
+        // 每分钟清理一次过期的IP记录
+        PluginMetrics.Operation cleanupOperation = metrics.operation("cleanup_task");
+        server.getScheduler().buildTask(this, () -> {
+            long start = System.nanoTime();
+            databaseManager.cleanupExpiredIPs();
+            bindingIndex.prune(System.currentTimeMillis());
+            ConnectionRateLimiter limiter = guard.getRateLimiter();
+            if (limiter != null) {
+                limiter.evictIdle();
+            }
+            cleanupOperation.record(start, false);
+        }).repeat(1L, TimeUnit.MINUTES).schedule();
+
+        // 每5分钟保存一次有修改的玩家名缓存
+        server.getScheduler().buildTask(this, () -> {
+            try {
+                nameCache.save();
+            } catch (IOException e) {
+                logger.warning("保存玩家名缓存失败: " + e.getMessage());
+            }
+        }).delay(5L, TimeUnit.MINUTES).repeat(5L, TimeUnit.MINUTES).schedule();
+
+        // 定期与存储核对绑定索引
+        long interval = current.getReconcileInterval();
+        if (interval > 0) {
+            server.getScheduler().buildTask(this, () -> {
+                if (!bindingIndex.isLoaded()) {
+                    return;
+                }
+                try {
+                    int corrected = bindingIndex.reconcile(databaseManager.getStore());
+                    if (corrected > 0) {
+                        logger.info("绑定索引核对完成，修正了 " + corrected + " 条记录");
+                    }
+                } catch (CompletionException e) {
+                    logger.severe("核对绑定索引失败: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+                }
+            }).delay(interval, TimeUnit.MINUTES).repeat(interval, TimeUnit.MINUTES).schedule();
+        }
+
+        if (current.isPrometheusEnabled()) {
+            metrics.setGauges(() -> databaseManager.getStore().getGauges());
+            String path = current.getPrometheusFile();
+            File file = new File(path).isAbsolute() ? new File(path) : new File(dataFolder, path);
+            server.getScheduler().buildTask(this, () -> {
+                try {
+                    metrics.writePrometheus(file);
+                } catch (IOException e) {
+                    logger.warning("写入Prometheus指标文件失败: " + e.getMessage());
+                }
+            }).repeat(current.getPrometheusInterval(), TimeUnit.SECONDS).schedule();
+        }
+    }
+
+    // 频率限制在验证正版之前执行，被限制的连接不会进行验证，也不会访问存储
+    @Subscribe
+    public void onPreLogin(PreLoginEvent event) {
+        if (guard == null || !event.getResult().isAllowed()) {
+            return;
+        }
+        String message = guard.checkRateLimit(guard.snapshot(), event.getConnection().getRemoteAddress().getAddress());
+        if (message != null) {
+            event.setResult(PreLoginEvent.PreLoginComponentResult.denied(toComponent(message)));
+        }
+    }
+
+    // 验证完成、UUID确定后检查绑定；等待存储期间不占用代理的网络线程
+    @Subscribe
+    public EventTask onLogin(LoginEvent event) {
+        if (guard == null || !event.getResult().isAllowed()) {
+            return null;
+        }
+        return EventTask.async(() -> {
+            Player player = event.getPlayer();
+            InetAddress address = player.getRemoteAddress().getAddress();
+            LoginVerdict verdict = guard.check(guard.snapshot(), address, player.getUniqueId(), player.getUsername());
+            if (!verdict.isAllowed()) {
+                event.setResult(ResultedEvent.ComponentResult.denied(toComponent(verdict.getMessage())));
+                return;
+            }
+            nameCache.put(player.getUniqueId(), player.getUsername());
+            if (verdict.getMessage() != null) {
+                pendingMessages.put(player.getUniqueId(), verdict.getMessage());
+            }
+        });
+    }
+
+    @Subscribe
+    public void onPostLogin(PostLoginEvent event) {
+        String message = pendingMessages.remove(event.getPlayer().getUniqueId());
+        if (message != null) {
+            event.getPlayer().sendMessage(toComponent(message));
+        }
+    }
+
+    // 其他插件在LoginEvent之后拒绝了登录时，丢弃未发送的提示
+    @Subscribe
+    public void onDisconnect(DisconnectEvent event) {
+        pendingMessages.remove(event.getPlayer().getUniqueId());
+    }
+
+    private static Component toComponent(String message) {
+        return LegacyComponentSerializer.legacySection().deserialize(message);
+    }
+
+    // 重新读取配置文件；存储设置有修改时在异步线程上更换存储
+    private void reloadSettings(CommandSource source) {
+        Settings previous = guard.getSettings();
+        Settings next = loadSettings();
+        if (next == null) {
+            source.sendMessage(toComponent("§c读取配置文件失败，继续使用原来的设置，详见控制台"));
+            return;
+        }
+        guard.applySettings(next);
+        source.sendMessage(toComponent("§a配置已重新加载 (玩家名缓存、统计和指标的设置需要重启代理后生效)"));
+
+        boolean storageChanged = !next.getStorage().getFingerprint().equals(databaseManager.getSettings().getFingerprint());
+        boolean bindingChanged = next.getIpv4BindingPrefix() != previous.getIpv4BindingPrefix()
+                || next.getIpv6BindingPrefix() != previous.getIpv6BindingPrefix();
+        if (!storageChanged && !bindingChanged) {
+            return;
+        }
+        if (storageChanged) {
+            source.sendMessage(toComponent("§e存储设置已修改，正在重新打开存储..."));
+        }
+        server.getScheduler().buildTask(this, () -> {
+            if (storageChanged) {
+                if (databaseManager.switchStore(next.getStorage())) {
+                    logger.info("已切换到" + databaseManager.getStore().getName() + "存储");
+                    source.sendMessage(toComponent("§a已切换到" + databaseManager.getStore().getName() + "存储"));
+                } else {
+                    logger.severe("无法打开新的存储，继续使用原来的存储设置");
+                    source.sendMessage(toComponent("§c无法打开新的存储，继续使用原来的存储设置，详见控制台"));
+                }
+            }
+            try {
+                bindingIndex.reconcile(databaseManager.getStore());
+            } catch (CompletionException e) {
+                logger.severe("核对绑定索引失败: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+            }
+        }).schedule();
+    }
+
+    // 单个IP直接删除，地址段在后台分批删除
+    private void erase(CommandSource source, String text) {
+        if (text.indexOf('/') >= 0) {
+            CidrBlock block = CidrBlock.parse(text);
+            if (block == null) {
+                source.sendMessage(toComponent("§c无效的CIDR: " + text));
+                return;
+            }
+            if (eraseJob != null) {
+                source.sendMessage(toComponent("§e已有批量删除正在进行: " + eraseJob.getDescription()));
+                return;
+            }
+            BulkEraseJob job = new BulkEraseJob(logger, databaseManager.getStore(), BindingQuery.inRange(block),
+                    "地址段 " + block + " 内", false, message -> source.sendMessage(toComponent("§e" + message)));
+            eraseJob = job;
+            server.getScheduler().buildTask(this, () -> {
+                try {
+                    job.run();
+                } catch (CompletionException | IllegalStateException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    logger.severe("批量删除失败: " + cause.getMessage());
+                    source.sendMessage(toComponent("§c批量删除失败，已删除 " + job.getRemoved() + " 条，详见控制台"));
+                } finally {
+                    eraseJob = null;
+                }
+            }).schedule();
+            return;
+        }
+        IPKey key = IPKey.parse(text);
+        if (key == null) {
+            source.sendMessage(toComponent("§c无效的IP地址: " + text));
+            return;
+        }
+        databaseManager.getStore().remove(guard.toBindingKey(key.getHigh(), key.getLow())).whenComplete((existed, error) -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                logger.severe("删除IP数据失败: " + cause.getMessage());
+                source.sendMessage(toComponent("§c删除IP数据失败，请查看控制台"));
+            } else if (existed) {
+                source.sendMessage(toComponent("§aIP " + text + " 的限制已移除!"));
+            } else {
+                source.sendMessage(toComponent("§eIP " + text + " 没有限制记录"));
+            }
+        });
+    }
+
+    // 代理端只提供查看状态、重新加载和删除绑定，其余设置直接修改配置文件后重新加载
+    private class IPLimitCommand implements SimpleCommand {
+
+        private final List<String> subCommands = Arrays.asList("status", "reload", "erase");
+
+        @Override
+        public void execute(Invocation invocation) {
+            CommandSource source = invocation.source();
+            String[] args = invocation.arguments();
+            if (guard == null) {
+                source.sendMessage(toComponent("§c插件未能启动，详见控制台"));
+                return;
+            }
+            if (args.length == 0) {
+                source.sendMessage(toComponent("§6=== IP限制管理命令 (代理端) ==="));
+                source.sendMessage(toComponent("§e/iplimit status - 查看插件状态"));
+                source.sendMessage(toComponent("§e/iplimit reload - 重新加载配置文件"));
+                source.sendMessage(toComponent("§e/iplimit erase <IP|CIDR> - 强制移除IP或地址段内的限制"));
+                return;
+            }
+            switch (args[0].toLowerCase(Locale.ROOT)) {
+                case "status": {
+                    Settings status = guard.getSettings();
+                    source.sendMessage(toComponent("§6=== IP限制插件状态 ==="));
+                    source.sendMessage(toComponent("§e插件状态: " + (status.isEnabled() ? "§a已启用" : "§c已禁用")));
+                    source.sendMessage(toComponent("§e冷却时间: §b" + status.getTimeLimit() + "分钟"));
+                    source.sendMessage(toComponent("§e存储方式: §b" + databaseManager.getStore().getName()));
+                    long now = System.currentTimeMillis();
+                    source.sendMessage(toComponent("§e当前限制IP数量: §b" + bindingIndex.getTotalCount() +
+                            (bindingIndex.isLoaded() ? "" : "§7 (加载中)")));
+                    source.sendMessage(toComponent("§e  永久绑定: §b" + bindingIndex.getPermanentCount() +
+                            "§e  临时绑定: §b" + bindingIndex.getTemporaryCount()));
+                    source.sendMessage(toComponent("§e  一小时内到期: §b" + bindingIndex.getExpiringWithin(now, TimeUnit.HOURS.toMillis(1))));
+                    source.sendMessage(toComponent("§e  绑定地址: §b" + bindingIndex.getAddressCount() +
+                            "§e  绑定账号: §b" + bindingIndex.getAccountCount()));
+                    source.sendMessage(toComponent("§e账号限制: §b每IP " + status.getMaxAccountsPerIp() + " 个账号, 每账号 " +
+                            (status.getMaxIpsPerAccount() > 0 ? status.getMaxIpsPerAccount() + " 个IP" : "不限IP")));
+                    source.sendMessage(toComponent("§e绕过IP数量: §b" + status.getBypassBlocks().size()));
+                    ConnectionRateLimiter limiter = guard.getRateLimiter();
+                    if (limiter != null) {
+                        source.sendMessage(toComponent("§e频率限制拒绝: §b单IP " + limiter.getRejectedByIp() +
+                                "§e  地址段 §b" + limiter.getRejectedBySubnet()));
+                    }
+                    break;
+                }
+                case "reload":
+                    reloadSettings(source);
+                    break;
+                case "erase":
+                    if (args.length < 2) {
+                        source.sendMessage(toComponent("§c用法: /iplimit erase <IP地址|CIDR>"));
+                        return;
+                    }
+                    erase(source, args[1]);
+                    break;
+                default:
+                    source.sendMessage(toComponent("§c未知的子命令，输入 /iplimit 查看帮助"));
+                    break;
+            }
+        }
+
+        @Override
+        public List<String> suggest(Invocation invocation) {
+            String[] args = invocation.arguments();
+            List<String> completions = new ArrayList<>();
+            if (args.length <= 1) {
+                String prefix = args.length == 0 ? "" : args[0].toLowerCase(Locale.ROOT);
+                for (String subCommand : subCommands) {
+                    if (subCommand.startsWith(prefix)) {
+                        completions.add(subCommand);
+                    }
+                }
+            } else if (args.length == 2 && args[0].equalsIgnoreCase("erase") && bindingIndex != null) {
+                completions.addAll(bindingIndex.complete(args[1], COMPLETION_LIMIT, System.currentTimeMillis()));
+            }
+            return completions;
+        }
+
+        @Override
+        public boolean hasPermission(Invocation invocation) {
+            return invocation.source().hasPermission("loginiplimit.admin");
+        }
+    }
+}